@@ -0,0 +1,23 @@
+package JavaTeX.core;
+
+/**
+ * This enum lists the files a TeXBuilder can produce.
+ */
+public enum Artifact {
+    PDF(".pdf"),
+    DVI(".dvi"),
+    LOG(".log");
+
+    private final String extension; /* The file extension of the artifact, including the leading dot. */
+
+    Artifact(String extension){
+        this.extension = extension;
+    }
+
+    /**
+     * @return The file extension of the artifact, including the leading dot (e.g., ".pdf").
+     */
+    public String getExtension(){
+        return this.extension;
+    }
+}
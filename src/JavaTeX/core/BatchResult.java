@@ -0,0 +1,133 @@
+package JavaTeX.core;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * This class holds the outcome of a batch build (see TeXBuilder.buildAll). Per-item results are reported in the order
+ * the sources were given.
+ */
+public class BatchResult {
+
+    private final List<Boolean> results; /* Whether each source was built successfully, in input order. */
+    private final List<String> outputFileNames; /* The output file name used for each source, in input order. */
+    private final long[] itemNanos; /* The wall-clock time spent building each source, in input order. */
+    private final long elapsedNanos; /* The wall-clock time spent building the whole batch. */
+    private final int workers; /* The number of workers that built the batch. */
+
+    /**
+     * Customized Constructor
+     * @param results Whether each source was built successfully, in input order.
+     * @param outputFileNames The output file name used for each source, in input order.
+     * @param itemNanos The wall-clock time spent building each source, in input order.
+     * @param elapsedNanos The wall-clock time spent building the whole batch.
+     * @param workers The number of workers that built the batch.
+     */
+    BatchResult(List<Boolean> results, List<String> outputFileNames, long[] itemNanos, long elapsedNanos, int workers){
+        this.results = Collections.unmodifiableList(results);
+        this.outputFileNames = Collections.unmodifiableList(outputFileNames);
+        this.itemNanos = itemNanos;
+        this.elapsedNanos = elapsedNanos;
+        this.workers = workers;
+    }
+
+    /**
+     * @return The number of sources in the batch.
+     */
+    public int size(){
+        return this.results.size();
+    }
+
+    /**
+     * @return Whether each source was built successfully, in input order.
+     */
+    public List<Boolean> getResults(){
+        return this.results;
+    }
+
+    /**
+     * @param index The position of the source in the batch.
+     * @return A boolean indicating whether the source at the given position was built successfully.
+     */
+    public boolean isSuccessful(int index){
+        return this.results.get(index);
+    }
+
+    /**
+     * @param index The position of the source in the batch.
+     * @return The output file name (Excluding file extensions) used for the source at the given position.
+     */
+    public String getOutputFileName(int index){
+        return this.outputFileNames.get(index);
+    }
+
+    /**
+     * @param index The position of the source in the batch.
+     * @return The wall-clock time in nanoseconds spent building the source at the given position.
+     */
+    public long getItemNanos(int index){
+        return this.itemNanos[index];
+    }
+
+    /**
+     * @return A boolean indicating whether every source in the batch was built successfully.
+     */
+    public boolean allSuccessful(){
+        return getFailureCount() == 0;
+    }
+
+    /**
+     * @return The number of sources that were built successfully.
+     */
+    public int getSuccessCount(){
+        int count = 0;
+        for(boolean result : this.results) if(result) count++;
+        return count;
+    }
+
+    /**
+     * @return The number of sources that failed to build.
+     */
+    public int getFailureCount(){
+        return size() - getSuccessCount();
+    }
+
+    /**
+     * @return The number of workers that built the batch.
+     */
+    public int getWorkers(){
+        return this.workers;
+    }
+
+    /**
+     * @return The wall-clock time in nanoseconds spent building the whole batch.
+     */
+    public long getElapsedNanos(){
+        return this.elapsedNanos;
+    }
+
+    /**
+     * @return The number of sources built per second of wall-clock time.
+     */
+    public double getThroughput(){
+        if(this.elapsedNanos <= 0) return 0;
+        return size() / (this.elapsedNanos / 1e9);
+    }
+
+    /**
+     * @return The mean wall-clock time in nanoseconds spent building a single source.
+     */
+    public double getMeanItemNanos(){
+        if(this.itemNanos.length == 0) return 0;
+        long total = 0;
+        for(long nanos : this.itemNanos) total += nanos;
+        return (double) total / this.itemNanos.length;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("BatchResult[size=%d, succeeded=%d, failed=%d, workers=%d, elapsed=%.1fms, " +
+                        "throughput=%.2f/s, mean=%.1fms]", size(), getSuccessCount(), getFailureCount(), this.workers,
+                this.elapsedNanos / 1e6, getThroughput(), getMeanItemNanos() / 1e6);
+    }
+}
@@ -0,0 +1,381 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * This class is a content-addressed cache of build artifacts. Entries are keyed on a hash of the TeX source (the text
+ * of a TeXString or the contents of a TeXFile) together with the options of the TeXBuilder that affect its artifacts
+ * (its format, engine, maximum number of passes and log/dvi/pdf options), so an identical build can be satisfied by
+ * copying (or hard-linking) the stored artifacts instead of running TeX.
+ *
+ * Entries are kept on disk, one directory per key, and indexed in memory in least-recently-used order. When the stored
+ * artifacts exceed the configured size the least recently used entries are evicted. Note that only the top level
+ * source of a TeXFile is hashed; files it \input's are not part of the key.
+ */
+public class BuildCache {
+
+    /* The name of the file holding a stored artifact, followed by the artifact's extension. */
+    private static final String ARTIFACT_FILE_NAME = "artifact";
+
+    private final Path directory; /* The directory holding one sub-directory per cache entry. */
+    private final long maxBytes; /* The maximum number of bytes the stored artifacts may occupy. */
+    private final boolean hardLinks; /* Should artifacts be restored as hard links rather than copies? */
+    private final LinkedHashMap<String, Long> index; /* Entry sizes by key, in least-recently-used order. */
+    private long totalBytes; /* The number of bytes occupied by all entries. */
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong stores = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Customized Constructor
+     * Creates a BuildCache that restores artifacts as copies.
+     * @param directory The directory holding the cache entries. It is created if it does not exist.
+     * @param maxBytes The maximum number of bytes the stored artifacts may occupy.
+     * @throws IOException If the directory could not be created or read.
+     */
+    public BuildCache(Path directory, long maxBytes) throws IOException {
+        this(directory, maxBytes, false);
+    }
+
+    /**
+     * Customized Constructor
+     * @param directory The directory holding the cache entries. It is created if it does not exist. Entries already in
+     *                  the directory are indexed, oldest first.
+     * @param maxBytes The maximum number of bytes the stored artifacts may occupy.
+     * @param hardLinks Should artifacts be restored as hard links? If false (or linking fails) they are copied. Hard
+     *                  linked outputs share storage with the cache, so they must not be modified in place by anything
+     *                  other than a TeXBuilder using this cache (which unlinks its outputs before rebuilding them).
+     * @throws IOException If the directory could not be created or read.
+     */
+    public BuildCache(Path directory, long maxBytes, boolean hardLinks) throws IOException {
+        this.directory = directory;
+        this.maxBytes = Math.max(0, maxBytes);
+        this.hardLinks = hardLinks;
+        this.index = new LinkedHashMap<>(16, 0.75f, true);
+        Files.createDirectories(directory);
+        loadIndex();
+    }
+
+    /**
+     * This function indexes the entries already stored in the cache directory, least recently modified first.
+     * @throws IOException If the directory could not be read.
+     */
+    private void loadIndex() throws IOException {
+        List<Path> entries = new ArrayList<>();
+        try(DirectoryStream<Path> stream = Files.newDirectoryStream(directory, Files::isDirectory)) {
+            for(Path entry : stream) {
+                /* Skip incomplete entries left behind by an interrupted store. */
+                if(entry.getFileName().toString().startsWith(".")) deleteEntry(entry);
+                else entries.add(entry);
+            }
+        }
+        entries.sort(Comparator.comparingLong(entry -> entry.toFile().lastModified()));
+        synchronized(index) {
+            for(Path entry : entries) {
+                long size = entrySize(entry);
+                index.put(entry.getFileName().toString(), size);
+                totalBytes += size;
+            }
+            evict();
+        }
+    }
+
+    /**
+     * This function computes the cache key of the given source built with the given options.
+     * @param source The source to be built.
+     * @param format The preamble the source is typeset with, or null if it has none.
+     * @param engine The TeX engine the source is typeset with.
+     * @param maxPasses The maximum number of times TeX is run, which decides whether cross-references are resolved.
+     * @param log Does the build keep the log file?
+     * @param dvi Does the build keep the dvi file?
+     * @param pdf Does the build generate a pdf file?
+     * @return The key, or null if the source can not be cached (e.g., its file can not be read).
+     */
+    static String key(TeXSource source, TeXFormat format, TeXEngine engine, int maxPasses, boolean log, boolean dvi,
+                      boolean pdf){
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        }catch(NoSuchAlgorithmException e){
+            return null;
+        }
+        if(source instanceof TeXString && ((TeXString) source).getSource() != null) {
+            digest.update("string:".getBytes(StandardCharsets.UTF_8));
+            digest.update(((TeXString) source).getSource().getBytes(StandardCharsets.UTF_8));
+        }else if(source instanceof TeXFile && ((TeXFile) source).getPath() != null) {
+            digest.update("file:".getBytes(StandardCharsets.UTF_8));
+            try {
+                digest.update(Files.readAllBytes(((TeXFile) source).getPath()));
+            }catch(IOException e){
+                return null;
+            }
+        }else {
+            return null;
+        }
+        String options = ":format=" + (format != null ? format.getHash() : "") + ":engine=" + engine.getName()
+                + ":passes=" + maxPasses + ":log=" + log + ":dvi=" + dvi + ":pdf=" + pdf;
+        digest.update(options.getBytes(StandardCharsets.UTF_8));
+        return toHex(digest.digest());
+    }
+
+    /**
+     * This function converts the given bytes to a lower case hexadecimal string.
+     * @param bytes The bytes to be converted.
+     * @return The hexadecimal string.
+     */
+    static String toHex(byte[] bytes){
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for(byte b : bytes) hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        return hex.toString();
+    }
+
+    /**
+     * This function restores the artifacts stored under the given key to the given output files. Each artifact is
+     * copied (or linked) to a temporary file next to its output file, which then atomically replaces the output file,
+     * so readers never see a missing or partially written artifact. A failed restore is counted as a miss.
+     * @param key The cache key.
+     * @param outputFilePath The directory the artifacts are restored to.
+     * @param outputFileName The name of the restored files (Excluding file extensions).
+     * @param artifacts The artifacts to be restored.
+     * @return A boolean indicating whether every artifact was restored.
+     */
+    boolean restore(String key, Path outputFilePath, String outputFileName, Set<Artifact> artifacts){
+        boolean cached;
+        synchronized(index) {
+            cached = index.get(key) != null;
+        }
+        if(cached) {
+            try {
+                Path entry = directory.resolve(key);
+                for(Artifact artifact : artifacts) {
+                    String extension = artifact.getExtension();
+                    Path stored = entry.resolve(ARTIFACT_FILE_NAME + extension);
+                    Path output = outputFilePath.resolve(outputFileName + extension).toAbsolutePath();
+                    Path temporary = Files.createTempFile(output.getParent(), "." + output.getFileName(), ".tmp");
+                    try {
+                        /* A link can only be created under a free name. */
+                        Files.delete(temporary);
+                        if(!hardLinks || !link(temporary, stored)) {
+                            Files.copy(stored, temporary, StandardCopyOption.REPLACE_EXISTING);
+                        }
+                        TeXBuilder.publish(temporary, output);
+                    }finally{
+                        Files.deleteIfExists(temporary);
+                    }
+                }
+                hits.incrementAndGet();
+                return true;
+            }catch(IOException e){
+                /* The entry was evicted or damaged while restoring, fall through and count a miss. */
+            }
+        }
+        misses.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * This function creates a hard link to a stored artifact.
+     * @param link The link to be created.
+     * @param stored The stored artifact.
+     * @return A boolean indicating whether the link was created.
+     */
+    private boolean link(Path link, Path stored){
+        try {
+            Files.createLink(link, stored);
+            return true;
+        }catch(IOException | UnsupportedOperationException e){
+            return false;
+        }
+    }
+
+    /**
+     * This function stores the artifacts of a successful build under the given key, evicting least recently used
+     * entries if the cache grows beyond its maximum size.
+     * @param key The cache key.
+     * @param outputFilePath The directory holding the artifacts.
+     * @param outputFileName The name of the artifacts (Excluding file extensions).
+     * @param artifacts The artifacts to be stored.
+     * @return A boolean indicating whether the artifacts were stored.
+     */
+    boolean store(String key, Path outputFilePath, String outputFileName, Set<Artifact> artifacts){
+        synchronized(index) {
+            if(index.containsKey(key)) return true;
+        }
+        Path staging = null;
+        try {
+            /* Copy the artifacts into a hidden staging directory, then publish the entry with a single rename. */
+            staging = Files.createTempDirectory(directory, ".");
+            long size = 0;
+            for(Artifact artifact : artifacts) {
+                String extension = artifact.getExtension();
+                Path stored = staging.resolve(ARTIFACT_FILE_NAME + extension);
+                Files.copy(outputFilePath.resolve(outputFileName + extension), stored);
+                size += Files.size(stored);
+            }
+            if(size > maxBytes) {
+                deleteEntry(staging);
+                return false;
+            }
+            synchronized(index) {
+                if(index.containsKey(key)) {
+                    deleteEntry(staging);
+                    return true;
+                }
+                Files.move(staging, directory.resolve(key), StandardCopyOption.ATOMIC_MOVE);
+                index.put(key, size);
+                totalBytes += size;
+                stores.incrementAndGet();
+                evict();
+            }
+            return true;
+        }catch(IOException e){
+            if(staging != null) deleteEntry(staging);
+            return false;
+        }
+    }
+
+    /**
+     * This function evicts least recently used entries until the cache fits in its maximum size. The caller must hold
+     * the index lock.
+     */
+    private void evict(){
+        Iterator<Map.Entry<String, Long>> entries = index.entrySet().iterator();
+        while(totalBytes > maxBytes && entries.hasNext()) {
+            Map.Entry<String, Long> eldest = entries.next();
+            deleteEntry(directory.resolve(eldest.getKey()));
+            totalBytes -= eldest.getValue();
+            entries.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    /**
+     * This function removes every entry from the cache.
+     */
+    public void clear(){
+        synchronized(index) {
+            for(String key : index.keySet()) deleteEntry(directory.resolve(key));
+            index.clear();
+            totalBytes = 0;
+        }
+    }
+
+    /**
+     * This function computes the number of bytes occupied by a stored entry.
+     * @param entry The entry directory.
+     * @return The number of bytes occupied by the entry's artifacts.
+     */
+    private static long entrySize(Path entry){
+        try(Stream<Path> files = Files.list(entry)) {
+            return files.mapToLong(file -> file.toFile().length()).sum();
+        }catch(IOException e){
+            return 0;
+        }
+    }
+
+    /**
+     * This function deletes an entry directory and the artifacts it holds.
+     * @param entry The entry directory.
+     */
+    private static void deleteEntry(Path entry){
+        try(Stream<Path> files = Files.list(entry)) {
+            files.forEach(file -> file.toFile().delete());
+        }catch(IOException e){
+            /* The entry is already gone. */
+        }
+        entry.toFile().delete();
+    }
+
+    /**
+     * @return The directory holding the cache entries.
+     */
+    public Path getDirectory(){
+        return this.directory;
+    }
+
+    /**
+     * @return The maximum number of bytes the stored artifacts may occupy.
+     */
+    public long getMaxBytes(){
+        return this.maxBytes;
+    }
+
+    /**
+     * @return The number of bytes occupied by the stored artifacts.
+     */
+    public long getSize(){
+        synchronized(index) {
+            return this.totalBytes;
+        }
+    }
+
+    /**
+     * @return The number of entries in the cache.
+     */
+    public int getEntryCount(){
+        synchronized(index) {
+            return this.index.size();
+        }
+    }
+
+    /**
+     * @return The number of builds satisfied from the cache.
+     */
+    public long getHits(){
+        return this.hits.get();
+    }
+
+    /**
+     * @return The number of builds that could not be satisfied from the cache.
+     */
+    public long getMisses(){
+        return this.misses.get();
+    }
+
+    /**
+     * @return The number of entries added to the cache.
+     */
+    public long getStores(){
+        return this.stores.get();
+    }
+
+    /**
+     * @return The number of entries evicted from the cache.
+     */
+    public long getEvictions(){
+        return this.evictions.get();
+    }
+
+    /**
+     * @return The fraction of lookups that were hits, or zero if there were no lookups.
+     */
+    public double getHitRate(){
+        long hits = getHits();
+        long lookups = hits + getMisses();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("BuildCache[entries=%d, size=%d/%d, hits=%d, misses=%d, evictions=%d]",
+                getEntryCount(), getSize(), maxBytes, getHits(), getMisses(), getEvictions());
+    }
+}
@@ -0,0 +1,149 @@
+package JavaTeX.core;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * This class coalesces concurrent identical builds (see TeXBuilder.withCoalescer): while a build of a source is
+ * running, every other build of the same source with the same options and output files waits for it instead of
+ * starting TeX again, and receives the same BuildResult. Each caller waits on its own future, so a caller that gives up
+ * (e.g., times out or cancels) does not affect the others; the shared build is only cancelled once every caller has
+ * given up.
+ */
+public class BuildCoalescer {
+
+    private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<>(); /* The running builds. */
+    private final AtomicLong leaders = new AtomicLong(); /* The number of builds started. */
+    private final AtomicLong followers = new AtomicLong(); /* The number of callers that joined a running build. */
+
+    /**
+     * This class describes a running build and the callers waiting for it.
+     */
+    private static final class Flight {
+        final BuildContext context; /* The state of the shared build. */
+        final CompletableFuture<BuildResult> result = new CompletableFuture<>(); /* Completed by the shared build. */
+        private int waiters; /* The callers still waiting, guarded by this. */
+        private boolean abandoned; /* Did every caller give up? Guarded by this. */
+
+        Flight(BuildContext context){
+            this.context = context;
+        }
+
+        /**
+         * @return A boolean indicating whether a caller may still join the build.
+         */
+        synchronized boolean join(){
+            if(abandoned) return false;
+            waiters++;
+            return true;
+        }
+
+        /**
+         * This function signals that a caller gave up waiting. The build is cancelled once every caller has.
+         * @return A boolean indicating whether the build was abandoned.
+         */
+        boolean leave(){
+            synchronized(this) {
+                if(--waiters > 0 || result.isDone()) return false;
+                abandoned = true;
+            }
+            context.cancel();
+            return true;
+        }
+    }
+
+    /**
+     * This function joins the running build with the given key, or starts one on the given executor if there is none.
+     * @param key Identifies the source, options and output files of the build.
+     * @param newContext Creates the BuildContext of a new build.
+     * @param build Runs a new build as part of the given BuildContext.
+     * @param executor Runs a new build.
+     * @return A CompletableFuture completed with the BuildResult of the build. Cancelling it stops this caller
+     * waiting; the build itself is cancelled once every caller has.
+     */
+    CompletableFuture<BuildResult> join(String key, Supplier<BuildContext> newContext,
+                                        Function<BuildContext, BuildResult> build, Executor executor){
+        while(true) {
+            Flight flight = flights.get(key);
+            boolean leader = false;
+            if(flight == null) {
+                Flight created = new Flight(newContext.get());
+                flight = flights.putIfAbsent(key, created);
+                if(flight == null) {
+                    flight = created;
+                    leader = true;
+                }
+            }
+            if(!flight.join()) {
+                /* Every caller gave up on this build; start another. */
+                flights.remove(key, flight);
+                continue;
+            }
+            if(leader) {
+                leaders.incrementAndGet();
+                start(key, flight, build, executor);
+            }else {
+                followers.incrementAndGet();
+            }
+            return waiter(key, flight);
+        }
+    }
+
+    /**
+     * This function starts the given build.
+     * @param key Identifies the build.
+     * @param flight The build.
+     * @param build Runs the build.
+     * @param executor Runs the build.
+     */
+    private void start(String key, Flight flight, Function<BuildContext, BuildResult> build, Executor executor){
+        CompletableFuture.supplyAsync(() -> build.apply(flight.context), executor).whenComplete((result, error) -> {
+            /* Later callers start a new build, e.g., after the source changed on disk. */
+            flights.remove(key, flight);
+            if(error != null) flight.result.completeExceptionally(error);
+            else flight.result.complete(result);
+        });
+    }
+
+    /**
+     * @param key Identifies the build.
+     * @param flight The build.
+     * @return A CompletableFuture of a single caller, completed with the build's result.
+     */
+    private CompletableFuture<BuildResult> waiter(String key, Flight flight){
+        CompletableFuture<BuildResult> waiter = new CompletableFuture<>();
+        flight.result.whenComplete((result, error) -> {
+            if(error != null) waiter.completeExceptionally(error);
+            else waiter.complete(result);
+        });
+        waiter.whenComplete((result, error) -> {
+            if(waiter.isCancelled() && flight.leave()) flights.remove(key, flight);
+        });
+        return waiter;
+    }
+
+    /**
+     * @return The number of builds currently running.
+     */
+    public int getInFlight(){
+        return this.flights.size();
+    }
+
+    /**
+     * @return The number of builds started.
+     */
+    public long getLeaders(){
+        return this.leaders.get();
+    }
+
+    /**
+     * @return The number of callers that joined a running build instead of starting one.
+     */
+    public long getFollowers(){
+        return this.followers.get();
+    }
+}
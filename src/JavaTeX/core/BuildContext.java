@@ -0,0 +1,551 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * This class holds the state of a single build invocation: its deadline, whether it was cancelled, the process it is
+ * currently waiting on, the output its processes wrote and how long each of its stages took. Every process a build
+ * starts is registered here, so that a timeout or a cancellation can kill it (and anything it started) from any thread.
+ */
+final class BuildContext {
+
+    /* How long to wait for a killed or finished process's output to be drained. */
+    private static final long DRAIN_GRACE_MILLIS = 1000;
+    /* How often a thread waiting for a process permit checks for cancellation. */
+    private static final long POLL_MILLIS = 50;
+    /* How often the CPU time of a running process is sampled. */
+    private static final long SAMPLE_MILLIS = 10;
+
+    private final long deadlineNanos; /* The System.nanoTime() by which the build must finish. */
+    private final boolean hasDeadline; /* Does the build have a timeout? */
+    private final OutputRingBuffer output; /* The most recent output of every process the build ran. */
+    private final long startNanos; /* The System.nanoTime() at which the build started. */
+    private final String outputFileName; /* The output file name of the build, reported to listeners. */
+    private final List<BuildListener> listeners; /* Receive the build's events. */
+    private final Map<BuildStage, StageTiming> timings = new EnumMap<>(BuildStage.class); /* Guarded by this. */
+    private final Map<Artifact, Long> sizes = new EnumMap<>(Artifact.class); /* Guarded by this. */
+    private int pageCount = -1; /* The number of pages TeX wrote, or -1 if unknown; guarded by this. */
+    private final TeXLogParser parser; /* Parses TeX's output into diagnostics as it is written. */
+    private final boolean failFast; /* Should the build stop at TeX's first error? */
+    private final ResourceLimits limits; /* The resources the build may use. */
+    private volatile List<Path> limitedFiles = Collections.emptyList(); /* The files whose size is limited. */
+    private long usedCpuNanos; /* The CPU time used by the build's finished processes; guarded by this. */
+    private volatile String limitExceeded; /* Describes the limit the build exceeded, or null. */
+    private volatile boolean cancelled;
+    private volatile boolean failed; /* Did the build stop at TeX's first error? */
+    private volatile List<TeXDiagnostic> rejected; /* The problems the source was rejected for, or null. */
+    private volatile boolean timedOut;
+    private Process current; /* The process the build is waiting on, guarded by this. */
+
+    /**
+     * Customized Constructor
+     * @param timeoutNanos The time the build may take in nanoseconds, or zero (or less) for no timeout.
+     * @param outputLimit The number of bytes of process output retained.
+     * @param outputFileName The output file name of the build, reported to listeners.
+     * @param listeners Receive the build's events.
+     * @param failFast Should the build stop at TeX's first error, killing TeX?
+     * @param limits The resources the build may use.
+     */
+    BuildContext(long timeoutNanos, int outputLimit, String outputFileName, List<BuildListener> listeners,
+                 boolean failFast, ResourceLimits limits){
+        this.startNanos = System.nanoTime();
+        this.hasDeadline = timeoutNanos > 0;
+        this.deadlineNanos = startNanos + (hasDeadline ? timeoutNanos : 0);
+        this.output = new OutputRingBuffer(outputLimit);
+        this.outputFileName = outputFileName;
+        this.listeners = listeners;
+        this.failFast = failFast;
+        this.limits = limits;
+        this.parser = new TeXLogParser(this::diagnosed);
+    }
+
+    /**
+     * @return A boolean indicating whether the build was cancelled, timed out, exceeded a resource limit, stopped at
+     * TeX's first error or rejected, and should not start anything else.
+     */
+    boolean isStopped(){
+        if(!timedOut && hasDeadline && System.nanoTime() - deadlineNanos >= 0) timedOut = true;
+        return cancelled || timedOut || failed || limitExceeded != null || rejected != null;
+    }
+
+    /**
+     * This function sets the files whose size the build's ResourceLimits limit, i.e., the files its next process
+     * writes.
+     * @param files The files.
+     */
+    void limitFiles(List<Path> files){
+        limitedFiles = files;
+    }
+
+    /**
+     * @return The settings the build's TeX processes are given as environment variables.
+     */
+    Map<String, String> getEngineSettings(){
+        return limits.getEngineSettings();
+    }
+
+    /**
+     * This function marks the build as timed out, e.g., when the caller gave up waiting for a coalesced build.
+     */
+    void timeOut(){
+        timedOut = true;
+    }
+
+    /**
+     * This function rejects the build's source before any process is started.
+     * @param diagnostics The problems the source was rejected for.
+     */
+    void reject(List<TeXDiagnostic> diagnostics){
+        rejected = new ArrayList<>(diagnostics);
+    }
+
+    /**
+     * @return A boolean indicating whether the build's source was rejected.
+     */
+    boolean isRejected(){
+        return rejected != null;
+    }
+
+    /**
+     * This function cancels the build, killing the process it is waiting on.
+     */
+    void cancel(){
+        cancelled = true;
+        Process process;
+        synchronized(this) {
+            process = current;
+        }
+        if(process != null) kill(process);
+    }
+
+    /**
+     * This function reports a diagnostic parsed from TeX's output to the build's listeners. If the build fails fast,
+     * the process it is waiting on is killed.
+     * @param diagnostic The diagnostic.
+     */
+    private void diagnosed(TeXDiagnostic diagnostic){
+        if(failFast && !failed) {
+            failed = true;
+            Process process;
+            synchronized(this) {
+                process = current;
+            }
+            if(process != null) kill(process);
+        }
+        for(BuildListener listener : listeners) {
+            try {
+                listener.diagnosed(outputFileName, diagnostic);
+            }catch(RuntimeException e){
+                /* A listener must not fail the build. */
+            }
+        }
+    }
+
+    /**
+     * @return The errors TeX reported so far, in the order it reported them.
+     */
+    List<TeXDiagnostic> getDiagnostics(){
+        List<TeXDiagnostic> diagnostics = rejected;
+        return diagnostics != null ? new ArrayList<>(diagnostics) : parser.getDiagnostics();
+    }
+
+    /**
+     * This function determines how the build ended.
+     * @param succeeded Did every stage of the build succeed?
+     * @return The BuildStatus of the build.
+     */
+    BuildStatus getStatus(boolean succeeded){
+        if(rejected != null) return BuildStatus.REJECTED;
+        if(cancelled) return BuildStatus.CANCELLED;
+        if(limitExceeded != null) return BuildStatus.LIMIT_EXCEEDED;
+        if(timedOut) return BuildStatus.TIMED_OUT;
+        return succeeded ? BuildStatus.SUCCEEDED : BuildStatus.FAILED;
+    }
+
+    /**
+     * @return The most recent output of every process the build ran.
+     */
+    String getOutput(){
+        return output.contents();
+    }
+
+    /**
+     * @return The wall-clock time in nanoseconds since the build started.
+     */
+    long getElapsedNanos(){
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * This function records that a process of the given stage finished, and reports it to the build's listeners.
+     * @param timing The StageTiming of the process.
+     */
+    void record(StageTiming timing){
+        synchronized(this) {
+            timings.merge(timing.getStage(), timing, StageTiming::plus);
+        }
+        for(BuildListener listener : listeners) {
+            try {
+                listener.stageFinished(outputFileName, timing);
+            }catch(RuntimeException e){
+                /* A listener must not fail the build. */
+            }
+        }
+    }
+
+    /**
+     * @return The StageTimings recorded so far, in the order of the stages.
+     */
+    synchronized List<StageTiming> getTimings(){
+        return new ArrayList<>(timings.values());
+    }
+
+    /**
+     * This function records the size of an artifact the build produced.
+     * @param artifact The artifact.
+     * @param size The size of the artifact in bytes.
+     */
+    synchronized void recordSize(Artifact artifact, long size){
+        sizes.put(artifact, size);
+    }
+
+    /**
+     * @return The sizes in bytes of the artifacts the build produced.
+     */
+    synchronized Map<Artifact, Long> getSizes(){
+        return new EnumMap<>(sizes);
+    }
+
+    /**
+     * @param pageCount The number of pages TeX wrote.
+     */
+    synchronized void setPageCount(int pageCount){
+        this.pageCount = pageCount;
+    }
+
+    /**
+     * @return The number of pages TeX wrote, or -1 if unknown.
+     */
+    synchronized int getPageCount(){
+        return pageCount;
+    }
+
+    /**
+     * This function reports the given result to the build's listeners.
+     * @param result The BuildResult describing the build.
+     * @return The given result.
+     */
+    BuildResult finished(BuildResult result){
+        for(BuildListener listener : listeners) {
+            try {
+                listener.buildFinished(result);
+            }catch(RuntimeException e){
+                /* A listener must not fail the build. */
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This function blocks until the given limiter grants a permit, the build is stopped, or the thread is interrupted.
+     * @param limiter The limiter to be acquired.
+     * @return A boolean indicating whether a permit was granted (and must be released).
+     */
+    boolean acquire(ProcessLimiter limiter){
+        try {
+            while(!isStopped()) {
+                if(limiter.tryAcquire(POLL_MILLIS, TimeUnit.MILLISECONDS)) return true;
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * This function waits on a process that was started before this stage (e.g., a warm TeX process), see
+     * await(Process, ReaderSource, BuildStage, long). CPU time the process used before the call is not counted.
+     * @param process The process to be waited on.
+     * @param input Opens the input piped to the process, followed by "\end". If null nothing is piped.
+     * @param stage The stage the process runs.
+     * @return The exit value of the process, or -1 if it was killed.
+     * @throws InterruptedException If the calling thread was interrupted; the process is killed.
+     */
+    int await(Process process, TeXStream.ReaderSource input, BuildStage stage) throws InterruptedException {
+        return await(process, input, stage, System.nanoTime(), limits.isEnforced() ? sampleCpuNanos(process) : -1);
+    }
+
+    /**
+     * This function drains the output of the given process, pipes the given input to it, and waits until it exits,
+     * the build's deadline passes, the build is cancelled, the build exceeds a resource limit or (if it fails fast) TeX
+     * reports an error. In the latter cases the process and its descendants are killed. The output of TYPESET
+     * processes is parsed into diagnostics. How long the process ran is recorded as the given stage.
+     * @param process The process to be waited on.
+     * @param input Opens the input piped to the process, followed by "\end". If null nothing is piped.
+     * @param stage The stage the process runs.
+     * @param startNanos The System.nanoTime() at which the process was started.
+     * @return The exit value of the process, or -1 if it was killed.
+     * @throws InterruptedException If the calling thread was interrupted; the process is killed.
+     */
+    int await(Process process, TeXStream.ReaderSource input, BuildStage stage, long startNanos)
+            throws InterruptedException {
+        return await(process, input, stage, startNanos, 0);
+    }
+
+    /**
+     * This function implements await, recording the process's CPU time beyond the given baseline.
+     * @param process The process to be waited on.
+     * @param input Opens the input piped to the process. If null nothing is piped.
+     * @param stage The stage the process runs.
+     * @param startNanos The System.nanoTime() at which the stage started.
+     * @param baselineCpuNanos The CPU time the process used before the stage, or -1 if unknown (the stage's CPU time
+     *                         is then reported as unknown).
+     * @return The exit value of the process, or -1 if it was killed.
+     * @throws InterruptedException If the calling thread was interrupted; the process is killed.
+     */
+    private int await(Process process, TeXStream.ReaderSource input, BuildStage stage, long startNanos,
+                      long baselineCpuNanos) throws InterruptedException {
+        synchronized(this) {
+            current = process;
+        }
+        /* TeX reports its errors on the standard output. */
+        TeXLogParser stdoutParser = stage == BuildStage.TYPESET ? parser : null;
+        CompletableFuture<Void> stdout = drain(process.getInputStream(), stdoutParser);
+        CompletableFuture<Void> stderr = drain(process.getErrorStream(), null);
+        /* Pipe on another thread so a process that stops reading can not block the deadline. */
+        if(input != null) CompletableFuture.runAsync(() -> pipe(input, process), BuildExecutors.defaultExecutor());
+        else closeQuietly(process);
+        int exitVal = -1;
+        long cpuNanos = -1; /* The latest CPU time sampled. */
+        try {
+            boolean exited = false;
+            /* Without limits nothing is sampled: cancelling the build or failing fast kills the process itself. */
+            if(!limits.isEnforced() && !cancelled && !failed) {
+                if(hasDeadline) {
+                    exited = process.waitFor(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+                }else {
+                    process.waitFor();
+                    exited = true;
+                }
+            }
+            /* The CPU time of a process can only be read while it runs, so wait in slices and sample it. */
+            while(limits.isEnforced() && !cancelled && !failed && limitExceeded == null && !exited) {
+                cpuNanos = Math.max(cpuNanos, sampleCpuNanos(process));
+                if(limits.isEnforced() && exceedsLimits(process, usedSince(cpuNanos, baselineCpuNanos))) break;
+                long slice = TimeUnit.MILLISECONDS.toNanos(SAMPLE_MILLIS);
+                if(hasDeadline) {
+                    long remaining = deadlineNanos - System.nanoTime();
+                    if(remaining <= 0) break;
+                    slice = Math.min(slice, remaining);
+                }
+                exited = process.waitFor(slice, TimeUnit.NANOSECONDS);
+            }
+            if(!exited) {
+                isStopped();
+                kill(process);
+                return -1;
+            }
+            /* A process may write past a limit between two samples. */
+            if(limits.isEnforced()) exceedsLimits(null, usedSince(cpuNanos, baselineCpuNanos));
+            exitVal = cancelled || failed || limitExceeded != null ? -1 : process.exitValue();
+            return exitVal;
+        }catch(InterruptedException e){
+            kill(process);
+            throw e;
+        }finally{
+            synchronized(this) {
+                current = null;
+            }
+            awaitDrained(stdout);
+            awaitDrained(stderr);
+            if(stdoutParser != null) stdoutParser.close();
+            long stageCpuNanos = usedSince(cpuNanos, baselineCpuNanos);
+            if(stageCpuNanos > 0) {
+                synchronized(this) {
+                    usedCpuNanos += stageCpuNanos;
+                }
+            }
+            record(new StageTiming(stage, exitVal, System.nanoTime() - startNanos, stageCpuNanos));
+        }
+    }
+
+    /**
+     * @param cpuNanos The CPU time a process used, or -1 if it is unknown.
+     * @param baselineCpuNanos The CPU time the process used before the stage, or -1 if it is unknown.
+     * @return The CPU time the process used during the stage, or -1 if it is unknown.
+     */
+    private static long usedSince(long cpuNanos, long baselineCpuNanos){
+        return cpuNanos < 0 || baselineCpuNanos < 0 ? -1 : cpuNanos - baselineCpuNanos;
+    }
+
+    /**
+     * This function checks the build against its ResourceLimits. The first limit exceeded is reported in the build's
+     * output, and stops the build.
+     * @param process The running process whose memory is checked, or null if it exited.
+     * @param stageCpuNanos The CPU time the process used during the stage, or -1 if it is unknown.
+     * @return A boolean indicating whether the build exceeded a limit.
+     */
+    private boolean exceedsLimits(Process process, long stageCpuNanos){
+        String exceeded = null;
+        if(limits.getMaxCpuNanos() > 0 && stageCpuNanos >= 0) {
+            long total;
+            synchronized(this) {
+                total = usedCpuNanos + stageCpuNanos;
+            }
+            if(total > limits.getMaxCpuNanos()) {
+                exceeded = "CPU time of " + TimeUnit.NANOSECONDS.toMillis(total) + " ms exceeds the limit of "
+                        + TimeUnit.NANOSECONDS.toMillis(limits.getMaxCpuNanos()) + " ms";
+            }
+        }
+        if(exceeded == null && limits.getMaxMemory() > 0 && process != null) {
+            long memory = residentMemory(process.pid());
+            if(memory > limits.getMaxMemory()) {
+                exceeded = "Memory of " + memory + " bytes exceeds the limit of " + limits.getMaxMemory() + " bytes";
+            }
+        }
+        if(exceeded == null && limits.getMaxFileSize() > 0) {
+            for(Path file : limitedFiles) {
+                long size = file.toFile().length();
+                if(size > limits.getMaxFileSize()) {
+                    exceeded = "Size of " + file.getFileName() + " (" + size + " bytes) exceeds the limit of "
+                            + limits.getMaxFileSize() + " bytes";
+                    break;
+                }
+            }
+        }
+        if(exceeded == null) return false;
+        if(limitExceeded == null) {
+            limitExceeded = exceeded;
+            report(exceeded);
+        }
+        return true;
+    }
+
+    /**
+     * This function reports a problem JavaTeX found with the build in the build's output.
+     * @param problem The problem, without a trailing period.
+     */
+    void report(String problem){
+        byte[] message = ("\n! JavaTeX: " + problem + ".\n").getBytes(StandardCharsets.UTF_8);
+        output.write(message, 0, message.length);
+    }
+
+    /**
+     * @param pid The process identifier of a running process.
+     * @return The resident memory of the process in bytes, or -1 if it is unknown (e.g., not on Linux).
+     */
+    private static long residentMemory(long pid){
+        try {
+            for(String line : Files.readAllLines(Paths.get("/proc", Long.toString(pid), "status"))) {
+                if(line.startsWith("VmRSS:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]) * 1024;
+                }
+            }
+        }catch(IOException | RuntimeException e){
+            /* The process exited, or /proc is not available. */
+        }
+        return -1;
+    }
+
+    /**
+     * @param process The process to be sampled.
+     * @return The CPU time in nanoseconds the process has used so far, or -1 if it is unknown (e.g., it has exited).
+     */
+    private static long sampleCpuNanos(Process process){
+        Optional<Duration> cpu = process.info().totalCpuDuration();
+        return cpu.map(Duration::toNanos).orElse(-1L);
+    }
+
+    /**
+     * This function copies the given process stream into the build's output until the stream ends.
+     * @param stream The stream to be drained.
+     * @param parser Also parses the stream, or null if it is not parsed.
+     * @return A CompletableFuture completed once the stream ends.
+     */
+    private CompletableFuture<Void> drain(InputStream stream, TeXLogParser parser){
+        return CompletableFuture.runAsync(() -> {
+            byte[] chunk = new byte[4096];
+            int read;
+            try(InputStream in = stream) {
+                while((read = in.read(chunk)) != -1) {
+                    output.write(chunk, 0, read);
+                    if(parser != null) parser.write(chunk, 0, read);
+                }
+            }catch(IOException e){
+                /* The process was killed, its remaining output is lost. */
+            }
+        }, BuildExecutors.defaultExecutor());
+    }
+
+    /**
+     * This function waits briefly for a stream to be drained. A descendant of a killed process may hold the stream
+     * open, so the drainer is abandoned rather than waited on forever.
+     * @param drained The CompletableFuture completed once the stream is drained.
+     */
+    private static void awaitDrained(CompletableFuture<Void> drained){
+        try {
+            drained.get(DRAIN_GRACE_MILLIS, TimeUnit.MILLISECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }catch(Exception e){
+            /* Abandon the drainer, it ends once the stream is closed. */
+        }
+    }
+
+    /**
+     * This function pipes the given input, followed by "\end", to the standard input of the given TeX process.
+     * @param input Opens the input to be piped.
+     * @param process The TeX process.
+     */
+    private static void pipe(TeXStream.ReaderSource input, Process process){
+        try(Writer writer = new OutputStreamWriter(process.getOutputStream(), StandardCharsets.UTF_8);
+            Reader reader = input.open()) {
+            TeXStream.copy(reader, writer);
+            writer.write("\n\\end\n");
+        }catch(IOException e){
+            /* TeX stopped reading (e.g., a fatal error) or the input failed; don't typeset a partial document. */
+            if(process.isAlive()) kill(process);
+        }
+    }
+
+    /**
+     * This function closes the standard input of the given process, so it never waits for input that will not come.
+     * @param process The process.
+     */
+    private static void closeQuietly(Process process){
+        try {
+            process.getOutputStream().close();
+        }catch(IOException e){
+            /* The process already exited. */
+        }
+    }
+
+    /**
+     * This function kills the given process and every process it started.
+     * @param process The process to be killed.
+     */
+    static void kill(Process process){
+        /* Collect the descendants first, they are re-parented once the process dies. */
+        List<ProcessHandle> descendants = process.descendants().collect(Collectors.toList());
+        process.destroyForcibly();
+        for(ProcessHandle descendant : descendants) descendant.destroyForcibly();
+    }
+}
@@ -0,0 +1,60 @@
+package JavaTeX.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * This class supplies the executors used to run builds off the calling thread.
+ */
+final class BuildExecutors {
+
+    /* The executor used when a TeXBuilder was not given one explicitly. */
+    private static final ExecutorService DEFAULT_EXECUTOR = createDefaultExecutor();
+
+    /**
+     * Private constructor. BuildExecutors can not be instantiated.
+     */
+    private BuildExecutors(){
+    }
+
+    /**
+     * @return The executor used for asynchronous builds when none was configured.
+     */
+    static Executor defaultExecutor(){
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * This function creates the default executor. Builds spend nearly all of their time waiting on external processes,
+     * so a virtual thread per task is used when the running JRE supports it (Java 21+). Older JREs fall back to a cached
+     * pool of daemon threads.
+     * @return The default executor.
+     */
+    private static ExecutorService createDefaultExecutor(){
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }catch(Exception e){
+            return Executors.newCachedThreadPool(daemonThreadFactory("javatex-build"));
+        }
+    }
+
+    /**
+     * This function creates a ThreadFactory producing named daemon threads, so idle build threads never keep the JVM
+     * alive.
+     * @param prefix The prefix of every thread name.
+     * @return The ThreadFactory.
+     */
+    static ThreadFactory daemonThreadFactory(String prefix){
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
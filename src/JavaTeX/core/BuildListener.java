@@ -0,0 +1,32 @@
+package JavaTeX.core;
+
+/**
+ * This interface receives events from the builds of a TeXBuilder (see TeXBuilder.withListener). Events are delivered
+ * on the thread running the build, so implementations should return quickly. An exception thrown by a listener is
+ * ignored and never fails the build.
+ */
+public interface BuildListener {
+
+    /**
+     * This function is called when a stage of a build finishes.
+     * @param outputFileName The output file name of the build (Excluding file extensions).
+     * @param timing The StageTiming of the stage.
+     */
+    default void stageFinished(String outputFileName, StageTiming timing){
+    }
+
+    /**
+     * This function is called when TeX reports an error, while it is still running.
+     * @param outputFileName The output file name of the build (Excluding file extensions).
+     * @param diagnostic The TeXDiagnostic describing the error.
+     */
+    default void diagnosed(String outputFileName, TeXDiagnostic diagnostic){
+    }
+
+    /**
+     * This function is called when a build finishes.
+     * @param result The BuildResult describing the build.
+     */
+    default void buildFinished(BuildResult result){
+    }
+}
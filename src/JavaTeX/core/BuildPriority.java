@@ -0,0 +1,13 @@
+package JavaTeX.core;
+
+/**
+ * This enum lists the priority classes of a BuildScheduler, from the most to the least urgent.
+ */
+public enum BuildPriority {
+    /* Builds a user is waiting on, e.g., a preview. */
+    INTERACTIVE,
+    /* Builds without a particular urgency. */
+    NORMAL,
+    /* Builds nobody is waiting on, e.g., a nightly export. */
+    BULK
+}
@@ -0,0 +1,324 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * This class describes the outcome of a single build and gives access to the artifacts (pdf, dvi, log) it kept, either
+ * as a ByteBuffer or by transferring them directly to a channel. It also records how long each stage of the build took
+ * (see StageTiming), the sizes of the artifacts produced and the number of pages typeset.
+ */
+public class BuildResult {
+
+    /* Artifacts at least this large are memory-mapped rather than read onto the heap. */
+    public static final long MAPPING_THRESHOLD = 64 * 1024;
+
+    private final BuildStatus status; /* How the build ended. */
+    private final Path outputFilePath; /* The path to the artifacts (Excluding the files themselves). */
+    private final String outputFileName; /* The name of the artifacts (Excluding file extensions). */
+    private final Set<Artifact> artifacts; /* The artifacts kept by the build. */
+    private final String output; /* The most recent output of the processes the build ran. */
+    private final boolean cached; /* Were the artifacts restored from a BuildCache? */
+    private final List<StageTiming> timings; /* The timings of the stages the build ran, in order. */
+    private final Map<Artifact, Long> sizes; /* The sizes of the artifacts the build produced. */
+    private final int pageCount; /* The number of pages typeset, or -1 if unknown. */
+    private final long wallNanos; /* The wall-clock time the build took. */
+    private final List<TeXDiagnostic> diagnostics; /* The errors TeX reported. */
+    private final long queueNanos; /* The time the build waited in a BuildScheduler's queue. */
+
+    /**
+     * Customized Constructor
+     * @param status How the build ended.
+     * @param outputFilePath The path to the artifacts (Excluding the files themselves).
+     * @param outputFileName The name of the artifacts (Excluding file extensions).
+     * @param artifacts The artifacts kept by the build.
+     * @param cached Were the artifacts restored from a BuildCache?
+     * @param context The build invocation, whose output, diagnostics, timings, sizes and page count are recorded.
+     */
+    BuildResult(BuildStatus status, Path outputFilePath, String outputFileName, Set<Artifact> artifacts, boolean cached,
+                BuildContext context){
+        this(status, outputFilePath, outputFileName, artifacts, cached, context.getOutput(), context.getTimings(),
+                context.getSizes(), context.getPageCount(), context.getElapsedNanos(), context.getDiagnostics());
+    }
+
+    /**
+     * Customized Constructor
+     * Describes a build that ran elsewhere, e.g., on a TeXBuildServer.
+     * @param status How the build ended.
+     * @param outputFilePath The path to the artifacts (Excluding the files themselves).
+     * @param outputFileName The name of the artifacts (Excluding file extensions).
+     * @param artifacts The artifacts kept by the build.
+     * @param cached Were the artifacts restored from a BuildCache?
+     * @param output The output of the build's processes.
+     * @param timings The timings of the build's stages.
+     * @param sizes The sizes of the artifacts produced.
+     * @param pageCount The number of pages typeset, or -1 if unknown.
+     * @param wallNanos The wall-clock time the build took.
+     * @param diagnostics The errors TeX reported.
+     */
+    BuildResult(BuildStatus status, Path outputFilePath, String outputFileName, Set<Artifact> artifacts, boolean cached,
+                String output, List<StageTiming> timings, Map<Artifact, Long> sizes, int pageCount, long wallNanos,
+                List<TeXDiagnostic> diagnostics){
+        this.status = status;
+        this.outputFilePath = outputFilePath;
+        this.outputFileName = outputFileName;
+        this.artifacts = artifacts.isEmpty() ? Collections.emptySet()
+                : Collections.unmodifiableSet(EnumSet.copyOf(artifacts));
+        this.output = output;
+        this.cached = cached;
+        this.timings = Collections.unmodifiableList(timings);
+        this.sizes = Collections.unmodifiableMap(sizes);
+        this.pageCount = pageCount;
+        this.wallNanos = wallNanos;
+        this.diagnostics = Collections.unmodifiableList(diagnostics);
+        this.queueNanos = 0;
+    }
+
+    /**
+     * Copy Constructor
+     * @param other The BuildResult whose description is copied.
+     * @param queueNanos The time the build waited in a BuildScheduler's queue.
+     */
+    private BuildResult(BuildResult other, long queueNanos){
+        this.status = other.status;
+        this.outputFilePath = other.outputFilePath;
+        this.outputFileName = other.outputFileName;
+        this.artifacts = other.artifacts;
+        this.output = other.output;
+        this.cached = other.cached;
+        this.timings = other.timings;
+        this.sizes = other.sizes;
+        this.pageCount = other.pageCount;
+        this.wallNanos = other.wallNanos;
+        this.diagnostics = other.diagnostics;
+        this.queueNanos = queueNanos;
+    }
+
+    /**
+     * @param queueNanos The time the build waited in a BuildScheduler's queue.
+     * @return A copy of this BuildResult recording the given time queued.
+     */
+    BuildResult queued(long queueNanos){
+        return new BuildResult(this, queueNanos);
+    }
+
+    /**
+     * @return A boolean indicating whether the source was built successfully.
+     */
+    public boolean isSuccessful(){
+        return this.status == BuildStatus.SUCCEEDED;
+    }
+
+    /**
+     * @return The BuildStatus describing how the build ended.
+     */
+    public BuildStatus getStatus(){
+        return this.status;
+    }
+
+    /**
+     * @return The most recent output (standard output and error) of the processes the build ran, bounded by the
+     * TeXBuilder's output limit.
+     */
+    public String getOutput(){
+        return this.output;
+    }
+
+    /**
+     * @return The errors TeX reported, in the order it reported them. A build that fails fast (see
+     * TeXBuilder.withFailFast) stops at the first one.
+     */
+    public List<TeXDiagnostic> getDiagnostics(){
+        return this.diagnostics;
+    }
+
+    /**
+     * @return A boolean indicating whether the artifacts were restored from a BuildCache rather than built.
+     */
+    public boolean isCached(){
+        return this.cached;
+    }
+
+    /**
+     * @return The wall-clock time in nanoseconds the build took, including any wait for a process permit.
+     */
+    public long getWallNanos(){
+        return this.wallNanos;
+    }
+
+    /**
+     * @return The time in nanoseconds the build waited in a BuildScheduler's queue before it started, which is not
+     * part of getWallNanos(); zero if it was not scheduled.
+     */
+    public long getQueueNanos(){
+        return this.queueNanos;
+    }
+
+    /**
+     * @return The StageTimings of the stages the build ran, in the order of BuildStage. Stages that were skipped (e.g.,
+     * every stage of a cached build) are absent.
+     */
+    public List<StageTiming> getStageTimings(){
+        return this.timings;
+    }
+
+    /**
+     * @param stage The stage to be looked up.
+     * @return The StageTiming of the given stage, or null if the build did not run it.
+     */
+    public StageTiming getStageTiming(BuildStage stage){
+        for(StageTiming timing : this.timings) {
+            if(timing.getStage() == stage) return timing;
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of times TeX was run (zero if the build was cached or TeX could not be started).
+     */
+    public int getPasses(){
+        StageTiming typeset = getStageTiming(BuildStage.TYPESET);
+        return typeset != null ? typeset.getProcesses() : 0;
+    }
+
+    /**
+     * @return The number of pages TeX typeset, or -1 if it is unknown (e.g., the build was cached or TeX did not
+     * report it).
+     */
+    public int getPageCount(){
+        return this.pageCount;
+    }
+
+    /**
+     * @param artifact The artifact to be looked up.
+     * @return The size in bytes of the given artifact when the build produced it, or -1 if it was not produced. This
+     * includes artifacts the build did not keep (e.g., the dvi file of a pdf-only build).
+     */
+    public long getSize(Artifact artifact){
+        Long size = this.sizes.get(artifact);
+        return size != null ? size : -1;
+    }
+
+    /**
+     * @return The sizes in bytes of the artifacts the build produced.
+     */
+    public Map<Artifact, Long> getSizes(){
+        return this.sizes;
+    }
+
+    /**
+     * @return The name of the artifacts (Excluding file extensions).
+     */
+    public String getOutputFileName(){
+        return this.outputFileName;
+    }
+
+    /**
+     * @return The artifacts the build was configured to keep.
+     */
+    public Set<Artifact> getArtifacts(){
+        return this.artifacts;
+    }
+
+    /**
+     * @param artifact The artifact to be checked.
+     * @return A boolean indicating whether the build kept the given artifact and it still exists.
+     */
+    public boolean hasArtifact(Artifact artifact){
+        return this.artifacts.contains(artifact) && Files.isRegularFile(getPath(artifact));
+    }
+
+    /**
+     * @param artifact The artifact to be located.
+     * @return The path of the given artifact. The file only exists if the build kept it.
+     */
+    public Path getPath(Artifact artifact){
+        return this.outputFilePath.resolve(this.outputFileName + artifact.getExtension());
+    }
+
+    /**
+     * This function returns the contents of the given artifact. Artifacts of at least MAPPING_THRESHOLD bytes are
+     * memory-mapped, smaller ones are read onto the heap. The returned buffer is read-only.
+     * @param artifact The artifact to be read.
+     * @return A ByteBuffer holding the contents of the artifact.
+     * @throws IOException If the build did not keep the artifact or it could not be read.
+     */
+    public ByteBuffer read(Artifact artifact) throws IOException {
+        try(FileChannel channel = open(artifact)) {
+            long size = channel.size();
+            if(size >= MAPPING_THRESHOLD) return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            ByteBuffer buffer = ByteBuffer.allocate((int) size);
+            while(buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                /* Keep reading until the buffer is full. */
+            }
+            buffer.flip();
+            return buffer.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * This function transfers the contents of the given artifact to the given channel without copying it through the
+     * heap (the operating system may send it straight from the file cache, e.g., to a socket).
+     * @param artifact The artifact to be transferred.
+     * @param target The channel the artifact is written to.
+     * @return The number of bytes transferred.
+     * @throws IOException If the build did not keep the artifact or it could not be transferred.
+     */
+    public long transferTo(Artifact artifact, WritableByteChannel target) throws IOException {
+        try(FileChannel channel = open(artifact)) {
+            long size = channel.size();
+            long position = 0;
+            while(position < size) {
+                long transferred = channel.transferTo(position, size - position, target);
+                if(transferred <= 0) break;
+                position += transferred;
+            }
+            return position;
+        }
+    }
+
+    /**
+     * This function deletes every artifact kept by the build.
+     * @return A boolean indicating whether every artifact was deleted (or did not exist).
+     */
+    public boolean deleteArtifacts(){
+        boolean result = true;
+        for(Artifact artifact : this.artifacts) {
+            try {
+                Files.deleteIfExists(getPath(artifact));
+            }catch(IOException e){
+                result = false;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * This function opens the given artifact for reading.
+     * @param artifact The artifact to be opened.
+     * @return A FileChannel reading the artifact.
+     * @throws IOException If the build did not keep the artifact or it could not be opened.
+     */
+    private FileChannel open(Artifact artifact) throws IOException {
+        if(!this.artifacts.contains(artifact)) throw new NoSuchFileException(getPath(artifact).toString(), null,
+                "the build did not keep this artifact");
+        return FileChannel.open(getPath(artifact), StandardOpenOption.READ);
+    }
+
+    @Override
+    public String toString(){
+        return "BuildResult[status=" + this.status + ", path=" + this.outputFilePath.resolve(this.outputFileName)
+                + ", artifacts=" + this.artifacts + ", pages=" + this.pageCount + ", stages=" + this.timings + "]";
+    }
+}
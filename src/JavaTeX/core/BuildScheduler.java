@@ -0,0 +1,198 @@
+package JavaTeX.core;
+
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This class schedules builds by priority (see TeXBuilder.withScheduler): a fixed number of workers always start the
+ * most urgent queued build, and builds of the same priority start in the order they were submitted. The queue is
+ * bounded; when it is full a submitted build is handled according to the scheduler's Policy. A build that is refused
+ * or shed never starts a process and ends OVERLOADED.
+ *
+ * The time a build spent queued is reported by BuildResult.getQueueNanos(), separately from the time it took
+ * (BuildResult.getWallNanos()), and does not count against the TeXBuilder's timeout.
+ */
+public class BuildScheduler implements AutoCloseable {
+
+    /**
+     * This enum lists what a BuildScheduler does with a build submitted while its queue is full.
+     */
+    public enum Policy {
+        /* The build is refused. */
+        REJECT,
+        /* The caller waits for room in the queue. */
+        BLOCK,
+        /* The newest of the least urgent queued builds is shed to make room, if it is less urgent than the build;
+         * otherwise the build is refused. */
+        SHED_LOWEST
+    }
+
+    /**
+     * This class describes a queued build.
+     */
+    private static final class Job implements Comparable<Job> {
+        final TeXBuilder builder; /* Runs the build. */
+        final TeXSource source; /* The source to be built. */
+        final BuildPriority priority; /* The priority of the build. */
+        final long sequence; /* Orders builds of the same priority. */
+        final long queuedAt = System.nanoTime(); /* When the build was queued. */
+        final CompletableFuture<BuildResult> result = new CompletableFuture<>(); /* Completed by the build. */
+
+        Job(TeXBuilder builder, TeXSource source, BuildPriority priority, long sequence){
+            this.builder = builder;
+            this.source = source;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Job other){
+            int order = priority.compareTo(other.priority);
+            return order != 0 ? order : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final int capacity; /* The number of builds that may be queued. */
+    private final Policy policy; /* What happens to a build submitted while the queue is full. */
+    private final TreeSet<Job> queue = new TreeSet<>(); /* The queued builds, most urgent first. Guarded by this. */
+    private final Thread[] workers; /* Run the queued builds. */
+    private long sequence; /* The number of builds submitted. Guarded by this. */
+    private long refused; /* The number of builds refused because the queue was full. Guarded by this. */
+    private long shed; /* The number of queued builds shed for more urgent ones. Guarded by this. */
+    private boolean closed; /* Was the scheduler closed? Guarded by this. */
+
+    /**
+     * Customized Constructor
+     * @param workers The number of builds run at once. Values less than one are treated as one.
+     * @param capacity The number of builds that may be queued. Values less than one are treated as one.
+     * @param policy What happens to a build submitted while the queue is full.
+     */
+    public BuildScheduler(int workers, int capacity, Policy policy){
+        this.capacity = Math.max(1, capacity);
+        this.policy = policy;
+        this.workers = new Thread[Math.max(1, workers)];
+        ThreadFactory factory = BuildExecutors.daemonThreadFactory("javatex-scheduler");
+        for(int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = factory.newThread(this::work);
+            this.workers[i].start();
+        }
+    }
+
+    /**
+     * This function queues a build of the given source.
+     * @param builder Runs the build. Its own scheduler, if any, is bypassed.
+     * @param source The source to be built.
+     * @param priority The priority of the build.
+     * @return A CompletableFuture completed with the BuildResult of the build. Cancelling it removes a queued build
+     * from the queue; a running build runs until it ends or times out.
+     */
+    public CompletableFuture<BuildResult> submit(TeXBuilder builder, TeXSource source, BuildPriority priority){
+        Job job;
+        Job victim = null;
+        synchronized(this) {
+            job = new Job(builder, source, priority, sequence++);
+            if(!closed && queue.size() >= capacity) {
+                if(policy == Policy.BLOCK) {
+                    try {
+                        while(!closed && queue.size() >= capacity) wait();
+                    }catch(InterruptedException e){
+                        Thread.currentThread().interrupt();
+                        job.result.complete(builder.notBuilt(BuildStatus.CANCELLED));
+                        return job.result;
+                    }
+                }else if(policy == Policy.SHED_LOWEST && queue.last().priority.compareTo(priority) > 0) {
+                    victim = queue.pollLast();
+                    shed++;
+                }else {
+                    refused++;
+                    job.result.complete(builder.notBuilt(BuildStatus.OVERLOADED));
+                    return job.result;
+                }
+            }
+            if(closed) {
+                job.result.complete(builder.notBuilt(BuildStatus.CANCELLED));
+                return job.result;
+            }
+            queue.add(job);
+            notifyAll();
+        }
+        if(victim != null) victim.result.complete(victim.builder.notBuilt(BuildStatus.OVERLOADED));
+        Job queued = job;
+        job.result.whenComplete((result, error) -> {
+            if(queued.result.isCancelled()) dequeue(queued);
+        });
+        return job.result;
+    }
+
+    /**
+     * This function runs queued builds until the scheduler is closed.
+     */
+    private void work(){
+        while(true) {
+            Job job;
+            synchronized(this) {
+                try {
+                    while(!closed && queue.isEmpty()) wait();
+                }catch(InterruptedException e){
+                    return;
+                }
+                if(closed) return;
+                job = queue.pollFirst();
+                /* Make room for a blocked caller. */
+                notifyAll();
+            }
+            long queueNanos = System.nanoTime() - job.queuedAt;
+            try {
+                job.result.complete(job.builder.compileUnscheduled(job.source).queued(queueNanos));
+            }catch(RuntimeException | Error e){
+                job.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    /**
+     * This function removes a cancelled build from the queue.
+     * @param job The build.
+     */
+    private synchronized void dequeue(Job job){
+        if(queue.remove(job)) notifyAll();
+    }
+
+    /**
+     * This function stops the workers once their running builds end. Queued builds, and builds submitted afterwards,
+     * end CANCELLED.
+     */
+    @Override
+    public void close(){
+        Job[] cancelled;
+        synchronized(this) {
+            closed = true;
+            cancelled = queue.toArray(new Job[0]);
+            queue.clear();
+            notifyAll();
+        }
+        for(Job job : cancelled) job.result.complete(job.builder.notBuilt(BuildStatus.CANCELLED));
+    }
+
+    /**
+     * @return The number of builds queued.
+     */
+    public synchronized int getQueued(){
+        return this.queue.size();
+    }
+
+    /**
+     * @return The number of builds refused because the queue was full.
+     */
+    public synchronized long getRefused(){
+        return this.refused;
+    }
+
+    /**
+     * @return The number of queued builds shed for more urgent ones.
+     */
+    public synchronized long getShed(){
+        return this.shed;
+    }
+}
@@ -0,0 +1,17 @@
+package JavaTeX.core;
+
+/**
+ * This enum lists the stages of a build whose processes are timed.
+ */
+public enum BuildStage {
+    /* TeX dumps a preamble into a format file (see TeXFormat), once per preamble. */
+    FORMAT,
+    /* TeX typesets the source into a dvi file. */
+    TYPESET,
+    /* dvipdfm converts the dvi file to a pdf file. */
+    CONVERT,
+    /* The log and dvi files the TeXBuilder does not keep are removed. */
+    CLEANUP,
+    /* The pdf files of the chunks of a chunked build are merged in the JVM (see TeXBuilder.compileChunked). */
+    MERGE
+}
@@ -0,0 +1,21 @@
+package JavaTeX.core;
+
+/**
+ * This enum lists the ways a build can end.
+ */
+public enum BuildStatus {
+    /* Every stage of the build succeeded. */
+    SUCCEEDED,
+    /* A stage of the build failed (e.g., TeX reported an error). */
+    FAILED,
+    /* The build did not finish before its timeout and its processes were killed. */
+    TIMED_OUT,
+    /* The build was cancelled and its processes were killed. */
+    CANCELLED,
+    /* The build exceeded one of its ResourceLimits and its processes were killed. */
+    LIMIT_EXCEEDED,
+    /* The source failed validation (see TeXValidator), so no process was started. */
+    REJECTED,
+    /* The build was refused or shed by a BuildScheduler whose queue was full, so no process was started. */
+    OVERLOADED
+}
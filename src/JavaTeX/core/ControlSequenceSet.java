@@ -0,0 +1,98 @@
+package JavaTeX.core;
+
+import java.util.Arrays;
+
+/**
+ * This class is an open-addressing hash set of control sequence names (without the escape character). Names can be
+ * looked up as a region of a larger string, so scanning a source does not allocate a String per control sequence.
+ */
+final class ControlSequenceSet {
+
+    private String[] names; /* The table of names; null slots are empty. Its length is a power of two. */
+    private int size; /* The number of names in the table. */
+
+    /**
+     * Default Constructor
+     * Creates an empty set.
+     */
+    ControlSequenceSet(){
+        this.names = new String[16];
+    }
+
+    /**
+     * Copy Constructor
+     * @param other The set whose names are copied.
+     */
+    ControlSequenceSet(ControlSequenceSet other){
+        this.names = Arrays.copyOf(other.names, other.names.length);
+        this.size = other.size;
+    }
+
+    /**
+     * This function adds the given name to the set.
+     * @param name The name to be added.
+     */
+    void add(String name){
+        if(contains(name, 0, name.length())) return;
+        if(2 * (size + 1) > names.length) resize();
+        insert(names, name);
+        size++;
+    }
+
+    /**
+     * This function determines if the given region of a string is a name in the set.
+     * @param text The string holding the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @return A boolean indicating whether the name is in the set.
+     */
+    boolean contains(String text, int start, int end){
+        int length = end - start;
+        int mask = names.length - 1;
+        for(int slot = hash(text, start, end) & mask; names[slot] != null; slot = (slot + 1) & mask) {
+            String name = names[slot];
+            if(name.length() == length && name.regionMatches(0, text, start, length)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of names in the set.
+     */
+    int size(){
+        return this.size;
+    }
+
+    /**
+     * This function doubles the size of the table.
+     */
+    private void resize(){
+        String[] table = new String[names.length * 2];
+        for(String name : names) if(name != null) insert(table, name);
+        names = table;
+    }
+
+    /**
+     * This function inserts the given name into the first free slot of the given table.
+     * @param table The table.
+     * @param name The name to be inserted.
+     */
+    private static void insert(String[] table, String name){
+        int mask = table.length - 1;
+        int slot = hash(name, 0, name.length()) & mask;
+        while(table[slot] != null) slot = (slot + 1) & mask;
+        table[slot] = name;
+    }
+
+    /**
+     * @param text The string holding the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @return The hash of the given region, spread so that similar names use distant slots.
+     */
+    private static int hash(String text, int start, int end){
+        int h = 0;
+        for(int i = start; i < end; i++) h = 31 * h + text.charAt(i);
+        return h ^ (h >>> 16);
+    }
+}
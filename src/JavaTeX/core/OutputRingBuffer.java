@@ -0,0 +1,72 @@
+package JavaTeX.core;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class keeps the most recent bytes written to it, up to a fixed capacity. It is used to hold the output of the
+ * processes a build runs without letting a chatty process consume unbounded memory.
+ */
+final class OutputRingBuffer {
+
+    private final byte[] buffer; /* The retained bytes, wrapping around at the end. */
+    private long total; /* The number of bytes ever written. */
+
+    /**
+     * Customized Constructor
+     * @param capacity The number of bytes retained.
+     */
+    OutputRingBuffer(int capacity){
+        this.buffer = new byte[Math.max(0, capacity)];
+    }
+
+    /**
+     * This function appends the given bytes, overwriting the oldest retained bytes if the buffer is full.
+     * @param bytes The bytes to be appended.
+     * @param offset The position of the first byte to be appended.
+     * @param length The number of bytes to be appended.
+     */
+    synchronized void write(byte[] bytes, int offset, int length){
+        if(buffer.length == 0) {
+            total += length;
+            return;
+        }
+        /* Only the last buffer.length bytes can survive. */
+        if(length > buffer.length) {
+            offset += length - buffer.length;
+            total += length - buffer.length;
+            length = buffer.length;
+        }
+        int position = (int) (total % buffer.length);
+        int first = Math.min(length, buffer.length - position);
+        System.arraycopy(bytes, offset, buffer, position, first);
+        System.arraycopy(bytes, offset + first, buffer, 0, length - first);
+        total += length;
+    }
+
+    /**
+     * @return The number of bytes ever written to the buffer.
+     */
+    synchronized long getTotalBytes(){
+        return this.total;
+    }
+
+    /**
+     * @return A boolean indicating whether bytes were discarded because the buffer was full.
+     */
+    synchronized boolean isTruncated(){
+        return this.total > this.buffer.length;
+    }
+
+    /**
+     * @return The retained bytes decoded as UTF-8, oldest first.
+     */
+    synchronized String contents(){
+        int size = (int) Math.min(total, buffer.length);
+        byte[] bytes = new byte[size];
+        int start = (int) ((total - size) % Math.max(1, buffer.length));
+        int first = Math.min(size, buffer.length - start);
+        System.arraycopy(buffer, start, bytes, 0, first);
+        System.arraycopy(buffer, 0, bytes, first, size - first);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
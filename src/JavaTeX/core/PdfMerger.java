@@ -0,0 +1,881 @@
+package JavaTeX.core;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * This class concatenates the pages of pdf files into a single pdf file, in pure Java (see
+ * TeXBuilder.compileChunked). The objects each page uses (contents, fonts, images, annotations, ...) are copied
+ * unchanged and renumbered; objects shared by pages of the same file are copied once. Cross-reference tables and
+ * streams, object streams and incremental updates are read; the merged file is written with a plain cross-reference
+ * table. Document-level structures (outlines, named destinations, metadata) are not carried over, and encrypted files
+ * are refused.
+ */
+public final class PdfMerger {
+
+    /* Page attributes a page inherits from its ancestors in the page tree. */
+    private static final String[] INHERITABLE = {"Resources", "MediaBox", "CropBox", "Rotate"};
+    /* Finds the objects of a file whose cross-reference data is damaged. */
+    private static final Pattern OBJECT_HEADER = Pattern.compile("(\\d+)\\s+(\\d+)\\s+obj\\b");
+    /* The value of a missing object. */
+    private static final Raw NULL = new Raw("null");
+
+    /**
+     * Private constructor. PdfMerger can not be instantiated.
+     */
+    private PdfMerger(){
+    }
+
+    /**
+     * This function writes the pages of the given pdf files, in order, to a single pdf file.
+     * @param inputs The pdf files whose pages are merged.
+     * @param output The pdf file written.
+     * @return The number of pages written.
+     * @throws IOException If an input could not be read or parsed, or the output could not be written.
+     */
+    public static int merge(List<Path> inputs, Path output) throws IOException {
+        List<PdfDocument> documents = new ArrayList<>(inputs.size());
+        for(Path input : inputs) {
+            try {
+                documents.add(new PdfDocument(Files.readAllBytes(input)));
+            }catch(IOException e){
+                throw new IOException("Could not read " + input + ": " + e.getMessage(), e);
+            }
+        }
+        try(OutputStream out = new BufferedOutputStream(Files.newOutputStream(output))) {
+            return new PdfWriter(out).write(documents);
+        }
+    }
+
+    /**
+     * This class holds a name object (without its leading slash).
+     */
+    private static final class Name {
+        final String value;
+
+        Name(String value){
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object other){
+            return other instanceof Name && ((Name) other).value.equals(value);
+        }
+
+        @Override
+        public int hashCode(){
+            return value.hashCode();
+        }
+    }
+
+    /**
+     * This class holds an indirect reference.
+     */
+    private static final class Ref {
+        final int number;
+        final int generation;
+
+        Ref(int number, int generation){
+            this.number = number;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * This class holds an object that is copied exactly as it was read: a number, string, boolean or null.
+     */
+    private static final class Raw {
+        final byte[] bytes;
+
+        Raw(byte[] bytes){
+            this.bytes = bytes;
+        }
+
+        Raw(String text){
+            this(text.getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        @Override
+        public String toString(){
+            return new String(bytes, StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    /**
+     * This class holds a stream: its dictionary and its (still encoded) data.
+     */
+    private static final class Stream {
+        final Map<String, Object> dictionary;
+        final byte[] data;
+
+        Stream(Map<String, Object> dictionary, byte[] data){
+            this.dictionary = dictionary;
+            this.data = data;
+        }
+    }
+
+    /**
+     * This class describes a page: its object number and its dictionary, including the attributes it inherits.
+     */
+    private static final class Page {
+        final int number;
+        final Map<String, Object> dictionary;
+
+        Page(int number, Map<String, Object> dictionary){
+            this.number = number;
+            this.dictionary = dictionary;
+        }
+    }
+
+    /**
+     * This class reads the objects of pdf data. Dictionaries are read as Maps keyed by name, arrays as Lists.
+     */
+    private static final class Lexer {
+        final byte[] data;
+        int position;
+
+        Lexer(byte[] data, int position){
+            this.data = data;
+            this.position = position;
+        }
+
+        static boolean isWhitespace(int c){
+            return c == 0 || c == 9 || c == 10 || c == 12 || c == 13 || c == 32;
+        }
+
+        static boolean isDelimiter(int c){
+            return c == '(' || c == ')' || c == '<' || c == '>' || c == '[' || c == ']' || c == '{' || c == '}'
+                    || c == '/' || c == '%';
+        }
+
+        static boolean isRegular(int c){
+            return !isWhitespace(c) && !isDelimiter(c);
+        }
+
+        void skipWhitespace(){
+            while(position < data.length) {
+                int c = data[position] & 0xff;
+                if(isWhitespace(c)) {
+                    position++;
+                }else if(c == '%') {
+                    while(position < data.length && data[position] != '\n' && data[position] != '\r') position++;
+                }else {
+                    return;
+                }
+            }
+        }
+
+        boolean startsWith(String text){
+            return startsWith(data, position, text);
+        }
+
+        static boolean startsWith(byte[] data, int position, String text){
+            if(position < 0 || position + text.length() > data.length) return false;
+            for(int i = 0; i < text.length(); i++) if(data[position + i] != text.charAt(i)) return false;
+            return true;
+        }
+
+        /**
+         * @return The next run of regular characters, e.g., a number or keyword; empty at a delimiter.
+         */
+        String token(){
+            skipWhitespace();
+            int start = position;
+            while(position < data.length && isRegular(data[position] & 0xff)) position++;
+            return new String(data, start, position - start, StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * @return The next object.
+         * @throws IOException If the data does not hold an object.
+         */
+        Object parse() throws IOException {
+            skipWhitespace();
+            if(position >= data.length) throw new IOException("Unexpected end of data");
+            int c = data[position] & 0xff;
+            if(c == '/') {
+                int start = ++position;
+                while(position < data.length && isRegular(data[position] & 0xff)) position++;
+                return new Name(new String(data, start, position - start, StandardCharsets.ISO_8859_1));
+            }
+            if(c == '<' && position + 1 < data.length && data[position + 1] == '<') {
+                position += 2;
+                Map<String, Object> dictionary = new LinkedHashMap<>();
+                while(true) {
+                    skipWhitespace();
+                    if(startsWith(">>")) {
+                        position += 2;
+                        return dictionary;
+                    }
+                    Object key = parse();
+                    if(!(key instanceof Name)) throw new IOException("Expected a name at offset " + position);
+                    dictionary.put(((Name) key).value, parse());
+                }
+            }
+            if(c == '<') {
+                int start = position;
+                while(position < data.length && data[position] != '>') position++;
+                return new Raw(Arrays.copyOfRange(data, start, ++position));
+            }
+            if(c == '(') {
+                int start = position;
+                for(int depth = 0; position < data.length; ) {
+                    byte b = data[position++];
+                    if(b == '\\') position++;
+                    else if(b == '(') depth++;
+                    else if(b == ')' && --depth == 0) break;
+                }
+                return new Raw(Arrays.copyOfRange(data, start, position));
+            }
+            if(c == '[') {
+                position++;
+                List<Object> array = new ArrayList<>();
+                while(true) {
+                    skipWhitespace();
+                    if(position < data.length && data[position] == ']') {
+                        position++;
+                        return array;
+                    }
+                    array.add(parse());
+                }
+            }
+            String token = token();
+            if(token.isEmpty()) throw new IOException("Unexpected '" + (char) c + "' at offset " + position);
+            if(isInteger(token)) {
+                /* "n g R" is a reference; anything else leaves the number on its own. */
+                int mark = position;
+                String generation = token();
+                skipWhitespace();
+                if(isInteger(generation) && position < data.length && data[position] == 'R'
+                        && (position + 1 >= data.length || !isRegular(data[position + 1] & 0xff))) {
+                    position++;
+                    return new Ref(Integer.parseInt(token), Integer.parseInt(generation));
+                }
+                position = mark;
+            }
+            return new Raw(token);
+        }
+
+        static boolean isInteger(String token){
+            if(token.isEmpty() || token.length() > 10) return false;
+            for(int i = 0; i < token.length(); i++) if(!Character.isDigit(token.charAt(i))) return false;
+            return true;
+        }
+    }
+
+    /**
+     * This class reads the objects of a pdf file on demand, through its cross-reference data.
+     */
+    private static final class PdfDocument {
+        final byte[] data;
+        final String version; /* The version in the file's header, e.g., "1.5". */
+        final Map<Integer, Long> offsets = new HashMap<>(); /* The offsets of uncompressed objects. */
+        final Map<Integer, int[]> compressed = new HashMap<>(); /* The object stream and index of compressed objects. */
+        final Map<Integer, Object> objects = new HashMap<>(); /* The objects read so far. */
+        Map<String, Object> trailer; /* The newest trailer dictionary. */
+
+        PdfDocument(byte[] data) throws IOException {
+            this.data = data;
+            if(!Lexer.startsWith(data, 0, "%PDF-")) throw new IOException("Not a pdf file");
+            this.version = new Lexer(data, 5).token();
+            try {
+                readCrossReferences();
+            }catch(IOException | RuntimeException e){
+                recover();
+            }
+            if(!hasRoot(trailer)) recover();
+            if(trailer.get("Encrypt") != null) throw new IOException("Encrypted pdf files can not be merged");
+        }
+
+        /**
+         * This function reads every cross-reference section, newest first, so that newer entries take precedence.
+         */
+        private void readCrossReferences() throws IOException {
+            int start = lastIndexOf(data, "startxref");
+            if(start < 0) throw new IOException("No startxref");
+            long offset = Long.parseLong(new Lexer(data, start + 9).token());
+            Set<Long> read = new HashSet<>();
+            while(offset >= 0 && read.add(offset)) offset = readSection(offset);
+        }
+
+        /**
+         * @param offset The offset of a cross-reference table or stream.
+         * @return The offset of the previous section, or -1 if there is none.
+         */
+        private long readSection(long offset) throws IOException {
+            Lexer lexer = new Lexer(data, (int) offset);
+            lexer.skipWhitespace();
+            Map<String, Object> section;
+            if(lexer.startsWith("xref")) {
+                lexer.position += 4;
+                while(true) {
+                    lexer.skipWhitespace();
+                    if(lexer.startsWith("trailer")) break;
+                    int first = Integer.parseInt(lexer.token());
+                    int count = Integer.parseInt(lexer.token());
+                    for(int i = 0; i < count; i++) {
+                        long entry = Long.parseLong(lexer.token());
+                        lexer.token();
+                        if("n".equals(lexer.token()) && !isKnown(first + i)) offsets.put(first + i, entry);
+                    }
+                }
+                lexer.position += 7;
+                section = asDictionary(lexer.parse());
+                /* A hybrid file lists its compressed objects in a separate stream. */
+                Object stream = section.get("XRefStm");
+                if(stream != null) readCrossReferenceStream(parseIndirect((int) number(stream)));
+            }else {
+                Object stream = parseIndirect((int) offset);
+                readCrossReferenceStream(stream);
+                section = ((Stream) stream).dictionary;
+            }
+            if(trailer == null) trailer = section;
+            Object previous = section.get("Prev");
+            return previous != null ? number(previous) : -1;
+        }
+
+        /**
+         * @param value A cross-reference stream.
+         */
+        private void readCrossReferenceStream(Object value) throws IOException {
+            if(!(value instanceof Stream)) throw new IOException("Expected a cross-reference stream");
+            Stream stream = (Stream) value;
+            byte[] entries = decode(stream);
+            List<?> widths = asArray(stream.dictionary.get("W"));
+            int[] w = new int[3];
+            for(int i = 0; i < 3; i++) w[i] = (int) number(widths.get(i));
+            List<?> index = stream.dictionary.get("Index") != null ? asArray(stream.dictionary.get("Index"))
+                    : Arrays.asList(new Raw("0"), stream.dictionary.get("Size"));
+            int position = 0;
+            for(int i = 0; i + 1 < index.size(); i += 2) {
+                int first = (int) number(index.get(i));
+                int count = (int) number(index.get(i + 1));
+                for(int j = 0; j < count && position + w[0] + w[1] + w[2] <= entries.length; j++) {
+                    long type = w[0] == 0 ? 1 : field(entries, position, w[0]);
+                    long second = field(entries, position + w[0], w[1]);
+                    long third = field(entries, position + w[0] + w[1], w[2]);
+                    position += w[0] + w[1] + w[2];
+                    if(isKnown(first + j)) continue;
+                    if(type == 1) offsets.put(first + j, second);
+                    else if(type == 2) compressed.put(first + j, new int[]{(int) second, (int) third});
+                }
+            }
+        }
+
+        private boolean isKnown(int number){
+            return offsets.containsKey(number) || compressed.containsKey(number);
+        }
+
+        private static long field(byte[] entries, int position, int width){
+            long value = 0;
+            for(int i = 0; i < width; i++) value = (value << 8) | (entries[position + i] & 0xff);
+            return value;
+        }
+
+        /**
+         * This function finds the objects of a file whose cross-reference data is missing or damaged by scanning it.
+         */
+        private void recover() throws IOException {
+            offsets.clear();
+            compressed.clear();
+            objects.clear();
+            trailer = null;
+            Matcher matcher = OBJECT_HEADER.matcher(new String(data, StandardCharsets.ISO_8859_1));
+            while(matcher.find()) offsets.put(Integer.parseInt(matcher.group(1)), (long) matcher.start());
+            int start = lastIndexOf(data, "trailer");
+            if(start >= 0) {
+                try {
+                    trailer = asDictionary(new Lexer(data, start + 7).parse());
+                }catch(IOException e){
+                    trailer = null;
+                }
+            }
+            for(Integer number : new ArrayList<>(offsets.keySet())) {
+                Object object = getObject(number);
+                Map<String, Object> dictionary = dictionaryOf(object);
+                if(dictionary == null) continue;
+                if(object instanceof Stream && isName(dictionary.get("Type"), "ObjStm")) {
+                    registerObjectStream(number, (Stream) object);
+                }
+                /* A cross-reference stream's dictionary is also the trailer. */
+                if(!hasRoot(trailer) && isName(dictionary.get("Type"), "XRef") && hasRoot(dictionary)) {
+                    trailer = dictionary;
+                }
+            }
+            if(!hasRoot(trailer)) {
+                List<Integer> numbers = new ArrayList<>(offsets.keySet());
+                numbers.addAll(compressed.keySet());
+                for(Integer number : numbers) {
+                    Map<String, Object> dictionary = dictionaryOf(getObject(number));
+                    if(dictionary != null && isName(dictionary.get("Type"), "Catalog")) {
+                        trailer = new HashMap<>();
+                        trailer.put("Root", new Ref(number, 0));
+                        break;
+                    }
+                }
+            }
+            if(!hasRoot(trailer)) throw new IOException("No document catalog");
+        }
+
+        private static boolean hasRoot(Map<String, Object> dictionary){
+            return dictionary != null && dictionary.get("Root") instanceof Ref;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static Map<String, Object> dictionaryOf(Object object){
+            if(object instanceof Stream) return ((Stream) object).dictionary;
+            return object instanceof Map ? (Map<String, Object>) object : null;
+        }
+
+        private void registerObjectStream(int number, Stream stream) throws IOException {
+            Lexer header = new Lexer(decode(stream), 0);
+            int count = (int) number(stream.dictionary.get("N"));
+            for(int i = 0; i < count; i++) {
+                int object = Integer.parseInt(header.token());
+                header.token();
+                if(!offsets.containsKey(object)) compressed.putIfAbsent(object, new int[]{number, i});
+            }
+        }
+
+        /**
+         * @param number An object number.
+         * @return The object, or the null object if there is none.
+         */
+        Object getObject(int number) throws IOException {
+            Object object = objects.get(number);
+            if(object != null) return object;
+            /* Guards against objects whose /Length refers to themselves. */
+            objects.put(number, NULL);
+            Long offset = offsets.get(number);
+            int[] entry = compressed.get(number);
+            if(offset != null) {
+                object = parseIndirect(offset.intValue());
+            }else if(entry != null) {
+                object = readCompressed(entry[0], number);
+            }
+            object = object != null ? object : NULL;
+            objects.put(number, object);
+            return object;
+        }
+
+        /**
+         * @param offset The offset of an indirect object ("n g obj ...").
+         * @return The object.
+         */
+        private Object parseIndirect(int offset) throws IOException {
+            Lexer lexer = new Lexer(data, offset);
+            lexer.token();
+            lexer.token();
+            if(!"obj".equals(lexer.token())) throw new IOException("No object at offset " + offset);
+            Object value = lexer.parse();
+            lexer.skipWhitespace();
+            if(!(value instanceof Map) || !lexer.startsWith("stream")) return value;
+
+            Map<String, Object> dictionary = asDictionary(value);
+            int start = lexer.position + 6;
+            if(start < data.length && data[start] == '\r') start++;
+            if(start < data.length && data[start] == '\n') start++;
+            long length = -1;
+            try {
+                length = number(resolve(dictionary.get("Length")));
+            }catch(IOException e){
+                /* Found from the endstream keyword instead. */
+            }
+            int end;
+            if(length >= 0 && start + length <= data.length && isEndStream((int) (start + length))) {
+                end = (int) (start + length);
+            }else {
+                end = indexOf(data, "endstream", start);
+                if(end < 0) throw new IOException("Unterminated stream at offset " + offset);
+                if(end > start && data[end - 1] == '\n') end--;
+                if(end > start && data[end - 1] == '\r') end--;
+            }
+            return new Stream(dictionary, Arrays.copyOfRange(data, start, end));
+        }
+
+        private boolean isEndStream(int position){
+            Lexer lexer = new Lexer(data, position);
+            lexer.skipWhitespace();
+            return lexer.startsWith("endstream");
+        }
+
+        /**
+         * @param streamNumber The object stream holding the object.
+         * @param number The object number.
+         * @return The object, or null if the object stream does not hold it.
+         */
+        private Object readCompressed(int streamNumber, int number) throws IOException {
+            Object value = getObject(streamNumber);
+            if(!(value instanceof Stream)) return null;
+            Stream stream = (Stream) value;
+            byte[] content = decode(stream);
+            int count = (int) number(stream.dictionary.get("N"));
+            int first = (int) number(stream.dictionary.get("First"));
+            Lexer header = new Lexer(content, 0);
+            for(int i = 0; i < count; i++) {
+                int object = Integer.parseInt(header.token());
+                int offset = Integer.parseInt(header.token());
+                if(object == number) return new Lexer(content, first + offset).parse();
+            }
+            return null;
+        }
+
+        /**
+         * @param value An object or reference.
+         * @return The object, following references.
+         */
+        Object resolve(Object value) throws IOException {
+            for(int depth = 0; value instanceof Ref; depth++) {
+                if(depth > 32) throw new IOException("Reference loop");
+                value = getObject(((Ref) value).number);
+            }
+            return value;
+        }
+
+        /**
+         * @param stream A stream.
+         * @return The decoded data of the stream. Only FlateDecode, with or without a PNG predictor, is supported, which
+         * is what cross-reference and object streams use.
+         */
+        byte[] decode(Stream stream) throws IOException {
+            List<?> filters = asList(resolve(stream.dictionary.get("Filter")));
+            List<?> parameters = asList(resolve(stream.dictionary.get("DecodeParms")));
+            byte[] bytes = stream.data;
+            for(int i = 0; i < filters.size(); i++) {
+                Object filter = resolve(filters.get(i));
+                if(!isName(filter, "FlateDecode") && !isName(filter, "Fl")) {
+                    throw new IOException("Unsupported filter in a structural stream");
+                }
+                bytes = inflate(bytes);
+                Object parameter = i < parameters.size() ? resolve(parameters.get(i)) : null;
+                if(parameter instanceof Map) bytes = unpredict(bytes, asDictionary(parameter));
+            }
+            return bytes;
+        }
+
+        private byte[] unpredict(byte[] bytes, Map<String, Object> parameters) throws IOException {
+            long predictor = parameters.get("Predictor") != null ? number(resolve(parameters.get("Predictor"))) : 1;
+            if(predictor == 1) return bytes;
+            if(predictor < 10) throw new IOException("Unsupported predictor " + predictor);
+            long columns = parameters.get("Columns") != null ? number(resolve(parameters.get("Columns"))) : 1;
+            long colors = parameters.get("Colors") != null ? number(resolve(parameters.get("Colors"))) : 1;
+            long bits = parameters.get("BitsPerComponent") != null
+                    ? number(resolve(parameters.get("BitsPerComponent"))) : 8;
+            int pixel = (int) Math.max(1, (colors * bits + 7) / 8);
+            int row = (int) ((columns * colors * bits + 7) / 8);
+            ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length);
+            byte[] previous = new byte[row];
+            byte[] current = new byte[row];
+            for(int position = 0; position + row < bytes.length; position += row + 1) {
+                int type = bytes[position] & 0xff;
+                for(int i = 0; i < row; i++) {
+                    int raw = bytes[position + 1 + i] & 0xff;
+                    int left = i >= pixel ? current[i - pixel] & 0xff : 0;
+                    int up = previous[i] & 0xff;
+                    int upLeft = i >= pixel ? previous[i - pixel] & 0xff : 0;
+                    switch(type) {
+                        case 0: current[i] = (byte) raw; break;
+                        case 1: current[i] = (byte) (raw + left); break;
+                        case 2: current[i] = (byte) (raw + up); break;
+                        case 3: current[i] = (byte) (raw + (left + up) / 2); break;
+                        case 4: current[i] = (byte) (raw + paeth(left, up, upLeft)); break;
+                        default: throw new IOException("Unknown PNG predictor " + type);
+                    }
+                }
+                out.write(current, 0, row);
+                byte[] swap = previous;
+                previous = current;
+                current = swap;
+            }
+            return out.toByteArray();
+        }
+
+        private static int paeth(int left, int up, int upLeft){
+            int estimate = left + up - upLeft;
+            int distanceLeft = Math.abs(estimate - left);
+            int distanceUp = Math.abs(estimate - up);
+            int distanceUpLeft = Math.abs(estimate - upLeft);
+            if(distanceLeft <= distanceUp && distanceLeft <= distanceUpLeft) return left;
+            return distanceUp <= distanceUpLeft ? up : upLeft;
+        }
+
+        private static byte[] inflate(byte[] bytes) throws IOException {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(bytes);
+                ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length * 4);
+                byte[] buffer = new byte[TeXStream.CHUNK_SIZE];
+                while(!inflater.finished()) {
+                    int n = inflater.inflate(buffer);
+                    /* Tolerate streams that end without their trailer. */
+                    if(n == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                    out.write(buffer, 0, n);
+                }
+                return out.toByteArray();
+            }catch(DataFormatException e){
+                throw new IOException("Corrupt compressed stream", e);
+            }finally{
+                inflater.end();
+            }
+        }
+
+        /**
+         * @return The pages of the document in order, each with the attributes it inherits.
+         */
+        List<Page> getPages() throws IOException {
+            Map<String, Object> catalog = asDictionary(resolve(trailer.get("Root")));
+            List<Page> pages = new ArrayList<>();
+            collectPages(catalog.get("Pages"), Collections.emptyMap(), pages, new HashSet<>());
+            return pages;
+        }
+
+        private void collectPages(Object node, Map<String, Object> inherited, List<Page> pages, Set<Integer> visited)
+                throws IOException {
+            if(!(node instanceof Ref)) throw new IOException("Expected a reference in the page tree");
+            int number = ((Ref) node).number;
+            if(!visited.add(number)) return;
+            Map<String, Object> dictionary = asDictionary(resolve(node));
+            Object kids = resolve(dictionary.get("Kids"));
+            if(kids instanceof List && !isName(dictionary.get("Type"), "Page")) {
+                Map<String, Object> next = new HashMap<>(inherited);
+                for(String key : INHERITABLE) if(dictionary.containsKey(key)) next.put(key, dictionary.get(key));
+                for(Object kid : (List<?>) kids) collectPages(kid, next, pages, visited);
+            }else {
+                Map<String, Object> page = new LinkedHashMap<>(dictionary);
+                for(Map.Entry<String, Object> entry : inherited.entrySet()) page.putIfAbsent(entry.getKey(), entry.getValue());
+                page.remove("Parent");
+                pages.add(new Page(number, page));
+            }
+        }
+    }
+
+    /**
+     * This class writes the merged pdf file.
+     */
+    private static final class PdfWriter {
+        private final OutputStream out;
+        private long position; /* The number of bytes written. */
+        private final List<Long> offsets = new ArrayList<>(); /* The offset of object n at index n - 1. */
+
+        PdfWriter(OutputStream out){
+            this.out = out;
+        }
+
+        /**
+         * @param documents The documents whose pages are written, in order.
+         * @return The number of pages written.
+         */
+        int write(List<PdfDocument> documents) throws IOException {
+            String version = "1.4";
+            for(PdfDocument document : documents) if(document.version.compareTo(version) > 0) version = document.version;
+            write(("%PDF-" + version + "\n%").getBytes(StandardCharsets.ISO_8859_1));
+            write(new byte[]{(byte) 0xE2, (byte) 0xE3, (byte) 0xCF, (byte) 0xD3, '\n'});
+
+            int catalog = allocate();
+            Ref root = new Ref(allocate(), 0);
+            List<Object> kids = new ArrayList<>();
+            for(PdfDocument document : documents) {
+                /* Maps the object numbers of the document to those of the merged file. */
+                Map<Integer, Integer> numbers = new HashMap<>();
+                Deque<Integer> pending = new ArrayDeque<>();
+                List<Page> pages = document.getPages();
+                for(Page page : pages) {
+                    int number = allocate();
+                    numbers.put(page.number, number);
+                    kids.add(new Ref(number, 0));
+                }
+                for(Page page : pages) {
+                    Map<String, Object> dictionary = asDictionary(translate(page.dictionary, numbers, pending));
+                    dictionary.put("Parent", root);
+                    writeObject(numbers.get(page.number), dictionary);
+                }
+                while(!pending.isEmpty()) {
+                    int number = pending.poll();
+                    writeObject(numbers.get(number), translate(document.getObject(number), numbers, pending));
+                }
+            }
+
+            Map<String, Object> tree = new LinkedHashMap<>();
+            tree.put("Type", new Name("Pages"));
+            tree.put("Kids", kids);
+            tree.put("Count", new Raw(String.valueOf(kids.size())));
+            writeObject(root.number, tree);
+            Map<String, Object> dictionary = new LinkedHashMap<>();
+            dictionary.put("Type", new Name("Catalog"));
+            dictionary.put("Pages", root);
+            writeObject(catalog, dictionary);
+
+            long xref = position;
+            StringBuilder table = new StringBuilder("xref\n0 " + (offsets.size() + 1) + "\n0000000000 65535 f \n");
+            for(long offset : offsets) table.append(String.format("%010d 00000 n \n", offset));
+            table.append("trailer\n<< /Size ").append(offsets.size() + 1).append(" /Root ").append(catalog)
+                    .append(" 0 R >>\nstartxref\n").append(xref).append("\n%%EOF\n");
+            write(table.toString().getBytes(StandardCharsets.ISO_8859_1));
+            return kids.size();
+        }
+
+        private int allocate(){
+            offsets.add(-1L);
+            return offsets.size();
+        }
+
+        /**
+         * @param value An object of a document.
+         * @param numbers Maps the object numbers of the document to those of the merged file.
+         * @param pending The objects of the document still to be written.
+         * @return The object with its references renumbered; referenced objects are queued to be written.
+         */
+        private Object translate(Object value, Map<Integer, Integer> numbers, Deque<Integer> pending){
+            if(value instanceof Ref) {
+                int old = ((Ref) value).number;
+                Integer number = numbers.get(old);
+                if(number == null) {
+                    number = allocate();
+                    numbers.put(old, number);
+                    pending.add(old);
+                }
+                return new Ref(number, 0);
+            }
+            if(value instanceof Map) {
+                Map<String, Object> copy = new LinkedHashMap<>();
+                for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    copy.put((String) entry.getKey(), translate(entry.getValue(), numbers, pending));
+                }
+                return copy;
+            }
+            if(value instanceof List) {
+                List<Object> copy = new ArrayList<>();
+                for(Object item : (List<?>) value) copy.add(translate(item, numbers, pending));
+                return copy;
+            }
+            if(value instanceof Stream) {
+                Stream stream = (Stream) value;
+                /* The length is written directly, so an indirect length object is not copied. */
+                Map<String, Object> dictionary = new LinkedHashMap<>(stream.dictionary);
+                dictionary.remove("Length");
+                Map<String, Object> copy = new LinkedHashMap<>();
+                for(Map.Entry<String, Object> entry : dictionary.entrySet()) {
+                    copy.put(entry.getKey(), translate(entry.getValue(), numbers, pending));
+                }
+                return new Stream(copy, stream.data);
+            }
+            return value;
+        }
+
+        private void writeObject(int number, Object value) throws IOException {
+            offsets.set(number - 1, position);
+            write((number + " 0 obj\n").getBytes(StandardCharsets.ISO_8859_1));
+            writeValue(value);
+            write("\nendobj\n".getBytes(StandardCharsets.ISO_8859_1));
+        }
+
+        private void writeValue(Object value) throws IOException {
+            if(value instanceof Name) {
+                write(("/" + ((Name) value).value).getBytes(StandardCharsets.ISO_8859_1));
+            }else if(value instanceof Raw) {
+                write(((Raw) value).bytes);
+            }else if(value instanceof Ref) {
+                write((((Ref) value).number + " " + ((Ref) value).generation + " R").getBytes(StandardCharsets.ISO_8859_1));
+            }else if(value instanceof Map) {
+                write("<<".getBytes(StandardCharsets.ISO_8859_1));
+                for(Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                    write((" /" + entry.getKey() + " ").getBytes(StandardCharsets.ISO_8859_1));
+                    writeValue(entry.getValue());
+                }
+                write(" >>".getBytes(StandardCharsets.ISO_8859_1));
+            }else if(value instanceof List) {
+                write("[".getBytes(StandardCharsets.ISO_8859_1));
+                for(Object item : (List<?>) value) {
+                    write(" ".getBytes(StandardCharsets.ISO_8859_1));
+                    writeValue(item);
+                }
+                write(" ]".getBytes(StandardCharsets.ISO_8859_1));
+            }else if(value instanceof Stream) {
+                Stream stream = (Stream) value;
+                Map<String, Object> dictionary = new LinkedHashMap<>(stream.dictionary);
+                dictionary.put("Length", new Raw(String.valueOf(stream.data.length)));
+                writeValue(dictionary);
+                write("\nstream\n".getBytes(StandardCharsets.ISO_8859_1));
+                write(stream.data);
+                write("\nendstream".getBytes(StandardCharsets.ISO_8859_1));
+            }else {
+                write(NULL.bytes);
+            }
+        }
+
+        private void write(byte[] bytes) throws IOException {
+            out.write(bytes);
+            position += bytes.length;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> asDictionary(Object value) throws IOException {
+        if(!(value instanceof Map)) throw new IOException("Expected a dictionary");
+        return (Map<String, Object>) value;
+    }
+
+    private static List<?> asArray(Object value) throws IOException {
+        if(!(value instanceof List)) throw new IOException("Expected an array");
+        return (List<?>) value;
+    }
+
+    private static List<?> asList(Object value){
+        if(value == null || value == NULL) return Collections.emptyList();
+        return value instanceof List ? (List<?>) value : Collections.singletonList(value);
+    }
+
+    private static boolean isName(Object value, String name){
+        return value instanceof Name && ((Name) value).value.equals(name);
+    }
+
+    private static long number(Object value) throws IOException {
+        if(value instanceof Raw) {
+            String text = value.toString();
+            try {
+                return Long.parseLong(text);
+            }catch(NumberFormatException e){
+                try {
+                    return (long) Double.parseDouble(text);
+                }catch(NumberFormatException f){
+                    throw new IOException("Expected a number: " + text);
+                }
+            }
+        }
+        throw new IOException("Expected a number");
+    }
+
+    private static int indexOf(byte[] data, String text, int from){
+        for(int i = Math.max(0, from); i + text.length() <= data.length; i++) {
+            if(Lexer.startsWith(data, i, text)) return i;
+        }
+        return -1;
+    }
+
+    private static int lastIndexOf(byte[] data, String text){
+        for(int i = data.length - text.length(); i >= 0; i--) {
+            if(Lexer.startsWith(data, i, text)) return i;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,77 @@
+package JavaTeX.core;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class limits how many external processes (tex, dvipdfm, ...) may run at once. A single ProcessLimiter is
+ * normally shared by every TeXBuilder in the JVM so that a burst of builds can not fork an unbounded number of engines.
+ */
+public class ProcessLimiter {
+
+    /* The limiter used by TeXBuilders that were not given one explicitly. */
+    private static final ProcessLimiter SHARED = new ProcessLimiter(Runtime.getRuntime().availableProcessors());
+
+    private final int maxProcesses; /* The maximum number of processes that may run at once. */
+    private final Semaphore permits; /* One permit per process that may be started. */
+
+    /**
+     * Customized Constructor
+     * @param maxProcesses The maximum number of processes that may run at once. Values less than one are treated as one.
+     */
+    public ProcessLimiter(int maxProcesses){
+        this.maxProcesses = Math.max(1, maxProcesses);
+        this.permits = new Semaphore(this.maxProcesses, true);
+    }
+
+    /**
+     * @return The ProcessLimiter shared by all TeXBuilders that were not given a limiter, sized to the number of
+     * available processors.
+     */
+    public static ProcessLimiter shared(){
+        return SHARED;
+    }
+
+    /**
+     * @return The maximum number of processes that may run at once.
+     */
+    public int getMaxProcesses(){
+        return this.maxProcesses;
+    }
+
+    /**
+     * @return The number of processes currently holding a permit.
+     */
+    public int getActiveProcesses(){
+        return this.maxProcesses - this.permits.availablePermits();
+    }
+
+    /**
+     * This function blocks until a process may be started or the given time has passed.
+     * @param timeout The longest time to wait.
+     * @param unit The unit of the timeout.
+     * @return A boolean indicating whether a process may be started.
+     * @throws InterruptedException If the calling thread was interrupted while waiting.
+     */
+    boolean tryAcquire(long timeout, TimeUnit unit) throws InterruptedException {
+        return this.permits.tryAcquire(timeout, unit);
+    }
+
+    /**
+     * This function grants a permit without blocking, but only if another permit remains available afterwards, so that
+     * processes started ahead of demand (e.g., idle warm processes) never hold every permit.
+     * @return A boolean indicating whether a process may be started.
+     */
+    boolean tryAcquireSpare(){
+        if(!this.permits.tryAcquire(2)) return false;
+        this.permits.release();
+        return true;
+    }
+
+    /**
+     * This function signals that a process started after tryAcquire() has finished.
+     */
+    void release(){
+        this.permits.release();
+    }
+}
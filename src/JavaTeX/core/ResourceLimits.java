@@ -0,0 +1,124 @@
+package JavaTeX.core;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class describes the resources a single build may use (see TeXBuilder.withLimits): the size of any file it
+ * writes, the CPU time of all its processes together, and the memory of each of its processes. A build exceeding a
+ * limit has its process killed and ends LIMIT_EXCEEDED. Limits are checked while the processes run (every few
+ * milliseconds) and once more when each of them exits.
+ *
+ * Memory is measured from /proc, so it is only enforced on Linux. Independently of it, engine settings are passed to
+ * TeX processes as environment variables, which Web2C engines read in preference to texmf.cnf (e.g., "extra_mem_top",
+ * "pool_size", or "main_memory" when dumping a format); they bound the memory pools TeX allocates in the first place.
+ *
+ * ResourceLimits are immutable; every "with" function returns a copy.
+ */
+public final class ResourceLimits {
+
+    /* No limits at all. This is the default. */
+    public static final ResourceLimits NONE = new ResourceLimits(0, 0, 0, Collections.emptyMap());
+
+    private final long maxFileBytes; /* The size a file written by the build may reach, or zero for no limit. */
+    private final long maxCpuNanos; /* The CPU time the build's processes may use, or zero for no limit. */
+    private final long maxMemoryBytes; /* The resident memory a process may use, or zero for no limit. */
+    private final Map<String, String> engineSettings; /* Passed to TeX processes as environment variables. */
+
+    /**
+     * Customized Constructor
+     * @param maxFileBytes The size a file written by the build may reach, or zero for no limit.
+     * @param maxCpuNanos The CPU time the build's processes may use, or zero for no limit.
+     * @param maxMemoryBytes The resident memory a process may use, or zero for no limit.
+     * @param engineSettings Passed to TeX processes as environment variables.
+     */
+    private ResourceLimits(long maxFileBytes, long maxCpuNanos, long maxMemoryBytes, Map<String, String> engineSettings){
+        this.maxFileBytes = Math.max(0, maxFileBytes);
+        this.maxCpuNanos = Math.max(0, maxCpuNanos);
+        this.maxMemoryBytes = Math.max(0, maxMemoryBytes);
+        this.engineSettings = engineSettings;
+    }
+
+    /**
+     * @param bytes The size any file written by a build (its dvi, pdf and log files) may reach. Zero removes the limit.
+     * @return ResourceLimits with the given file size limit.
+     */
+    public ResourceLimits withMaxFileSize(long bytes){
+        return new ResourceLimits(bytes, maxCpuNanos, maxMemoryBytes, engineSettings);
+    }
+
+    /**
+     * @param time The CPU time the processes of a build may use together. Zero removes the limit.
+     * @param unit The unit of the time.
+     * @return ResourceLimits with the given CPU time limit.
+     */
+    public ResourceLimits withMaxCpuTime(long time, TimeUnit unit){
+        return new ResourceLimits(maxFileBytes, unit.toNanos(time), maxMemoryBytes, engineSettings);
+    }
+
+    /**
+     * @param bytes The resident memory each process of a build may use. Zero removes the limit.
+     * @return ResourceLimits with the given memory limit.
+     */
+    public ResourceLimits withMaxMemory(long bytes){
+        return new ResourceLimits(maxFileBytes, maxCpuNanos, bytes, engineSettings);
+    }
+
+    /**
+     * @param name The name of a texmf.cnf variable (e.g., "extra_mem_top").
+     * @param value The value TeX processes use for it. A null value removes the setting.
+     * @return ResourceLimits passing the given setting to TeX.
+     */
+    public ResourceLimits withEngineSetting(String name, String value){
+        if(name == null || name.isEmpty() || name.indexOf('=') >= 0) {
+            throw new IllegalArgumentException("Invalid engine setting: " + name);
+        }
+        Map<String, String> settings = new LinkedHashMap<>(engineSettings);
+        if(value != null) settings.put(name, value);
+        else settings.remove(name);
+        return new ResourceLimits(maxFileBytes, maxCpuNanos, maxMemoryBytes, Collections.unmodifiableMap(settings));
+    }
+
+    /**
+     * @return The size a file written by a build may reach, or zero for no limit.
+     */
+    public long getMaxFileSize(){
+        return this.maxFileBytes;
+    }
+
+    /**
+     * @return The CPU time in nanoseconds the processes of a build may use, or zero for no limit.
+     */
+    public long getMaxCpuNanos(){
+        return this.maxCpuNanos;
+    }
+
+    /**
+     * @return The resident memory each process of a build may use, or zero for no limit.
+     */
+    public long getMaxMemory(){
+        return this.maxMemoryBytes;
+    }
+
+    /**
+     * @return The settings passed to TeX processes as environment variables.
+     */
+    public Map<String, String> getEngineSettings(){
+        return this.engineSettings;
+    }
+
+    /**
+     * @return A boolean indicating whether running processes need to be checked against a limit.
+     */
+    boolean isEnforced(){
+        return maxFileBytes > 0 || maxCpuNanos > 0 || maxMemoryBytes > 0;
+    }
+
+    @Override
+    public String toString(){
+        return "ResourceLimits[maxFileSize=" + this.maxFileBytes + ", maxCpuNanos=" + this.maxCpuNanos
+                + ", maxMemory=" + this.maxMemoryBytes + ", engineSettings=" + this.engineSettings + "]";
+    }
+}
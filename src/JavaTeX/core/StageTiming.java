@@ -0,0 +1,109 @@
+package JavaTeX.core;
+
+/**
+ * This class records how the processes of one stage of a build ran. A stage that runs several processes (e.g., CLEANUP
+ * removing both the log and dvi files) is recorded as their sum.
+ */
+public class StageTiming {
+
+    private final BuildStage stage; /* The stage that was timed. */
+    private final int exitCode; /* The exit value of the stage's process, or the first non-zero one. */
+    private final long wallNanos; /* The wall-clock time the stage's processes ran for. */
+    private final long cpuNanos; /* The CPU time the stage's processes used, or -1 if unknown. */
+    private final int processes; /* The number of processes the stage ran. */
+
+    /**
+     * Customized Constructor
+     * @param stage The stage that was timed.
+     * @param exitCode The exit value of the stage's process, or -1 if it was killed or could not be started.
+     * @param wallNanos The wall-clock time the stage's process ran for.
+     * @param cpuNanos The CPU time the stage's process used, or -1 if unknown.
+     */
+    StageTiming(BuildStage stage, int exitCode, long wallNanos, long cpuNanos){
+        this(stage, exitCode, wallNanos, cpuNanos, 1);
+    }
+
+    /**
+     * Customized Constructor
+     * @param stage The stage that was timed.
+     * @param exitCode The exit value of the stage's process, or the first non-zero one.
+     * @param wallNanos The wall-clock time the stage's processes ran for.
+     * @param cpuNanos The CPU time the stage's processes used, or -1 if unknown.
+     * @param processes The number of processes the stage ran.
+     */
+    StageTiming(BuildStage stage, int exitCode, long wallNanos, long cpuNanos, int processes){
+        this.stage = stage;
+        this.exitCode = exitCode;
+        this.wallNanos = wallNanos;
+        this.cpuNanos = cpuNanos;
+        this.processes = processes;
+    }
+
+    /**
+     * This function creates the timing of a stage that ran in the JVM rather than as a process.
+     * @param stage The stage that was timed.
+     * @param succeeded Did the stage succeed?
+     * @param wallNanos The wall-clock time the stage took.
+     * @return The StageTiming, with an exit code of zero if the stage succeeded and no processes.
+     */
+    static StageTiming inJvm(BuildStage stage, boolean succeeded, long wallNanos){
+        return new StageTiming(stage, succeeded ? 0 : 1, wallNanos, -1, 0);
+    }
+
+    /**
+     * This function combines this timing with another process of the same stage.
+     * @param other The timing of the other process.
+     * @return The combined StageTiming.
+     */
+    StageTiming plus(StageTiming other){
+        int exitCode = this.exitCode != 0 ? this.exitCode : other.exitCode;
+        long cpuNanos = this.cpuNanos < 0 || other.cpuNanos < 0 ? -1 : this.cpuNanos + other.cpuNanos;
+        return new StageTiming(stage, exitCode, wallNanos + other.wallNanos, cpuNanos, processes + other.processes);
+    }
+
+    /**
+     * @return The stage that was timed.
+     */
+    public BuildStage getStage(){
+        return this.stage;
+    }
+
+    /**
+     * @return The exit value of the stage's process (the first non-zero one if it ran several), or -1 if a process was
+     * killed or could not be started.
+     */
+    public int getExitCode(){
+        return this.exitCode;
+    }
+
+    /**
+     * @return The wall-clock time in nanoseconds the stage's processes ran for (excluding any wait for a process
+     * permit).
+     */
+    public long getWallNanos(){
+        return this.wallNanos;
+    }
+
+    /**
+     * @return The CPU time in nanoseconds the stage's processes used, or -1 if it is unknown. CPU time is only sampled,
+     * while a process runs, for builds with ResourceLimits (see TeXBuilder.withLimits), so its last few milliseconds
+     * may be missing; it is unknown for other builds, and on platforms that do not report it.
+     */
+    public long getCpuNanos(){
+        return this.cpuNanos;
+    }
+
+    /**
+     * @return The number of processes the stage ran, or zero if it ran in the JVM (e.g., publishing the artifacts of a
+     * build in a scratch directory).
+     */
+    public int getProcesses(){
+        return this.processes;
+    }
+
+    @Override
+    public String toString(){
+        return String.format("%s[exit=%d, wall=%.1fms, cpu=%s, processes=%d]", stage, exitCode, wallNanos / 1e6,
+                cpuNanos < 0 ? "?" : String.format("%.1fms", cpuNanos / 1e6), processes);
+    }
+}
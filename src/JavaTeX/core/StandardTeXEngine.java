@@ -0,0 +1,77 @@
+package JavaTeX.core;
+
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This class describes the TeX engines of the TeXEngine factories: an executable that always writes dvi files, one
+ * that always writes pdf files, or one that selects dvi or pdf output with the "-output-format" option, optionally
+ * followed by a dvipdfm compatible converter.
+ */
+final class StandardTeXEngine implements TeXEngine {
+
+    private final String name; /* Identifies the engine in cache keys. */
+    private final String command; /* The executable that typesets sources. */
+    private final String converter; /* The executable that converts dvi files to pdf files, or null if there is none. */
+    private final String baseFormat; /* The format sources are typeset with by default. */
+    private final Set<Artifact> capabilities; /* The output files the executable writes directly. */
+
+    /**
+     * Customized Constructor
+     * @param name Identifies the engine in cache keys.
+     * @param command The executable that typesets sources.
+     * @param converter The executable that converts dvi files to pdf files, or null if there is none.
+     * @param baseFormat The format sources are typeset with by default.
+     * @param capabilities The output files the executable writes directly. If it writes both, it selects its output
+     *                     with "-output-format".
+     */
+    StandardTeXEngine(String name, String command, String converter, String baseFormat, Set<Artifact> capabilities){
+        if(command == null) throw new IllegalArgumentException("command must not be null");
+        if(capabilities.isEmpty()) throw new IllegalArgumentException("capabilities must not be empty");
+        this.name = name;
+        this.command = command;
+        this.converter = converter;
+        this.baseFormat = baseFormat;
+        this.capabilities = Collections.unmodifiableSet(EnumSet.copyOf(capabilities));
+    }
+
+    @Override
+    public String getName(){
+        return this.name;
+    }
+
+    @Override
+    public String getCommand(){
+        return this.command;
+    }
+
+    @Override
+    public Set<Artifact> getCapabilities(){
+        return this.capabilities;
+    }
+
+    @Override
+    public String getBaseFormat(){
+        return this.baseFormat;
+    }
+
+    @Override
+    public List<String> getTypesetOptions(Artifact output){
+        if(capabilities.size() == 1) return Collections.emptyList();
+        return Collections.singletonList(output == Artifact.PDF ? "-output-format=pdf" : "-output-format=dvi");
+    }
+
+    @Override
+    public String[] getConvertCommand(Path dviFile, Path pdfFile){
+        if(converter == null) return null;
+        return new String[]{converter, "-o", pdfFile.toString(), dviFile.toString()};
+    }
+
+    @Override
+    public String toString(){
+        return "TeXEngine[name=" + this.name + ", capabilities=" + this.capabilities + "]";
+    }
+}
@@ -0,0 +1,330 @@
+package JavaTeX.core;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringWriter;
+import java.net.ConnectException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class builds TeX sources on a TeXBuildServer and writes the artifacts it sends back to a local directory, just
+ * as a TeXBuilder with the same options would. The BuildResult describes the build that ran on the server (its
+ * status, output, diagnostics, stage timings, sizes and page count) with the artifacts at their local paths.
+ *
+ * A TeXFile is sent by content, so a file that \inputs other files should be built with a TeXBuilder instead. If the
+ * server can not be reached, or refuses the build because its queue is full, the build FAILED with the reason as its
+ * output.
+ */
+public class TeXBuildClient {
+
+    /* The name of the pdf file generated when none is given. */
+    private static final String DEFAULT_OUTPUT_FILE_NAME = "out";
+
+    private final HttpClient client; /* Sends builds to the server. */
+    private final URI server; /* The server builds are sent to. */
+    private final boolean log; /* Should the TeXBuildClient keep the log file generated by TeX? */
+    private final boolean dvi; /* Should the TeXBuildClient keep the dvi file generated by TeX? */
+    private final boolean pdf; /* Should the TeXBuildClient keep a pdf file? */
+    private final String outputFileName; /* The name of the files written (Excluding file extensions). */
+    private final Path outputFilePath; /* The path to the files written (Excluding the files themselves). */
+    private final long timeoutNanos; /* The time a build may take in nanoseconds, or zero for no timeout */
+
+    /**
+     * Customized Constructor
+     * Creates a TeXBuildClient that writes a pdf file titled "out.pdf" in the JRE working directory.
+     * @param server The URI of the TeXBuildServer (see TeXBuildServer.getURI()).
+     */
+    public TeXBuildClient(URI server){
+        this(server, false, false, true, DEFAULT_OUTPUT_FILE_NAME, "");
+    }
+
+    /**
+     * Customized Constructor
+     * @param server The URI of the TeXBuildServer (see TeXBuildServer.getURI()).
+     * @param log Should the TeXBuildClient keep the log file generated by TeX?
+     * @param dvi Should the TeXBuildClient keep the dvi file generated by TeX?
+     * @param pdf Should the TeXBuildClient keep a pdf file?
+     * @param outputFileName The name of the files written (Excluding file extensions).
+     * @param outputFilePath The path to the files written (Excluding the files themselves).
+     */
+    public TeXBuildClient(URI server, boolean log, boolean dvi, boolean pdf, String outputFileName,
+                          String outputFilePath){
+        this(HttpClient.newHttpClient(), server, log, dvi, pdf,
+                outputFileName != null ? outputFileName : DEFAULT_OUTPUT_FILE_NAME,
+                outputFilePath != null && new File(outputFilePath).isDirectory() ? Paths.get(outputFilePath)
+                        : Paths.get(""), 0);
+    }
+
+    /**
+     * Customized Constructor
+     * @param client Sends builds to the server.
+     * @param server The server builds are sent to.
+     * @param log Should the TeXBuildClient keep the log file generated by TeX?
+     * @param dvi Should the TeXBuildClient keep the dvi file generated by TeX?
+     * @param pdf Should the TeXBuildClient keep a pdf file?
+     * @param outputFileName The name of the files written (Excluding file extensions).
+     * @param outputFilePath The path to the files written (Excluding the files themselves).
+     * @param timeoutNanos The time a build may take in nanoseconds, or zero for no timeout.
+     */
+    private TeXBuildClient(HttpClient client, URI server, boolean log, boolean dvi, boolean pdf,
+                           String outputFileName, Path outputFilePath, long timeoutNanos){
+        this.client = client;
+        this.server = server;
+        this.log = log;
+        this.dvi = dvi;
+        this.pdf = pdf;
+        this.outputFileName = outputFileName;
+        this.outputFilePath = outputFilePath;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    /**
+     * This function returns a copy of this TeXBuildClient that stops waiting for a build after the given time; the
+     * build is then TIMED_OUT. The server applies the timeout of its own TeXBuilder to the build itself.
+     * @param timeout The time a build may take, or zero for no timeout.
+     * @param unit The unit of the given timeout.
+     * @return A TeXBuildClient using the given timeout.
+     */
+    public TeXBuildClient withTimeout(long timeout, TimeUnit unit){
+        if(timeout < 0) throw new IllegalArgumentException("timeout must not be negative: " + timeout);
+        return new TeXBuildClient(client, server, log, dvi, pdf, outputFileName, outputFilePath,
+                unit.toNanos(timeout));
+    }
+
+    /**
+     * This function returns a copy of this TeXBuildClient that writes to the given output file name, e.g., so that
+     * concurrent builds do not share their files.
+     * @param outputFileName The name of the files written (Excluding file extensions).
+     * @return A TeXBuildClient using the given output file name.
+     */
+    public TeXBuildClient withOutputFileName(String outputFileName){
+        return new TeXBuildClient(client, server, log, dvi, pdf, outputFileName, outputFilePath, timeoutNanos);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString on the server.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXString was built successfully.
+     */
+    public boolean build(TeXString source){
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXFile on the server.
+     * @param source The JavaTeX.core.TeXFile to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXFile was built successfully.
+     */
+    public boolean build(TeXFile source){
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXStream on the server.
+     * @param source The JavaTeX.core.TeXStream to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXStream was built successfully.
+     */
+    public boolean build(TeXStream source){
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString on the server and describes the build.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXString.
+     */
+    public BuildResult compile(TeXString source){
+        return send(HttpRequest.BodyPublishers.ofString(source.getSource(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXFile on the server and describes the build.
+     * @param source The JavaTeX.core.TeXFile to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXFile.
+     */
+    public BuildResult compile(TeXFile source){
+        try {
+            return send(HttpRequest.BodyPublishers.ofFile(source.getPath()));
+        }catch(IOException e){
+            return failure(BuildStatus.FAILED, "Could not read " + source.getPath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXStream on the server and describes the build.
+     * @param source The JavaTeX.core.TeXStream to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXStream.
+     */
+    public BuildResult compile(TeXStream source){
+        StringWriter content = new StringWriter();
+        try(Reader reader = source.getSource().open()) {
+            TeXStream.copy(reader, content);
+        }catch(IOException e){
+            return failure(BuildStatus.FAILED, "Could not read the stream: " + e.getMessage());
+        }
+        return send(HttpRequest.BodyPublishers.ofString(content.toString(), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString on the server without blocking the calling thread.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return A CompletableFuture completed with the BuildResult describing the build.
+     */
+    public CompletableFuture<BuildResult> compileAsync(TeXString source){
+        return CompletableFuture.supplyAsync(() -> compile(source), BuildExecutors.defaultExecutor());
+    }
+
+    /**
+     * This function sends a build to the server and writes the artifacts it sends back.
+     * @param body The source to be built.
+     * @return The BuildResult describing the build.
+     */
+    private BuildResult send(HttpRequest.BodyPublisher body){
+        HttpRequest.Builder request = HttpRequest.newBuilder(server.resolve(TeXBuildServer.BUILD_PATH + "?log=" + log
+                + "&dvi=" + dvi + "&pdf=" + pdf)).POST(body);
+        if(timeoutNanos > 0) request.timeout(Duration.ofNanos(timeoutNanos));
+        try {
+            HttpResponse<InputStream> response = client.send(request.build(), HttpResponse.BodyHandlers.ofInputStream());
+            try(InputStream in = response.body()) {
+                if(response.statusCode() != 200) {
+                    return failure(BuildStatus.FAILED, "The server refused the build (" + response.statusCode()
+                            + "): " + new String(in.readAllBytes(), StandardCharsets.UTF_8));
+                }
+                return receive(response.headers(), in);
+            }
+        }catch(IllegalArgumentException | IndexOutOfBoundsException e){
+            return failure(BuildStatus.FAILED, "The server sent a malformed result: " + e.getMessage());
+        }catch(HttpTimeoutException e){
+            return failure(BuildStatus.TIMED_OUT, "The server did not finish the build in time.");
+        }catch(ConnectException e){
+            return failure(BuildStatus.FAILED, "Could not connect to " + server + ": " + e.getMessage());
+        }catch(IOException e){
+            return failure(BuildStatus.FAILED, "The build was lost: " + e.getMessage());
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return failure(BuildStatus.CANCELLED, "");
+        }
+    }
+
+    /**
+     * This function reads the result of a build, writing its artifacts to the output file path. The headers are parsed
+     * before any artifact is written.
+     * @param headers The headers describing the build.
+     * @param in The body holding the output of TeX and the artifacts.
+     * @return The BuildResult describing the build.
+     * @throws IOException If the result could not be read or an artifact could not be written.
+     * @throws IllegalArgumentException If a header is malformed.
+     * @throws IndexOutOfBoundsException If a header is missing fields.
+     */
+    private BuildResult receive(HttpHeaders headers, InputStream in) throws IOException {
+        List<StageTiming> timings = new ArrayList<>();
+        for(String stage : headers.allValues(TeXBuildServer.STAGE_HEADER)) {
+            String[] fields = stage.split(" ");
+            timings.add(new StageTiming(BuildStage.valueOf(fields[0]), Integer.parseInt(fields[1]),
+                    Long.parseLong(fields[2]), Long.parseLong(fields[3]), Integer.parseInt(fields[4])));
+        }
+        Map<Artifact, Long> sizes = new EnumMap<>(Artifact.class);
+        for(String size : headers.allValues(TeXBuildServer.SIZE_HEADER)) {
+            String[] fields = size.split(" ");
+            sizes.put(Artifact.valueOf(fields[0]), Long.parseLong(fields[1]));
+        }
+        List<TeXDiagnostic> diagnostics = new ArrayList<>();
+        for(String diagnostic : headers.allValues(TeXBuildServer.DIAGNOSTIC_HEADER)) {
+            String[] fields = diagnostic.split(TeXBuildServer.DIAGNOSTIC_SEPARATOR, -1);
+            if(fields.length != 3) throw new IllegalArgumentException("Malformed diagnostic: " + diagnostic);
+            diagnostics.add(new TeXDiagnostic(TeXBuildServer.decode(fields[1]), Integer.parseInt(fields[0]),
+                    TeXBuildServer.decode(fields[2])));
+        }
+        BuildStatus status = BuildStatus.valueOf(headers.firstValue(TeXBuildServer.STATUS_HEADER).orElse("FAILED"));
+        boolean cached = Boolean.parseBoolean(headers.firstValue(TeXBuildServer.CACHED_HEADER).orElse("false"));
+        int pageCount = Integer.parseInt(headers.firstValue(TeXBuildServer.PAGES_HEADER).orElse("-1"));
+        long wallNanos = Long.parseLong(headers.firstValue(TeXBuildServer.WALL_NANOS_HEADER).orElse("0"));
+
+        String output = "";
+        Set<Artifact> artifacts = EnumSet.noneOf(Artifact.class);
+        for(String part : headers.firstValue(TeXBuildServer.PARTS_HEADER).orElse("").split(",")) {
+            int colon = part.indexOf(':');
+            if(colon < 0) continue;
+            String name = part.substring(0, colon);
+            long length = Long.parseLong(part.substring(colon + 1));
+            if(TeXBuildServer.OUTPUT_PART.equals(name)) {
+                output = new String(readExactly(in, length), StandardCharsets.UTF_8);
+            }else {
+                Artifact artifact = Artifact.valueOf(name);
+                write(in, length, outputFilePath.resolve(outputFileName + artifact.getExtension()));
+                artifacts.add(artifact);
+            }
+        }
+        return new BuildResult(status, outputFilePath, outputFileName, artifacts, cached, output, timings, sizes,
+                pageCount, wallNanos, diagnostics);
+    }
+
+    /**
+     * This function writes the next part of a body to the given target, replacing it atomically.
+     * @param in The body.
+     * @param length The length of the part.
+     * @param target The file the part is written to.
+     * @throws IOException If the part could not be read or written.
+     */
+    private static void write(InputStream in, long length, Path target) throws IOException {
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            try(OutputStream out = Files.newOutputStream(temporary)) {
+                byte[] buffer = new byte[TeXStream.CHUNK_SIZE];
+                for(long remaining = length; remaining > 0; ) {
+                    int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if(n < 0) throw new IOException("The server sent a truncated " + target.getFileName());
+                    out.write(buffer, 0, n);
+                    remaining -= n;
+                }
+            }
+            TeXBuilder.publish(temporary, target);
+        }finally{
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * @param in The body.
+     * @param length The length of the next part.
+     * @return The next part of the body.
+     * @throws IOException If the part could not be read.
+     */
+    private static byte[] readExactly(InputStream in, long length) throws IOException {
+        byte[] part = in.readNBytes((int) length);
+        if(part.length < length) throw new IOException("The server sent a truncated output");
+        return part;
+    }
+
+    /**
+     * @param status How the build ended.
+     * @param output The reason the build did not run on the server.
+     * @return The BuildResult of a build that produced no artifacts.
+     */
+    private BuildResult failure(BuildStatus status, String output){
+        return new BuildResult(status, outputFilePath, outputFileName, Collections.emptySet(), false, output,
+                Collections.emptyList(), Collections.emptyMap(), -1, 0, Collections.emptyList());
+    }
+}
@@ -0,0 +1,269 @@
+package JavaTeX.core;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class bridges reactive streams of sources to a TeXBuilder: it subscribes to a publisher of sources, builds each
+ * of them asynchronously, and publishes their BuildResults to a single subscriber in the order they finish.
+ *
+ * Sources are only requested from the publisher when the subscriber has demand for their results, so the number of
+ * builds running at once never exceeds the subscriber's outstanding demand (nor the processor's maximum concurrency).
+ * A slow subscriber therefore slows the publisher down instead of queueing results or starting processes no one is
+ * waiting for.
+ *
+ * Like TeXPipeline, every source is written to the output file name of the TeXBuilder followed by "-n", where n counts
+ * the sources received, so that builds in flight never share files. When the publisher completes (or fails), the
+ * subscriber is completed (or failed) once the running builds have been delivered. Cancelling the subscription cancels
+ * the publisher's subscription and the running builds, killing any process they are running.
+ */
+public class TeXBuildProcessor implements Flow.Processor<TeXSource, BuildResult> {
+
+    private final TeXBuilder builder; /* The TeXBuilder whose configuration every build uses. */
+    private final int maxConcurrency; /* The number of builds that may run at once. */
+    private final AtomicLong counter = new AtomicLong(); /* Used to give every build a unique output file name. */
+
+    /* The following fields are guarded by this. */
+    private Flow.Subscription upstream; /* The subscription to the publisher of sources. */
+    private boolean subscribed; /* Did a subscriber subscribe? */
+    private Flow.Subscriber<? super BuildResult> downstream; /* The subscriber of results, once it is subscribed. */
+    private long demand; /* The results requested by the subscriber and not yet reserved by a build. */
+    private int requested; /* The sources requested from the publisher and not yet received. */
+    private final Set<CompletableFuture<BuildResult>> running = new HashSet<>(); /* The builds running. */
+    private final ArrayDeque<BuildResult> finished = new ArrayDeque<>(); /* The results not yet delivered. */
+    private boolean upstreamDone; /* Did the publisher complete or fail? */
+    private Throwable error; /* Why the stream failed, or null if it did not. */
+    private boolean cancelled; /* Did the subscriber cancel its subscription? */
+    private boolean terminated; /* Was the subscriber completed or failed? */
+    private boolean draining; /* Is a thread delivering signals? */
+
+    /**
+     * Customized Constructor
+     * @param builder The TeXBuilder whose configuration every build uses.
+     * @param maxConcurrency The number of builds that may run at once, whatever the subscriber's demand. Values less
+     *                       than one are treated as one.
+     */
+    public TeXBuildProcessor(TeXBuilder builder, int maxConcurrency){
+        this.builder = builder != null ? builder : new TeXBuilder();
+        this.maxConcurrency = Math.max(1, maxConcurrency);
+    }
+
+    /**
+     * This function subscribes the given subscriber to the results. Only one subscriber is supported; any further
+     * subscriber is failed with an IllegalStateException.
+     * @param subscriber The subscriber of results.
+     */
+    @Override
+    public void subscribe(Flow.Subscriber<? super BuildResult> subscriber){
+        if(subscriber == null) throw new NullPointerException("subscriber must not be null");
+        boolean first;
+        synchronized(this) {
+            first = !subscribed;
+            subscribed = true;
+        }
+        if(first) {
+            subscriber.onSubscribe(new Subscription());
+            /* Signals are only delivered once onSubscribe returned. */
+            synchronized(this) {
+                downstream = subscriber;
+            }
+            drain();
+            return;
+        }
+        subscriber.onSubscribe(new Flow.Subscription() {
+            @Override
+            public void request(long n){
+            }
+
+            @Override
+            public void cancel(){
+            }
+        });
+        subscriber.onError(new IllegalStateException("The processor already has a subscriber"));
+    }
+
+    /**
+     * This class is the subscription handed to the subscriber of results.
+     */
+    private class Subscription implements Flow.Subscription {
+        @Override
+        public void request(long n){
+            synchronized(TeXBuildProcessor.this) {
+                if(n <= 0) {
+                    if(error == null) error = new IllegalArgumentException("The demand must be positive, not " + n);
+                    upstreamDone = true;
+                    cancelled = true;
+                }else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+            }
+            drain();
+        }
+
+        @Override
+        public void cancel(){
+            synchronized(TeXBuildProcessor.this) {
+                if(cancelled) return;
+                cancelled = true;
+                finished.clear();
+            }
+            drain();
+        }
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription){
+        synchronized(this) {
+            if(upstream == null && !upstreamDone) {
+                upstream = subscription;
+                subscription = null;
+            }
+        }
+        /* A second publisher is refused. */
+        if(subscription != null) subscription.cancel();
+        drain();
+    }
+
+    @Override
+    public void onNext(TeXSource source){
+        if(source == null) throw new NullPointerException("source must not be null");
+        TeXBuilder job = builder.withOutputFileName(builder.getOutputFileName() + "-" + counter.getAndIncrement());
+        synchronized(this) {
+            if(cancelled || terminated) {
+                if(requested > 0) requested--;
+                return;
+            }
+        }
+        CompletableFuture<BuildResult> build = job.compileAsync(source);
+        synchronized(this) {
+            /* The source stays requested until its build runs, so no further source is requested meanwhile. */
+            if(requested > 0) requested--;
+            if(cancelled || terminated) {
+                build.cancel(true);
+                return;
+            }
+            running.add(build);
+        }
+        build.whenComplete((result, failure) -> finished(build, result, failure));
+    }
+
+    /**
+     * This function queues the result of the given build for delivery.
+     * @param build The build.
+     * @param result The BuildResult describing the build, or null if it failed.
+     * @param failure Why the build failed, or null if it did not.
+     */
+    private void finished(CompletableFuture<BuildResult> build, BuildResult result, Throwable failure){
+        synchronized(this) {
+            if(!running.remove(build) || cancelled) return;
+            if(result != null) finished.add(result);
+            else if(error == null) {
+                error = failure;
+                upstreamDone = true;
+                cancelled = true;
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable){
+        if(throwable == null) throw new NullPointerException("throwable must not be null");
+        synchronized(this) {
+            upstreamDone = true;
+            if(error == null) error = throwable;
+        }
+        drain();
+    }
+
+    @Override
+    public void onComplete(){
+        synchronized(this) {
+            upstreamDone = true;
+        }
+        drain();
+    }
+
+    /**
+     * This function delivers the signals due to the subscriber and the publisher, one at a time. A thread finding
+     * another thread delivering leaves its signals to that thread.
+     */
+    private void drain(){
+        synchronized(this) {
+            if(draining) return;
+            draining = true;
+        }
+        while(true) {
+            Flow.Subscriber<? super BuildResult> subscriber;
+            Flow.Subscription subscription = null;
+            BuildResult result = null;
+            Throwable failure = null;
+            boolean complete = false;
+            long more = 0;
+            CompletableFuture<?>[] cancelledBuilds = null;
+            synchronized(this) {
+                subscriber = downstream;
+                if(terminated || subscriber == null) {
+                    draining = false;
+                    return;
+                }
+                if(cancelled) {
+                    /* Stop the publisher and the running builds, then fail the subscriber if the stream failed. */
+                    terminated = true;
+                    subscription = upstream;
+                    cancelledBuilds = running.toArray(new CompletableFuture<?>[0]);
+                    running.clear();
+                    failure = error;
+                }else if(!finished.isEmpty()) {
+                    result = finished.poll();
+                }else if(upstreamDone && running.isEmpty()) {
+                    terminated = true;
+                    failure = error;
+                    complete = failure == null;
+                }else if(!upstreamDone && upstream != null) {
+                    /* Every running or requested build holds one unit of the subscriber's demand. */
+                    more = Math.min(demand, maxConcurrency - running.size() - requested);
+                    if(more > 0) {
+                        demand -= more;
+                        requested += (int) more;
+                        subscription = upstream;
+                    }
+                }
+                if(result == null && failure == null && !complete && subscription == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            if(cancelledBuilds != null) {
+                if(subscription != null) subscription.cancel();
+                for(CompletableFuture<?> build : cancelledBuilds) build.cancel(true);
+                if(failure != null) subscriber.onError(failure);
+            }else if(result != null) {
+                subscriber.onNext(result);
+            }else if(complete) {
+                subscriber.onComplete();
+            }else if(failure != null) {
+                subscriber.onError(failure);
+            }else {
+                subscription.request(more);
+            }
+        }
+    }
+
+    /**
+     * @return The number of builds running.
+     */
+    public synchronized int getRunning(){
+        return this.running.size();
+    }
+
+    @Override
+    public synchronized String toString(){
+        return "TeXBuildProcessor[running=" + this.running.size() + ", requested=" + this.requested
+                + ", demand=" + this.demand + "]";
+    }
+}
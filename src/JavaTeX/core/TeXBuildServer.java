@@ -0,0 +1,345 @@
+package JavaTeX.core;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class serves a TeXBuilder over HTTP, so that machines without TeX (or with too few cores) can hand their builds
+ * to a build node; TeXBuildClient is its client. Each build is a job on a bounded queue served by a fixed pool of
+ * workers; when the queue is full further builds are refused with 503 (Service Unavailable) rather than piling up.
+ *
+ * A build is requested with "POST /build?log=..&dvi=..&pdf=.." whose body is the TeX source in UTF-8. Every job runs
+ * with its own output file name in the directory of the served TeXBuilder, under that TeXBuilder's configuration (cache,
+ * timeout, format, etc.), and its artifacts are deleted once they were sent. The response describes the BuildResult in
+ * "X-JavaTeX-*" headers, and its body holds the output of TeX followed by the kept artifacts, in the order and with the
+ * lengths listed in the X-JavaTeX-Parts header.
+ */
+public class TeXBuildServer implements AutoCloseable {
+
+    /* The path builds are requested on. */
+    public static final String BUILD_PATH = "/build";
+    /* Sources larger than this are refused with 413 (Payload Too Large). */
+    public static final int MAX_SOURCE_LENGTH = 16 * 1024 * 1024;
+    /* The time close() waits for cancelled builds to clean up. */
+    private static final long CLOSE_TIMEOUT_SECONDS = 10;
+
+    static final String STATUS_HEADER = "X-JavaTeX-Status";
+    static final String CACHED_HEADER = "X-JavaTeX-Cached";
+    static final String PAGES_HEADER = "X-JavaTeX-Pages";
+    static final String WALL_NANOS_HEADER = "X-JavaTeX-Wall-Nanos";
+    static final String STAGE_HEADER = "X-JavaTeX-Stage";
+    static final String SIZE_HEADER = "X-JavaTeX-Size";
+    static final String DIAGNOSTIC_HEADER = "X-JavaTeX-Diagnostic";
+    static final String PARTS_HEADER = "X-JavaTeX-Parts";
+    /* Separates the fields of a diagnostic header. Encoded fields never hold it, and unlike a space it is not trimmed
+     * from the end of a header whose last field is empty. */
+    static final String DIAGNOSTIC_SEPARATOR = ";";
+    /* The name of the part holding the output of TeX. */
+    static final String OUTPUT_PART = "OUTPUT";
+
+    private final TeXBuilder builder; /* Builds every job. */
+    private final HttpServer server; /* Accepts requests. */
+    private final ThreadPoolExecutor workers; /* The job queue and the workers serving it. */
+    private final AtomicLong jobs = new AtomicLong(); /* Numbers jobs, so each has its own output file name. */
+    private final AtomicLong rejected = new AtomicLong(); /* The number of jobs refused because the queue was full. */
+
+    /**
+     * Customized Constructor
+     * Creates a TeXBuildServer on an ephemeral port of the loopback address. Call start() to accept builds.
+     * @param builder Builds every job. Its output file path is the working directory of the jobs.
+     * @param workers The number of jobs built at once.
+     * @param queueCapacity The number of jobs that may wait for a worker.
+     * @throws IOException If the server could not be bound.
+     */
+    public TeXBuildServer(TeXBuilder builder, int workers, int queueCapacity) throws IOException {
+        this(builder, new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), workers, queueCapacity);
+    }
+
+    /**
+     * Customized Constructor
+     * Creates a TeXBuildServer on the given address. Call start() to accept builds.
+     * @param builder Builds every job. Its output file path is the working directory of the jobs.
+     * @param address The address to listen on. A port of zero picks an ephemeral port.
+     * @param workers The number of jobs built at once.
+     * @param queueCapacity The number of jobs that may wait for a worker.
+     * @throws IOException If the server could not be bound.
+     */
+    public TeXBuildServer(TeXBuilder builder, InetSocketAddress address, int workers, int queueCapacity)
+            throws IOException {
+        if(workers < 1) throw new IllegalArgumentException("workers must be positive: " + workers);
+        if(queueCapacity < 0) throw new IllegalArgumentException("queueCapacity must not be negative: " + queueCapacity);
+        this.builder = builder;
+        BlockingQueue<Runnable> queue = queueCapacity > 0 ? new ArrayBlockingQueue<>(queueCapacity)
+                : new SynchronousQueue<>();
+        this.workers = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.NANOSECONDS, queue,
+                BuildExecutors.daemonThreadFactory("javatex-server"));
+        this.server = HttpServer.create(address, 0);
+        /* Requests are accepted on the server's own thread and built on the workers. */
+        this.server.createContext(BUILD_PATH, this::accept);
+    }
+
+    /**
+     * This function starts accepting builds.
+     * @return This TeXBuildServer.
+     */
+    public TeXBuildServer start(){
+        server.start();
+        return this;
+    }
+
+    /**
+     * This function stops accepting builds and stops the workers; running builds are cancelled, and their files
+     * removed, before it returns.
+     */
+    @Override
+    public void close(){
+        server.stop(0);
+        workers.shutdownNow();
+        try {
+            workers.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The address the server listens on.
+     */
+    public InetSocketAddress getAddress(){
+        return server.getAddress();
+    }
+
+    /**
+     * @return The URI TeXBuildClients connect to.
+     */
+    public URI getURI(){
+        InetSocketAddress address = getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    /**
+     * @return The number of jobs waiting for a worker.
+     */
+    public int getQueuedJobs(){
+        return workers.getQueue().size();
+    }
+
+    /**
+     * @return The number of jobs being built.
+     */
+    public int getActiveJobs(){
+        return workers.getActiveCount();
+    }
+
+    /**
+     * @return The number of jobs built.
+     */
+    public long getCompletedJobs(){
+        return workers.getCompletedTaskCount();
+    }
+
+    /**
+     * @return The number of jobs refused because the queue was full.
+     */
+    public long getRejectedJobs(){
+        return rejected.get();
+    }
+
+    /**
+     * This function queues a request as a job, or refuses it.
+     * @param exchange The request.
+     */
+    private void accept(HttpExchange exchange){
+        if(!"POST".equals(exchange.getRequestMethod())) {
+            exchange.getResponseHeaders().set("Allow", "POST");
+            respond(exchange, 405, "Builds are requested with POST.");
+            return;
+        }
+        try {
+            workers.execute(() -> serve(exchange));
+        }catch(RejectedExecutionException e){
+            rejected.incrementAndGet();
+            respond(exchange, 503, "The build queue is full.");
+        }
+    }
+
+    /**
+     * This function builds a job and sends its result.
+     * @param exchange The request.
+     */
+    private void serve(HttpExchange exchange){
+        try {
+            byte[] body = read(exchange.getRequestBody());
+            if(body == null) {
+                respond(exchange, 413, "Sources are limited to " + MAX_SOURCE_LENGTH + " bytes.");
+                return;
+            }
+            Map<String, String> query = parseQuery(exchange.getRequestURI().getRawQuery());
+            /* Small sources are built as TeXStrings, so they may be cached; larger ones are piped to TeX. */
+            TeXSource source = TeXBuilder.toSource(new String(body, StandardCharsets.UTF_8));
+            TeXBuilder job = builder.withOutputFileName("job-" + jobs.incrementAndGet())
+                    .withArtifacts(isSet(query, "log"), isSet(query, "dvi"), isSet(query, "pdf"));
+            BuildResult result = job.compile(source);
+            try {
+                send(exchange, result);
+            }finally{
+                result.deleteArtifacts();
+            }
+        }catch(IOException e){
+            /* The client went away; there is no one to tell. */
+        }finally{
+            exchange.close();
+        }
+    }
+
+    /**
+     * This function sends the given result: its description in headers, then the output of TeX and the artifacts.
+     * @param exchange The request.
+     * @param result The result of the job.
+     * @throws IOException If the result could not be sent.
+     */
+    private static void send(HttpExchange exchange, BuildResult result) throws IOException {
+        Map<String, List<String>> headers = exchange.getResponseHeaders();
+        headers.put(STATUS_HEADER, List.of(result.getStatus().name()));
+        headers.put(CACHED_HEADER, List.of(String.valueOf(result.isCached())));
+        headers.put(PAGES_HEADER, List.of(String.valueOf(result.getPageCount())));
+        headers.put(WALL_NANOS_HEADER, List.of(String.valueOf(result.getWallNanos())));
+        List<String> stages = new ArrayList<>();
+        for(StageTiming timing : result.getStageTimings()) {
+            stages.add(timing.getStage().name() + " " + timing.getExitCode() + " " + timing.getWallNanos() + " "
+                    + timing.getCpuNanos() + " " + timing.getProcesses());
+        }
+        if(!stages.isEmpty()) headers.put(STAGE_HEADER, stages);
+        List<String> sizes = new ArrayList<>();
+        for(Map.Entry<Artifact, Long> size : result.getSizes().entrySet()) {
+            sizes.add(size.getKey().name() + " " + size.getValue());
+        }
+        if(!sizes.isEmpty()) headers.put(SIZE_HEADER, sizes);
+        List<String> diagnostics = new ArrayList<>();
+        for(TeXDiagnostic diagnostic : result.getDiagnostics()) {
+            diagnostics.add(diagnostic.getLineNumber() + DIAGNOSTIC_SEPARATOR + encode(diagnostic.getMessage())
+                    + DIAGNOSTIC_SEPARATOR + encode(diagnostic.getContext()));
+        }
+        if(!diagnostics.isEmpty()) headers.put(DIAGNOSTIC_HEADER, diagnostics);
+
+        byte[] output = result.getOutput().getBytes(StandardCharsets.UTF_8);
+        StringBuilder parts = new StringBuilder(OUTPUT_PART + ":" + output.length);
+        long length = output.length;
+        List<Artifact> artifacts = new ArrayList<>();
+        for(Artifact artifact : result.getArtifacts()) {
+            long size = Files.size(result.getPath(artifact));
+            parts.append(',').append(artifact.name()).append(':').append(size);
+            length += size;
+            artifacts.add(artifact);
+        }
+        headers.put(PARTS_HEADER, List.of(parts.toString()));
+        headers.put("Content-Type", List.of("application/octet-stream"));
+
+        exchange.sendResponseHeaders(200, length > 0 ? length : -1);
+        if(length == 0) return;
+        OutputStream body = exchange.getResponseBody();
+        body.write(output);
+        WritableByteChannel channel = Channels.newChannel(body);
+        for(Artifact artifact : artifacts) result.transferTo(artifact, channel);
+        body.flush();
+    }
+
+    /**
+     * This function responds with the given error.
+     * @param exchange The request.
+     * @param code The HTTP status code.
+     * @param message The reason, sent as plain text.
+     */
+    private static void respond(HttpExchange exchange, int code, String message){
+        try {
+            byte[] body = message.getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+            exchange.sendResponseHeaders(code, body.length);
+            exchange.getResponseBody().write(body);
+        }catch(IOException e){
+            /* The client went away; there is no one to tell. */
+        }finally{
+            exchange.close();
+        }
+    }
+
+    /**
+     * @param in The body of a request.
+     * @return The body, or null if it is longer than MAX_SOURCE_LENGTH.
+     * @throws IOException If the body could not be read.
+     */
+    private static byte[] read(InputStream in) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[TeXStream.CHUNK_SIZE];
+        for(int n; (n = in.read(buffer)) >= 0; ) {
+            if(body.size() + n > MAX_SOURCE_LENGTH) return null;
+            body.write(buffer, 0, n);
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * @param query The raw query of a request, or null if it has none.
+     * @return The parameters of the query.
+     */
+    private static Map<String, String> parseQuery(String query){
+        Map<String, String> parameters = new HashMap<>();
+        if(query == null) return parameters;
+        for(String parameter : query.split("&")) {
+            int equals = parameter.indexOf('=');
+            if(equals < 0) parameters.put(decode(parameter), "");
+            else parameters.put(decode(parameter.substring(0, equals)), decode(parameter.substring(equals + 1)));
+        }
+        return parameters;
+    }
+
+    /**
+     * @param query The parameters of a request.
+     * @param name The name of a flag.
+     * @return A boolean indicating whether the flag is "true".
+     */
+    private static boolean isSet(Map<String, String> query, String name){
+        return "true".equals(query.get(name));
+    }
+
+    /**
+     * @param text The text to be put in a header.
+     * @return The text URL-encoded, so it holds no spaces, commas or line breaks.
+     */
+    static String encode(String text){
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param text Text encoded by encode(String).
+     * @return The decoded text.
+     */
+    static String decode(String text){
+        return URLDecoder.decode(text, StandardCharsets.UTF_8);
+    }
+}
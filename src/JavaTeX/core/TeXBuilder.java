@@ -1,32 +1,99 @@
 package JavaTeX.core;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * This class is used to build (compile) TeX Source.
+ *
+ * A TeXBuilder is an immutable configuration: every "with" function returns a copy, and a TeXBuilder may be shared by
+ * any number of threads. Builds sharing a TeXBuilder share its output file name, though, so concurrent builds either
+ * use TeXBuilders with distinct output names, or a TeXBuilder with job isolation (see withJobIsolation), which gives
+ * every invocation an output file name, and so a set of artifacts and intermediate files, of its own.
  */
 public class TeXBuilder {
 
     public static final String DEFAULT_OUTPUT_FILE_NAME = "output";
+    public static final int DEFAULT_OUTPUT_LIMIT = 64 * 1024;
+    public static final String DEFAULT_TEX_COMMAND = "tex";
+    public static final String DEFAULT_DVIPDFM_COMMAND = "dvipdfm";
 
-    private boolean log; /* Should the JavaTeX.core.TeXBuilder keep the log file generated by TeX? */
-    private boolean dvi; /* Should the JavaTeX.core.TeXBuilder keep the dvi file generated by TeX? */
-    private boolean pdf; /* Should the JavaTeX.core.TeXBuilder generate a pdf file? */
-    private String outputFileName; /* The name of the file generated by TeX (Excluding file extensions) */
-    private Path outputFilePath; /* The path to the file generated by TeX (Excluding the file itself) */
+    /* The files TeX writes for a later run to read; a pass is repeated while they change. */
+    private static final String[] AUXILIARY_EXTENSIONS = {".aux", ".toc"};
+
+    /* Sources up to this many bytes are passed to TeX as an argument; larger ones are piped to it. */
+    static final int MAX_ARGUMENT_LENGTH = 64 * 1024;
+
+    /* Numbers the invocations of isolated TeXBuilders (see withJobIsolation). */
+    private static final AtomicLong JOBS = new AtomicLong();
+
+    /* Matches the end of TeX's "Output written on X (N pages, M bytes)." line. */
+    private static final Pattern PAGES_WRITTEN = Pattern.compile("\\((\\d+) pages?, \\d+ bytes$");
+
+    private final boolean log; /* Should the JavaTeX.core.TeXBuilder keep the log file generated by TeX? */
+    private final boolean dvi; /* Should the JavaTeX.core.TeXBuilder keep the dvi file generated by TeX? */
+    private final boolean pdf; /* Should the JavaTeX.core.TeXBuilder generate a pdf file? */
+    private final String outputFileName; /* The name of the file generated by TeX (Excluding file extensions) */
+    private final Path outputFilePath; /* The path to the file generated by TeX (Excluding the file itself) */
+    private final Executor executor; /* The executor that runs asynchronous builds */
+    private final ProcessLimiter processLimiter; /* Limits how many processes this TeXBuilder may run at once */
+    private final BuildCache cache; /* The cache consulted before running TeX, or null if builds are not cached */
+    private final TeXProcessPool processPool; /* The pool of warm TeX processes, or null if TeX is started per build */
+    private final long timeoutNanos; /* The time a build may take in nanoseconds, or zero for no timeout */
+    private final int outputLimit; /* The number of bytes of process output retained per build */
+    private final List<BuildListener> listeners; /* Receive the events of every build */
+    private final TeXEngine engine; /* Typesets sources and converts dvi files to pdf files */
+    private final TeXFormat format; /* The preamble TeX starts from, or null if TeX starts from plain TeX */
+    private final int maxPasses; /* The maximum number of times TeX is run per build */
+    private final boolean failFast; /* Should a build stop at TeX's first error? */
+    private final TeXValidator validator; /* Checks sources before any process is started, or null if none is */
+    private final BuildCoalescer coalescer; /* Joins concurrent identical builds, or null if builds are not coalesced */
+    private final Path scratchDirectory; /* Where each build runs in a directory of its own, or null */
+    private final BuildScheduler scheduler; /* Queues builds by priority, or null if builds start at once */
+    private final BuildPriority priority; /* The priority of builds queued on the scheduler */
+    private final ResourceLimits limits; /* The resources a build may use */
+    private final boolean isolated; /* Does every invocation write to an output file name of its own? */
+    private final boolean recorder; /* Should TeX record the files it reads and writes in a .fls file? */
 
     /**
      * Default Constructor
      * Creates a JavaTeX.core.TeXBuilder that generates a pdf file titled "out.pdf" in the JRE working directory
      */
     public TeXBuilder(){
-        this.log = false;
-        this.dvi = false;
-        this.pdf = true;
-        this.outputFileName = DEFAULT_OUTPUT_FILE_NAME;
-        this.outputFilePath = getDefaultOutputFilePath();
+        this(new Settings(false, false, true, DEFAULT_OUTPUT_FILE_NAME, getDefaultOutputFilePath()));
     }
 
     /**
@@ -38,18 +105,471 @@ public class TeXBuilder {
      * @param outputFilePath The path to the file generated by TeX (Excluding the file itself).
      */
     public TeXBuilder(boolean log, boolean dvi, boolean pdf, String outputFileName, String outputFilePath){
-        this.log = log;
-        this.dvi = dvi;
-        this.pdf = pdf;
         /* Check that the given outputFileName and outputFilePath are valid. Assign default values if invalid */
-        this.outputFileName = validFileName(outputFileName) ? outputFileName : DEFAULT_OUTPUT_FILE_NAME;
-        this.outputFilePath = validPath(outputFilePath) ? Paths.get(outputFilePath) : getDefaultOutputFilePath();
+        this(new Settings(log, dvi, pdf, validFileName(outputFileName) ? outputFileName : DEFAULT_OUTPUT_FILE_NAME,
+                validPath(outputFilePath) ? Paths.get(outputFilePath) : getDefaultOutputFilePath()));
+    }
+
+    /**
+     * Customized Constructor
+     * Every TeXBuilder is created by this constructor, so its configuration is final, and safely published to other
+     * threads, once it is constructed.
+     * @param settings The configuration of the TeXBuilder.
+     */
+    private TeXBuilder(Settings settings){
+        this.log = settings.log;
+        this.dvi = settings.dvi;
+        this.pdf = settings.pdf;
+        this.outputFileName = settings.outputFileName;
+        this.outputFilePath = settings.outputFilePath;
+        this.executor = settings.executor;
+        this.processLimiter = settings.processLimiter;
+        this.cache = settings.cache;
+        this.processPool = settings.processPool;
+        this.timeoutNanos = settings.timeoutNanos;
+        this.outputLimit = settings.outputLimit;
+        this.listeners = settings.listeners;
+        this.engine = settings.engine;
+        this.format = settings.format;
+        this.maxPasses = settings.maxPasses;
+        this.failFast = settings.failFast;
+        this.validator = settings.validator;
+        this.coalescer = settings.coalescer;
+        this.scratchDirectory = settings.scratchDirectory;
+        this.scheduler = settings.scheduler;
+        this.priority = settings.priority;
+        this.limits = settings.limits;
+        this.isolated = settings.isolated;
+        this.recorder = settings.recorder;
+    }
+
+    /**
+     * This class holds the configuration of a TeXBuilder while it is assembled, e.g., by a "with" function copying a
+     * TeXBuilder and changing part of its configuration. It is confined to the thread assembling it.
+     */
+    private static final class Settings {
+        boolean log;
+        boolean dvi;
+        boolean pdf;
+        String outputFileName;
+        Path outputFilePath;
+        Executor executor;
+        ProcessLimiter processLimiter;
+        BuildCache cache;
+        TeXProcessPool processPool;
+        long timeoutNanos;
+        int outputLimit;
+        List<BuildListener> listeners;
+        TeXEngine engine;
+        TeXFormat format;
+        int maxPasses;
+        boolean failFast;
+        TeXValidator validator;
+        BuildCoalescer coalescer;
+        Path scratchDirectory;
+        BuildScheduler scheduler;
+        BuildPriority priority;
+        ResourceLimits limits;
+        boolean isolated;
+        boolean recorder;
+
+        /**
+         * Customized Constructor
+         * Creates the default configuration with the given output files.
+         * @param log Should the TeXBuilder keep the log file generated by TeX?
+         * @param dvi Should the TeXBuilder keep the dvi file generated by TeX?
+         * @param pdf Should the TeXBuilder generate a pdf file?
+         * @param outputFileName The name of the file generated by TeX (Excluding file extensions).
+         * @param outputFilePath The path to the file generated by TeX (Excluding the file itself).
+         */
+        Settings(boolean log, boolean dvi, boolean pdf, String outputFileName, Path outputFilePath){
+            this.log = log;
+            this.dvi = dvi;
+            this.pdf = pdf;
+            this.outputFileName = outputFileName;
+            this.outputFilePath = outputFilePath;
+            this.executor = BuildExecutors.defaultExecutor();
+            this.processLimiter = ProcessLimiter.shared();
+            this.outputLimit = DEFAULT_OUTPUT_LIMIT;
+            this.listeners = Collections.emptyList();
+            this.engine = TeXEngine.TEX_DVIPDFM;
+            this.maxPasses = 1;
+            this.limits = ResourceLimits.NONE;
+        }
+
+        /**
+         * Customized Constructor
+         * @param builder The TeXBuilder whose configuration is copied.
+         */
+        Settings(TeXBuilder builder){
+            this.log = builder.log;
+            this.dvi = builder.dvi;
+            this.pdf = builder.pdf;
+            this.outputFileName = builder.outputFileName;
+            this.outputFilePath = builder.outputFilePath;
+            this.executor = builder.executor;
+            this.processLimiter = builder.processLimiter;
+            this.cache = builder.cache;
+            this.processPool = builder.processPool;
+            this.timeoutNanos = builder.timeoutNanos;
+            this.outputLimit = builder.outputLimit;
+            this.listeners = builder.listeners;
+            this.engine = builder.engine;
+            this.format = builder.format;
+            this.maxPasses = builder.maxPasses;
+            this.failFast = builder.failFast;
+            this.validator = builder.validator;
+            this.coalescer = builder.coalescer;
+            this.scratchDirectory = builder.scratchDirectory;
+            this.scheduler = builder.scheduler;
+            this.priority = builder.priority;
+            this.limits = builder.limits;
+            this.isolated = builder.isolated;
+            this.recorder = builder.recorder;
+        }
+
+        /**
+         * @return A TeXBuilder with this configuration.
+         */
+        TeXBuilder build(){
+            return new TeXBuilder(this);
+        }
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that runs asynchronous builds on the given executor. By default
+     * asynchronous builds run on virtual threads where the JRE supports them.
+     * @param executor The executor that runs asynchronous builds. A null executor restores the default.
+     * @return A TeXBuilder using the given executor.
+     */
+    public TeXBuilder withExecutor(Executor executor){
+        Settings copy = new Settings(this);
+        copy.executor = executor != null ? executor : BuildExecutors.defaultExecutor();
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that starts its processes through the given limiter. By default
+     * every TeXBuilder shares ProcessLimiter.shared().
+     * @param processLimiter The limiter bounding how many processes may run at once. A null limiter restores the default.
+     * @return A TeXBuilder using the given limiter.
+     */
+    public TeXBuilder withProcessLimiter(ProcessLimiter processLimiter){
+        Settings copy = new Settings(this);
+        copy.processLimiter = processLimiter != null ? processLimiter : ProcessLimiter.shared();
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that consults the given cache before running TeX. Successful
+     * builds are stored in the cache; later builds of the same source with the same log/dvi/pdf options restore the
+     * stored artifacts instead of running TeX.
+     * @param cache The cache to be used. A null cache disables caching.
+     * @return A TeXBuilder using the given cache.
+     */
+    public TeXBuilder withCache(BuildCache cache){
+        Settings copy = new Settings(this);
+        copy.cache = cache;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that typesets on the warm processes of the given pool instead of
+     * starting TeX for every build. The pool is only used for builds whose engine typesets to dvi by running the pool's
+     * command (see TeXProcessPool.getCommand); other builds start their own processes. Jobs on the pool are limited by
+     * the pool's ProcessLimiter rather than by this TeXBuilder's.
+     * @param processPool The pool of warm TeX processes. A null pool starts TeX for every build.
+     * @return A TeXBuilder using the given pool.
+     */
+    public TeXBuilder withProcessPool(TeXProcessPool processPool){
+        Settings copy = new Settings(this);
+        copy.processPool = processPool;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds are stopped once they have run for the given time.
+     * The processes of a stopped build (and anything they started) are killed, and its BuildResult reports
+     * BuildStatus.TIMED_OUT.
+     * @param timeout The time a build may take, or zero (or less) for no timeout.
+     * @param unit The unit of the timeout.
+     * @return A TeXBuilder using the given timeout.
+     */
+    public TeXBuilder withTimeout(long timeout, TimeUnit unit){
+        Settings copy = new Settings(this);
+        copy.timeoutNanos = timeout > 0 ? unit.toNanos(timeout) : 0;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that retains the given number of bytes of the output of a build's
+     * processes (see BuildResult.getOutput()). Older output is discarded.
+     * @param outputLimit The number of bytes retained per build.
+     * @return A TeXBuilder using the given output limit.
+     */
+    public TeXBuilder withOutputLimit(int outputLimit){
+        Settings copy = new Settings(this);
+        copy.outputLimit = Math.max(0, outputLimit);
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that runs the given executables instead of the "tex" and
+     * "dvipdfm" found on the PATH (e.g., a specific TeX installation, or a stub engine for benchmarks). The executables
+     * must accept the same arguments. A TeXProcessPool is only used if its warm processes run the same executable.
+     * @param texCommand The executable that typesets sources. A null command restores the default.
+     * @param dvipdfmCommand The executable that converts dvi files to pdf files. A null command restores the default.
+     * @return A TeXBuilder using the given executables.
+     */
+    public TeXBuilder withCommands(String texCommand, String dvipdfmCommand){
+        return withEngine(TeXEngine.texDvipdfm(texCommand != null ? texCommand : DEFAULT_TEX_COMMAND,
+                dvipdfmCommand != null ? dvipdfmCommand : DEFAULT_DVIPDFM_COMMAND));
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that runs the given TeX engine instead of "tex" followed by
+     * "dvipdfm", e.g., TeXEngine.PDFTEX, TeXEngine.XETEX, TeXEngine.LUATEX, or an engine of its own. Builds that keep
+     * a pdf file but no dvi file are typeset straight to pdf by an engine capable of it (see
+     * TeXEngine.getTypesetOutput); builds that keep a dvi file fail on an engine that can not write one. A
+     * TeXProcessPool is only used for builds the engine typesets to dvi, and only if its warm processes run the
+     * engine's command with the same options.
+     * @param engine The engine to be run. A null engine restores the default (TeXEngine.TEX_DVIPDFM).
+     * @return A TeXBuilder using the given engine.
+     */
+    public TeXBuilder withEngine(TeXEngine engine){
+        Settings copy = new Settings(this);
+        copy.engine = engine != null ? engine : TeXEngine.TEX_DVIPDFM;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that typesets every source on top of the given preamble. The
+     * first build dumps the preamble into a format file (see TeXFormat); later builds start TeX from that format, so
+     * only the source itself is typeset. Builds using a format start TeX per build rather than on a TeXProcessPool.
+     * @param format The preamble to be used. A null format starts TeX from plain TeX.
+     * @return A TeXBuilder using the given preamble.
+     */
+    public TeXBuilder withFormat(TeXFormat format){
+        Settings copy = new Settings(this);
+        copy.format = format;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that runs TeX up to the given number of times per build, so that
+     * cross-references and tables of contents written to the .aux and .toc files are resolved. TeX is run again only
+     * while a run changed those files (a document whose files are unchanged from its previous build needs one run), and
+     * the dvi file is converted once, after the last run. Builds of more than one pass start TeX per build rather than
+     * on a TeXProcessPool, whose processes write their files under their own names.
+     * @param maxPasses The maximum number of times TeX is run per build. Values less than one are treated as one.
+     * @return A TeXBuilder using the given maximum.
+     */
+    public TeXBuilder withMaxPasses(int maxPasses){
+        Settings copy = new Settings(this);
+        copy.maxPasses = Math.max(1, maxPasses);
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds stop at the first error TeX reports. Rather than
+     * typesetting the rest of the source in scrollmode, TeX is killed as soon as the error is parsed from its output,
+     * the pdf conversion is skipped, and unwanted files are removed without starting any process. The error is
+     * returned by BuildResult.getDiagnostics().
+     * @param failFast Should builds stop at TeX's first error?
+     * @return A TeXBuilder using the given mode.
+     */
+    public TeXBuilder withFailFast(boolean failFast){
+        Settings copy = new Settings(this);
+        copy.failFast = failFast;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that checks every TeXString and TeXFile with the given validator
+     * before starting any process. A source that fails the check is not built: its BuildResult reports
+     * BuildStatus.REJECTED, and BuildResult.getDiagnostics() describes the problems.
+     * @param validator The validator to be used. A null validator disables validation.
+     * @return A TeXBuilder using the given validator.
+     */
+    public TeXBuilder withValidator(TeXValidator validator){
+        Settings copy = new Settings(this);
+        copy.validator = validator;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds join an identical build that is already running on
+     * the given coalescer, rather than starting TeX again. Builds are identical if they have the same TeXString or
+     * TeXFile content, options and output files; TeXStreams are never coalesced. Coalesced builds run on this
+     * TeXBuilder's executor without a deadline of their own: a caller's timeout (see withTimeout) only bounds how long
+     * that caller waits. A caller that times out receives a BuildResult reporting BuildStatus.TIMED_OUT without
+     * stopping the build for the other callers; the build is only stopped once every caller gave up.
+     * @param coalescer The coalescer to be used, normally shared by every TeXBuilder. A null coalescer disables
+     *                  coalescing.
+     * @return A TeXBuilder using the given coalescer.
+     */
+    public TeXBuilder withCoalescer(BuildCoalescer coalescer){
+        Settings copy = new Settings(this);
+        copy.coalescer = coalescer;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds each run in their own directory under the given
+     * one, e.g., on a memory-backed filesystem such as /dev/shm. TeX and dvipdfm write their files there; only the
+     * artifacts this TeXBuilder keeps are then published to the output file path, each with an atomic rename (through
+     * a temporary file in the output file path if the directories are on different filesystems), so readers never see
+     * a partially written artifact. The build's directory is then deleted without starting any process.
+     * @param scratchDirectory The directory holding the builds' directories. It is created if it does not exist. A
+     *                         null directory runs builds in the output file path.
+     * @return A TeXBuilder using the given scratch directory.
+     */
+    public TeXBuilder withScratchDirectory(Path scratchDirectory){
+        Settings copy = new Settings(this);
+        copy.scratchDirectory = scratchDirectory != null ? scratchDirectory.toAbsolutePath() : null;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds are queued on the given scheduler with the given
+     * priority, e.g., so that interactive previews overtake bulk exports sharing the same workers. A build refused or
+     * shed because the scheduler's queue is full ends BuildStatus.OVERLOADED without starting a process.
+     * @param scheduler The scheduler builds are queued on. A null scheduler starts builds at once.
+     * @param priority The priority of the builds.
+     * @return A TeXBuilder using the given scheduler.
+     */
+    public TeXBuilder withScheduler(BuildScheduler scheduler, BuildPriority priority){
+        Settings copy = new Settings(this);
+        copy.scheduler = scheduler;
+        copy.priority = priority != null ? priority : BuildPriority.NORMAL;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds also report their events to the given listener.
+     * @param listener The listener to be added. A null listener is ignored.
+     * @return A TeXBuilder using the given listener in addition to those of this TeXBuilder.
+     */
+    public TeXBuilder withListener(BuildListener listener){
+        Settings copy = new Settings(this);
+        if(listener != null) {
+            List<BuildListener> listeners = new ArrayList<>(this.listeners);
+            listeners.add(listener);
+            copy.listeners = Collections.unmodifiableList(listeners);
+        }
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder whose builds are limited to the given resources. A build that
+     * exceeds a limit has its process killed and ends BuildStatus.LIMIT_EXCEEDED. The engine settings of the limits
+     * are passed to every TeX process the build starts, but not to the warm processes of a TeXProcessPool, which are
+     * started before any build.
+     * @param limits The resources a build may use. Null limits remove every limit.
+     * @return A TeXBuilder using the given limits.
+     */
+    public TeXBuilder withLimits(ResourceLimits limits){
+        Settings copy = new Settings(this);
+        copy.limits = limits != null ? limits : ResourceLimits.NONE;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that gives every invocation (compile, build, their asynchronous
+     * variants, buildAll and compileChunked) a job identity of its own: the invocation writes to the output file name
+     * of this TeXBuilder followed by "-p-n", where p identifies the JVM and n counts its invocations (e.g.,
+     * "output-4242-17.pdf"). Its dvi, log and auxiliary files, and any files its cleanup deletes, are therefore never
+     * shared with another invocation, so a single TeXBuilder can serve concurrent builds. The BuildResult's output file
+     * name identifies the invocation's artifacts. Invocations have distinct outputs, so they are never coalesced.
+     *
+     * Isolation is off by default: callers of build and buildAsync, the cache, coalescing and TeXWatcher find a
+     * TeXBuilder's artifacts under its own output file name. The functions returning a boolean do not report an
+     * isolated invocation's output file name, so its artifacts are only reachable through the BuildResult of compile or
+     * compileAsync (see BuildResult.getPath), or the BatchResult of buildAll (see BatchResult.getOutputFileName).
+     * @param isolated Should every invocation write to an output file name of its own?
+     * @return A TeXBuilder isolating its invocations as given.
+     */
+    public TeXBuilder withJobIsolation(boolean isolated){
+        Settings copy = new Settings(this);
+        copy.isolated = isolated;
+        return copy.build();
+    }
+
+    /**
+     * @return The TeXBuilder running a single invocation of this TeXBuilder: this TeXBuilder, or if it isolates its
+     * invocations, a copy writing to an output file name of its own.
+     */
+    private TeXBuilder forInvocation(){
+        if(!isolated) return this;
+        Settings job = new Settings(this);
+        job.outputFileName = outputFileName + "-" + ProcessHandle.current().pid() + "-" + JOBS.incrementAndGet();
+        job.isolated = false;
+        return job.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that writes to the given output file name.
+     * @param outputFileName The name of the file generated by TeX (Excluding file extensions).
+     * @return A TeXBuilder using the given output file name.
+     */
+    TeXBuilder withOutputFileName(String outputFileName){
+        Settings copy = new Settings(this);
+        copy.outputFileName = outputFileName;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that keeps the given artifacts.
+     * @param log Should the TeXBuilder keep the log file generated by TeX?
+     * @param dvi Should the TeXBuilder keep the dvi file generated by TeX?
+     * @param pdf Should the TeXBuilder generate a pdf file?
+     * @return A TeXBuilder keeping the given artifacts.
+     */
+    TeXBuilder withArtifacts(boolean log, boolean dvi, boolean pdf){
+        Settings copy = new Settings(this);
+        copy.log = log;
+        copy.dvi = dvi;
+        copy.pdf = pdf;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that makes TeX record every file it reads and writes (its
+     * "-recorder" option) in a .fls file next to the build's artifacts, used by TeXWatcher to track a document's
+     * inputs. The .fls file is not an artifact, so it is left for the caller to read and delete.
+     * @param recorder Should TeX record the files it reads and writes?
+     * @return A TeXBuilder recording as given.
+     */
+    TeXBuilder withRecorder(boolean recorder){
+        Settings copy = new Settings(this);
+        copy.recorder = recorder;
+        return copy.build();
+    }
+
+    /**
+     * This function returns a copy of this TeXBuilder that writes to the given directory, used to run the stages of a
+     * build in its scratch directory.
+     * @param directory The directory the files are written to.
+     * @return A TeXBuilder writing to the given directory.
+     */
+    private TeXBuilder inDirectory(Path directory){
+        Settings copy = new Settings(this);
+        copy.outputFilePath = directory;
+        copy.scratchDirectory = null;
+        return copy.build();
+    }
+
+    /**
+     * @return The name of the file generated by TeX (Excluding file extensions).
+     */
+    String getOutputFileName(){
+        return this.outputFileName;
     }
 
     /**
      * @return A Path object representing the default file path of the JRE.
      */
-    private Path getDefaultOutputFilePath(){
+    private static Path getDefaultOutputFilePath(){
         return Paths.get("");
     }
 
@@ -58,7 +578,7 @@ public class TeXBuilder {
      * @param path The path to be checked.
      * @return A boolean indicating whether the name is a valid file name.
      */
-    private boolean validPath(String path){
+    private static boolean validPath(String path){
         return validFileName(path) && new File(path).isDirectory();
     }
 
@@ -69,7 +589,7 @@ public class TeXBuilder {
      * @param name The file name to be checked.
      * @return A boolean indicating whether the given name is a valid file name on the system.
      */
-    private boolean validFileName(String name){
+    private static boolean validFileName(String name){
         if(name == null) return false;
         return Paths.get(name) != null;
     }
@@ -89,96 +609,1053 @@ public class TeXBuilder {
     }
 
     /**
-     * This function converts the existing DVI output file generated by TeX to a PDF output file.
-     * @return A boolean indicating whether the conversion was successful.
+     * This function runs the given command as an external process and waits for it to finish. The process is only
+     * started once this TeXBuilder's ProcessLimiter grants a permit.
+     * @param cmds The command and its arguments.
+     * @param stage The stage the process is timed as.
+     * @param context The build the process belongs to.
+     * @return A boolean indicating whether the process ran and exited with a value of zero.
      */
-    private boolean convertToPDF(){
-        String[] cmds = {"dvipdfm", "-o", getFullFilePath(".pdf"), getFullFilePath(".dvi")};
+    private boolean exec(String[] cmds, BuildStage stage, BuildContext context){
+        return exec(cmds, null, stage, context);
+    }
+
+    /**
+     * This function runs the given command as an external process, pipes the given input to its standard input and
+     * waits for it to finish. The process is only started once this TeXBuilder's ProcessLimiter grants a permit. Its
+     * output is drained into the build's bounded output buffer, and it is killed if the build times out or is
+     * cancelled.
+     * @param cmds The command and its arguments.
+     * @param input Opens the input piped to TeX's terminal, followed by "\end". If null nothing is piped.
+     * @param stage The stage the process is timed as.
+     * @param context The build the process belongs to.
+     * @return A boolean indicating whether the process ran and exited with a value of zero.
+     */
+    private boolean exec(String[] cmds, TeXStream.ReaderSource input, BuildStage stage, BuildContext context){
+        if(!context.acquire(processLimiter)) return false;
+        long start = System.nanoTime();
         try {
-            Process DVIPDFM = Runtime.getRuntime().exec(cmds);
-            int exitVal = DVIPDFM.waitFor();
+            Process process;
+            try {
+                ProcessBuilder builder = new ProcessBuilder(cmds);
+                if(stage == BuildStage.TYPESET || stage == BuildStage.FORMAT) {
+                    builder.environment().putAll(context.getEngineSettings());
+                }
+                context.limitFiles(getLimitedFiles());
+                process = builder.start();
+            }catch(IOException e){
+                /* The process could not be started. */
+                context.record(new StageTiming(stage, -1, System.nanoTime() - start, -1));
+                return false;
+            }
+            int exitVal = context.await(process, input, stage, start);
             return exitVal == 0;
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            return false;
         }catch(Exception e){
             return false;
+        }finally{
+            processLimiter.release();
         }
     }
 
     /**
-     * This function deletes the existing DVI output file generated by TeX.
-     * @return A boolean indicting whether the deletion was successful.
+     * @return The files a process of this TeXBuilder writes, whose size a build's ResourceLimits limit.
      */
-    private boolean deleteDVIFile(){
-        String[] cmds = {"rm", getFullFilePath(".dvi")};
+    private List<Path> getLimitedFiles(){
+        List<Path> files = new ArrayList<>();
+        for(Artifact artifact : Artifact.values()) files.add(Paths.get(getFullFilePath(artifact.getExtension())));
+        return files;
+    }
+
+    /**
+     * This function returns the input that makes a TeX process waiting at the terminal prompt typeset the given source.
+     * @param source The source to be typeset.
+     * @return Opens the input to be piped to TeX.
+     */
+    private TeXStream.ReaderSource getTerminalInput(TeXSource source){
+        if(source instanceof TeXStream) return ((TeXStream) source).getSource();
+        if(source instanceof TeXFile) {
+            String input = "\\input " + ((TeXFile) source).getPath().toAbsolutePath();
+            return () -> new StringReader(input);
+        }
+        String input = ((TeXString) source).getSource();
+        return () -> new StringReader(input);
+    }
+
+    /**
+     * This function typesets the given source on a warm process of this TeXBuilder's pool. The warm process holds a
+     * permit of the pool's ProcessLimiter, so the job needs no permit of its own.
+     * @param source The source to be typeset.
+     * @param context The build the job belongs to.
+     * @return A boolean indicating whether TeX exited with a value of zero.
+     */
+    private boolean typesetOnPool(TeXSource source, BuildContext context){
+        TeXStream.ReaderSource input = getTerminalInput(source);
         try {
-            Process RM = Runtime.getRuntime().exec(cmds);
-            int exitVal = RM.waitFor();
-            return exitVal == 0;
-        }catch(Exception e){
+            Path directory = outputFilePath.toAbsolutePath();
+            return processPool.typeset(input, directory, outputFileName, context);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
             return false;
         }
     }
 
+    /**
+     * @return A boolean indicating whether this TeXBuilder's builds typeset on its TeXProcessPool.
+     */
+    private boolean usesProcessPool(){
+        return processPool != null && format == null && maxPasses == 1
+                && engine.getTypesetOutput(dvi, pdf) == Artifact.DVI
+                && processPool.getCommand().equals(engine.getCommand())
+                && processPool.getTypesetOptions().equals(engine.getTypesetOptions(Artifact.DVI));
+    }
+
+    /**
+     * This function converts the existing DVI output file generated by TeX to a PDF output file.
+     * @param context The build the conversion belongs to.
+     * @return A boolean indicating whether the conversion was successful.
+     */
+    private boolean convertToPDF(BuildContext context){
+        Path dviFile = Paths.get(getFullFilePath(".dvi"));
+        String[] cmds = engine.getConvertCommand(dviFile, Paths.get(getFullFilePath(".pdf")));
+        if(cmds == null) return false;
+        return exec(cmds, BuildStage.CONVERT, context);
+    }
+
+    /**
+     * This function deletes the existing DVI output file generated by TeX.
+     * @param context The build the deletion belongs to.
+     * @return A boolean indicting whether the deletion was successful.
+     */
+    private boolean deleteDVIFile(BuildContext context){
+        String[] cmds = {"rm", getFullFilePath(".dvi")};
+        return exec(cmds, BuildStage.CLEANUP, context);
+    }
+
     /**
      * This function deletes the existing log file generated by TeX.
+     * @param context The build the deletion belongs to.
      * @return A boolean indicting whether the deletion was successful.
      */
-    private boolean deleteLogFile(){
+    private boolean deleteLogFile(BuildContext context){
         String[] cmds = {"rm", getFullFilePath(".log")};
+        return exec(cmds, BuildStage.CLEANUP, context);
+    }
+
+    /**
+     * @return The artifacts kept by a build of this TeXBuilder.
+     */
+    private Set<Artifact> getOutputArtifacts(){
+        Set<Artifact> artifacts = EnumSet.noneOf(Artifact.class);
+        if(pdf) artifacts.add(Artifact.PDF);
+        if(dvi) artifacts.add(Artifact.DVI);
+        if(log) artifacts.add(Artifact.LOG);
+        return artifacts;
+    }
+
+    /**
+     * This class describes a build whose source has been typeset but not yet converted and cleaned up.
+     */
+    static final class PendingBuild {
+        final BuildContext context; /* The state of the build invocation. */
+        final String key; /* The cache key of the build, or null if it is not cached. */
+        final boolean restored; /* Were the artifacts restored from the cache (so there is nothing left to do)? */
+        final boolean typeset; /* Did TeX exit successfully? */
+        final Path scratch; /* The directory the build runs in, or null if it runs in the output file path. */
+
+        PendingBuild(BuildContext context, String key, boolean restored, boolean typeset){
+            this(context, key, restored, typeset, null);
+        }
+
+        PendingBuild(BuildContext context, String key, boolean restored, boolean typeset, Path scratch){
+            this.context = context;
+            this.key = key;
+            this.restored = restored;
+            this.typeset = typeset;
+            this.scratch = scratch;
+        }
+    }
+
+    /**
+     * @return A new BuildContext for a single build invocation, bounded by this TeXBuilder's timeout.
+     */
+    BuildContext newContext(){
+        return newContext(timeoutNanos);
+    }
+
+    /**
+     * @param timeoutNanos The time the build may take in nanoseconds, or zero for no timeout.
+     * @return A new BuildContext for a single build invocation, bounded by the given timeout.
+     */
+    private BuildContext newContext(long timeoutNanos){
+        return new BuildContext(timeoutNanos, outputLimit, outputFileName, listeners, failFast, limits);
+    }
+
+    /**
+     * This function determines whether the given source can be built at all.
+     * @param source The source to be checked.
+     * @return A boolean indicating whether the source is a supported, non-empty JavaTeX.core.TeXSource.
+     */
+    boolean isBuildable(TeXSource source){
+        if(source instanceof TeXString) return ((TeXString) source).getSource() != null;
+        if(source instanceof TeXFile) return ((TeXFile) source).getPath() != null;
+        if(source instanceof TeXStream) return ((TeXStream) source).getSource() != null;
+        return false;
+    }
+
+    /**
+     * This function returns the command that runs TeX on the given source.
+     * @param source The source to be typeset.
+     * @return The TeX command and its arguments.
+     */
+    private String[] getTeXCommand(TeXSource source){
+        List<String> cmds = new ArrayList<>();
+        cmds.add(engine.getCommand());
+        cmds.addAll(engine.getTypesetOptions(engine.getTypesetOutput(dvi, pdf)));
+        if(recorder) cmds.add("-recorder");
+        if(format != null) {
+            String formatFile = format.getFormatFile(engine.getCommand()).toString();
+            cmds.add("-fmt=" + formatFile.substring(0, formatFile.length() - ".fmt".length()));
+        }
+        cmds.add("-jobname=" + getFullFilePath(null));
+        cmds.add("-interaction=scrollmode");
+        if(source instanceof TeXFile) {
+            cmds.add(((TeXFile) source).getPath().toString());
+            cmds.add("\\end");
+        }else if(source instanceof TeXStream) {
+            /* The content is piped to TeX's terminal. */
+            cmds.add("\\relax");
+        }else {
+            cmds.add("\\relax");
+            cmds.add(((TeXString) source).getSource());
+            cmds.add("\\end");
+        }
+        return cmds.toArray(new String[0]);
+    }
+
+    /**
+     * This function dumps this TeXBuilder's preamble into its format file, unless it was dumped before. The format is
+     * dumped under a temporary name and then moved into place, so builds (in this or another JVM) never start from a
+     * partially written format.
+     * @param context The build the dump belongs to.
+     * @return A boolean indicating whether the format file exists.
+     */
+    private boolean dumpFormat(BuildContext context){
+        synchronized(format) {
+            if(format.isDumped(engine.getCommand())) return true;
+            Path directory = format.getDirectory();
+            String jobName = format.getName(engine.getCommand()) + "-" + ProcessHandle.current().pid() + "-" + System.nanoTime();
+            Path preambleFile = directory.resolve(jobName + ".tex");
+            try {
+                Files.write(preambleFile, format.getPreamble().getBytes(StandardCharsets.UTF_8));
+                String[] cmds = {engine.getCommand(), "-ini", "-jobname=" + jobName, "-output-directory=" + directory,
+                        "-interaction=scrollmode", "&" + engine.getBaseFormat(), "\\input", preambleFile.toString(),
+                        "\\dump"};
+                if(!exec(cmds, BuildStage.FORMAT, context)) return false;
+                Files.move(directory.resolve(jobName + ".fmt"), format.getFormatFile(engine.getCommand()),
+                        StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return true;
+            }catch(IOException e){
+                return false;
+            }finally{
+                for(String extension : new String[]{".tex", ".log", ".fmt"}) {
+                    directory.resolve(jobName + extension).toFile().delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * This function runs TeX on the given (buildable) source. If this TeXBuilder has a cache, it is consulted first.
+     * This is the first stage of a build, finish(PendingBuild) is the second.
+     * @param source The source to be typeset.
+     * @param context The build invocation.
+     * @return The PendingBuild describing the typeset source.
+     */
+    PendingBuild typeset(TeXSource source, BuildContext context){
+        if(validator != null) {
+            List<TeXDiagnostic> problems = validator.validate(source);
+            if(!problems.isEmpty()) {
+                context.reject(problems);
+                return new PendingBuild(context, null, false, false);
+            }
+        }
+        if(dvi && !engine.getCapabilities().contains(Artifact.DVI)) {
+            context.report("The engine " + engine.getName() + " can not write the dvi file the build keeps");
+            return new PendingBuild(context, null, false, false);
+        }
+        String key = cache != null ? BuildCache.key(source, format, engine, maxPasses, log, dvi, pdf) : null;
+        if(key != null) {
+            if(cache.restore(key, outputFilePath, outputFileName, getOutputArtifacts())) {
+                return new PendingBuild(context, key, true, true);
+            }
+            /* Unlink the previous outputs, they may be hard links into the cache (publishing replaces the links). */
+            if(scratchDirectory == null) {
+                for(Artifact artifact : getOutputArtifacts()) new File(getFullFilePath(artifact.getExtension())).delete();
+            }
+        }
+
+        Path scratch = null;
+        TeXBuilder job = this;
+        if(scratchDirectory != null) {
+            try {
+                scratch = Files.createTempDirectory(Files.createDirectories(scratchDirectory), "javatex-");
+            }catch(IOException e){
+                return new PendingBuild(context, key, false, false);
+            }
+            job = inDirectory(scratch);
+        }
+
+        boolean result;
+        if(format != null && !job.dumpFormat(context)) result = false;
+        else if(usesProcessPool()) result = job.typesetOnPool(source, context);
+        else result = job.typesetPasses(source, context);
+        return new PendingBuild(context, key, false, result, scratch);
+    }
+
+    /**
+     * This function runs TeX on the given source until its auxiliary files stop changing, at most maxPasses times.
+     * @param source The source to be typeset.
+     * @param context The build the passes belong to.
+     * @return A boolean indicating whether the last run of TeX exited with a value of zero.
+     */
+    private boolean typesetPasses(TeXSource source, BuildContext context){
+        String[] cmds = getTeXCommand(source);
+        TeXStream.ReaderSource input = source instanceof TeXStream ? ((TeXStream) source).getSource() : null;
+        String previous = maxPasses > 1 ? hashAuxiliaryFiles() : null;
+        for(int pass = 1; ; pass++) {
+            boolean result = exec(cmds, input, BuildStage.TYPESET, context);
+            if(!result || pass >= maxPasses || context.isStopped()) return result;
+            String current = hashAuxiliaryFiles();
+            if(current == null || current.equals(previous)) return true;
+            previous = current;
+        }
+    }
+
+    /**
+     * This function hashes the auxiliary files (see AUXILIARY_EXTENSIONS) of this TeXBuilder's output.
+     * @return The hash of the auxiliary files, or null if none exist (or they could not be read).
+     */
+    private String hashAuxiliaryFiles(){
         try {
-            Process RM = Runtime.getRuntime().exec(cmds);
-            int exitVal = RM.waitFor();
-            return exitVal == 0;
-        }catch(Exception e){
-            return false;
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            boolean found = false;
+            for(String extension : AUXILIARY_EXTENSIONS) {
+                Path file = Paths.get(getFullFilePath(extension));
+                digest.update(extension.getBytes(StandardCharsets.UTF_8));
+                if(!Files.isRegularFile(file)) continue;
+                digest.update(Files.readAllBytes(file));
+                found = true;
+            }
+            return found ? BuildCache.toHex(digest.digest()) : null;
+        }catch(IOException | NoSuchAlgorithmException e){
+            return null;
         }
     }
 
     /**
-     * This function builds the given JavaTeX.core.TeXString.
-     * @param source The JavaTeX.core.TeXString to be built.
-     * @return A boolean indicating whether the given JavaTeX.core.TeXString was built successfully.
+     * This function converts and cleans up a typeset source as this TeXBuilder is configured to, and stores successful
+     * builds in this TeXBuilder's cache. This is the second stage of a build, typeset(TeXSource) is the first. If the
+     * build timed out, was cancelled or failed fast the conversion is skipped, and unwanted files are removed without
+     * starting any process.
+     * @param pending The PendingBuild describing the typeset source.
+     * @return The BuildResult describing the build.
      */
-    public boolean build(TeXString source) {
-        if(source == null || source.getSource() == null) return false;
-        String[] cmds = {"tex", "-jobname=" + getFullFilePath(null), "-interaction=scrollmode", "\\relax", source.getSource(), "\\end"};
+    BuildResult finish(PendingBuild pending){
+        BuildContext context = pending.context;
+        Set<Artifact> artifacts = getOutputArtifacts();
+        if(pending.restored) {
+            for(Artifact artifact : artifacts) recordSize(artifact, context);
+            return context.finished(new BuildResult(BuildStatus.SUCCEEDED, outputFilePath, outputFileName, artifacts,
+                    true, context));
+        }
+
+        if(context.isRejected()) {
+            return context.finished(new BuildResult(BuildStatus.REJECTED, outputFilePath, outputFileName, artifacts,
+                    false, context));
+        }
+
+        /* The stages run where TeX wrote its files. */
+        TeXBuilder job = pending.scratch != null ? inDirectory(pending.scratch) : this;
+        boolean result = pending.typeset;
+        job.recordSize(Artifact.DVI, context);
+        job.recordSize(Artifact.LOG, context);
+        context.setPageCount(job.getPageCount(context));
+        if(context.isStopped()) {
+            if(pending.scratch != null) {
+                deleteDirectory(pending.scratch);
+            }else {
+                /* A build that exceeded its file size limit leaves no oversized file behind. */
+                if(limits.getMaxFileSize() > 0) {
+                    for(Path file : getLimitedFiles()) {
+                        if(file.toFile().length() > limits.getMaxFileSize()) file.toFile().delete();
+                    }
+                }
+                if(!log) new File(getFullFilePath(".log")).delete();
+                if(!dvi) new File(getFullFilePath(".dvi")).delete();
+            }
+            return context.finished(new BuildResult(context.getStatus(false), outputFilePath, outputFileName, artifacts,
+                    false, context));
+        }
+        /* An engine that typeset the pdf file directly wrote no dvi file, so there is nothing to convert or delete. */
+        boolean direct = engine.getTypesetOutput(dvi, pdf) == Artifact.PDF;
+        if(pdf) {
+            if(!direct && !job.convertToPDF(context)) result = false;
+            job.recordSize(Artifact.PDF, context);
+        }
+        if(pending.scratch != null) {
+            if(!publish(pending.scratch, context)) result = false;
+        }else {
+            if(!log) if(!deleteLogFile(context)) result = false;
+            if(!dvi && !direct) if(!deleteDVIFile(context)) result = false;
+            /* An engine that only writes pdf files wrote one the build does not keep. */
+            if(!pdf && direct) new File(getFullFilePath(".pdf")).delete();
+        }
+
+        if(result && pending.key != null) cache.store(pending.key, outputFilePath, outputFileName, artifacts);
+        return context.finished(new BuildResult(context.getStatus(result), outputFilePath, outputFileName, artifacts,
+                false, context));
+    }
+
+    /**
+     * This function publishes the artifacts this TeXBuilder keeps from the given scratch directory to the output file
+     * path, then deletes the scratch directory. The time it takes is recorded as the CLEANUP stage.
+     * @param scratch The scratch directory of the build.
+     * @param context The build the artifacts belong to.
+     * @return A boolean indicating whether every artifact was published.
+     */
+    private boolean publish(Path scratch, BuildContext context){
+        long start = System.nanoTime();
         boolean result = true;
+        for(Artifact artifact : getOutputArtifacts()) {
+            Path file = scratch.resolve(outputFileName + artifact.getExtension());
+            Path target = Paths.get(getFullFilePath(artifact.getExtension())).toAbsolutePath();
+            try {
+                if(Files.isRegularFile(file)) publish(file, target);
+                else result = false;
+            }catch(IOException e){
+                result = false;
+            }
+        }
+        deleteDirectory(scratch);
+        context.record(StageTiming.inJvm(BuildStage.CLEANUP, result, System.nanoTime() - start));
+        return result;
+    }
+
+    /**
+     * This function atomically replaces the given target with the given file. If they are on different filesystems
+     * the file is copied next to the target first.
+     * @param file The file to be published.
+     * @param target The path the file is published to.
+     * @throws IOException If the file could not be published.
+     */
+    static void publish(Path file, Path target) throws IOException {
         try {
-            Process TeXProc = Runtime.getRuntime().exec(cmds);
-            int exitVal = TeXProc.waitFor();
-            if(exitVal != 0) result = false;
-        }catch(Exception e){
-            result = false;
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+        }catch(AtomicMoveNotSupportedException e){
+            Path temporary = Files.createTempFile(target.getParent(), "." + target.getFileName(), ".tmp");
+            try {
+                Files.copy(file, temporary, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temporary, target, StandardCopyOption.ATOMIC_MOVE);
+            }finally{
+                Files.deleteIfExists(temporary);
+            }
         }
+    }
 
-        if(pdf) if(!convertToPDF()) result = false;
-        if(!log) if(!deleteLogFile()) result = false;
-        if(!dvi) if(!deleteDVIFile()) result = false;
+    /**
+     * This function deletes the given directory and everything in it, without starting any process.
+     * @param directory The directory to be deleted.
+     */
+    private static void deleteDirectory(Path directory){
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }catch(IOException e){
+            /* The directory only holds intermediate files, leave it behind. */
+        }
+    }
 
-        return result;
+    /**
+     * This function records the size of the given output file, if it exists, in the given build.
+     * @param artifact The output file to be measured.
+     * @param context The build the output file belongs to.
+     */
+    private void recordSize(Artifact artifact, BuildContext context){
+        File file = new File(getFullFilePath(artifact.getExtension()));
+        if(file.isFile()) context.recordSize(artifact, file.length());
+    }
+
+    /**
+     * This function determines how many pages TeX typeset from its output, falling back to its log file if the output
+     * was truncated.
+     * @param context The build whose output is parsed.
+     * @return The number of pages TeX typeset, or -1 if it is unknown.
+     */
+    private int getPageCount(BuildContext context){
+        int pages = parsePageCount(context.getOutput());
+        if(pages >= 0) return pages;
+        try {
+            Path logFile = Paths.get(getFullFilePath(".log"));
+            if(Files.isRegularFile(logFile)) pages = parsePageCount(new String(Files.readAllBytes(logFile), StandardCharsets.ISO_8859_1));
+        }catch(IOException e){
+            /* The page count remains unknown. */
+        }
+        return pages;
+    }
+
+    /**
+     * This function finds the number of pages in TeX's closing "Output written on X (N pages, M bytes)." message.
+     * @param output The output or log of TeX.
+     * @return The number of pages written, zero if TeX reported "No pages of output.", or -1 if neither was found.
+     */
+    static int parsePageCount(String output){
+        int start = output.lastIndexOf("Output written on ");
+        if(start < 0) return output.contains("No pages of output.") ? 0 : -1;
+        int end = output.indexOf(").", start);
+        if(end < 0) return -1;
+        /* TeX breaks long lines at any character, so join them before matching. */
+        String message = output.substring(start, end).replace("\r", "").replace("\n", "");
+        Matcher matcher = PAGES_WRITTEN.matcher(message);
+        return matcher.find() ? Integer.parseInt(matcher.group(1)) : -1;
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString.
+     * If this TeXBuilder isolates its invocations (see withJobIsolation), the artifacts are written under an output
+     * file name this function does not report; compile it instead, and locate them with BuildResult.getPath.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXString was built successfully.
+     */
+    public boolean build(TeXString source) {
+        return compile(source).isSuccessful();
     }
 
     /**
      * This function builds the given JavaTeX.core.TeXFile.
+     * If this TeXBuilder isolates its invocations (see withJobIsolation), the artifacts are written under an output
+     * file name this function does not report; compile it instead, and locate them with BuildResult.getPath.
      * @param source the JavaTeX.core.TeXFile to be built.
      * @return A boolean indicating Whether the given JavaTeX.core.TeXFile was built successfully.
      */
     public boolean build(TeXFile source){
-        if(source == null || source.getPath() == null) return false;
-        String TeXFile = source.getPath().toString();
-        String[] cmds = {"tex", "-jobname=" +  getFullFilePath(null), "-interaction=scrollmode", TeXFile,"\\end"};
-        boolean result = true;
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXStream, piping its content to TeX.
+     * If this TeXBuilder isolates its invocations (see withJobIsolation), the artifacts are written under an output
+     * file name this function does not report; compile it instead, and locate them with BuildResult.getPath.
+     * @param source The JavaTeX.core.TeXStream to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXStream was built successfully.
+     */
+    public boolean build(TeXStream source){
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXStream, piping its content to TeX, and describes the artifacts it
+     * produced. TeXStreams are never cached.
+     * @param source The JavaTeX.core.TeXStream to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXStream.
+     */
+    public BuildResult compile(TeXStream source){
+        return compile((TeXSource) source);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString and describes the artifacts it produced.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXString.
+     */
+    public BuildResult compile(TeXString source) {
+        return compile((TeXSource) source);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXFile and describes the artifacts it produced.
+     * @param source the JavaTeX.core.TeXFile to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXFile.
+     */
+    public BuildResult compile(TeXFile source){
+        return compile((TeXSource) source);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXString on this TeXBuilder's executor. Note that builds sharing a
+     * TeXBuilder also share its output files, so concurrent builds should use TeXBuilders with distinct output names
+     * (or job isolation, see withJobIsolation; an isolated build's artifacts are only reachable through the BuildResult
+     * of compileAsync).
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @return A CompletableFuture completed with whether the given JavaTeX.core.TeXString was built successfully.
+     */
+    public CompletableFuture<Boolean> buildAsync(TeXString source){
+        return async(source, BuildResult::isSuccessful);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXFile on this TeXBuilder's executor. Note that builds sharing a
+     * TeXBuilder also share its output files, so concurrent builds should use TeXBuilders with distinct output names
+     * (or job isolation, see withJobIsolation; an isolated build's artifacts are only reachable through the BuildResult
+     * of compileAsync).
+     * @param source The JavaTeX.core.TeXFile to be built.
+     * @return A CompletableFuture completed with whether the given JavaTeX.core.TeXFile was built successfully.
+     */
+    public CompletableFuture<Boolean> buildAsync(TeXFile source){
+        return async(source, BuildResult::isSuccessful);
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXSource.
+     * If this TeXBuilder isolates its invocations (see withJobIsolation), the artifacts are written under an output
+     * file name this function does not report; compile it instead, and locate them with BuildResult.getPath.
+     * @param source The JavaTeX.core.TeXSource to be built.
+     * @return A boolean indicating whether the given JavaTeX.core.TeXSource was built successfully.
+     */
+    public boolean build(TeXSource source){
+        return compile(source).isSuccessful();
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXSource and describes the artifacts it produced.
+     * @param source The JavaTeX.core.TeXSource to be built.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXSource.
+     */
+    public BuildResult compile(TeXSource source){
+        if(isolated) return forInvocation().compile(source);
+        if(scheduler == null) return compileUnscheduled(source);
+        CompletableFuture<BuildResult> result = scheduler.submit(this, source, priority);
         try {
-            Process TeXProc = Runtime.getRuntime().exec(cmds);
-            int exitVal = TeXProc.waitFor();
-            if(exitVal != 0) result = false;
-        }catch(Exception e){
-            result = false;
+            return result.get();
+        }catch(InterruptedException e){
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            return notBuilt(BuildStatus.CANCELLED);
+        }catch(ExecutionException e){
+            return notBuilt(BuildStatus.FAILED);
         }
+    }
 
-        if(pdf) if(!convertToPDF()) result = false;
-        if(!log) if(!deleteLogFile()) result = false;
-        if(!dvi) if(!deleteDVIFile()) result = false;
+    /**
+     * This function builds the given source at once, bypassing this TeXBuilder's scheduler.
+     * @param source The source to be built.
+     * @return The BuildResult describing the build of the given source.
+     */
+    BuildResult compileUnscheduled(TeXSource source){
+        String key = getCoalescingKey(source);
+        if(key == null) return compile(source, newContext());
 
-        return result;
+        CompletableFuture<BuildResult> result = coalesce(source, key);
+        try {
+            return result.get();
+        }catch(InterruptedException e){
+            result.cancel(false);
+            Thread.currentThread().interrupt();
+            BuildContext context = newContext();
+            context.cancel();
+            return failure(context);
+        }catch(ExecutionException e){
+            return failure(newContext());
+        }
+    }
+
+    /**
+     * This function joins the running build of the given source on this TeXBuilder's coalescer, or starts one. The
+     * build has no deadline, since callers with other timeouts may join it; this caller stops waiting for it once this
+     * TeXBuilder's timeout has passed.
+     * @param source The source to be built.
+     * @param key The coalescing key of the source.
+     * @return A CompletableFuture of this caller, completed with the BuildResult of the build, or with a BuildResult
+     * reporting BuildStatus.TIMED_OUT if the caller's timeout passed first.
+     */
+    private CompletableFuture<BuildResult> coalesce(TeXSource source, String key){
+        CompletableFuture<BuildResult> waiter = coalescer.join(key, () -> newContext(0), context -> compile(source,
+                context), executor);
+        if(timeoutNanos <= 0) return waiter;
+        CompletableFuture<BuildResult> caller = new CompletableFuture<>();
+        waiter.whenComplete((result, error) -> {
+            if(error != null) caller.completeExceptionally(error);
+            else caller.complete(result);
+        });
+        CompletableFuture.delayedExecutor(timeoutNanos, TimeUnit.NANOSECONDS).execute(() -> {
+            if(caller.isDone()) return;
+            BuildContext context = newContext();
+            context.timeOut();
+            /* Stop waiting, the build goes on for the other callers. */
+            if(caller.complete(failure(context))) waiter.cancel(false);
+        });
+        caller.whenComplete((result, error) -> {
+            if(caller.isCancelled()) waiter.cancel(false);
+        });
+        return caller;
+    }
+
+    /**
+     * This function identifies the build of the given source, so that identical concurrent builds can be coalesced.
+     * @param source The source to be built.
+     * @return The key identifying the source, options and output files of the build, or null if it is not coalesced.
+     */
+    private String getCoalescingKey(TeXSource source){
+        if(coalescer == null || !isBuildable(source)) return null;
+        String content = BuildCache.key(source, format, engine, maxPasses, log, dvi, pdf);
+        if(content == null) return null;
+        return content + ":" + outputFilePath.toAbsolutePath().resolve(outputFileName) + ":" + failFast + ":" + (validator != null) + ":" + limits;
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXSource as part of the given build invocation.
+     * @param source The JavaTeX.core.TeXSource to be built.
+     * @param context The build invocation.
+     * @return The BuildResult describing the build of the given JavaTeX.core.TeXSource.
+     */
+    private BuildResult compile(TeXSource source, BuildContext context){
+        if(!isBuildable(source)) return failure(context);
+        return finish(typeset(source, context));
+    }
+
+    /**
+     * This function builds the given JavaTeX.core.TeXSource on this TeXBuilder's executor (see buildAsync).
+     * @param source The JavaTeX.core.TeXSource to be built.
+     * @return A CompletableFuture completed with the BuildResult describing the build.
+     */
+    public CompletableFuture<BuildResult> compileAsync(TeXSource source){
+        return async(source, result -> result);
+    }
+
+    /**
+     * This function builds the given source on this TeXBuilder's executor. Cancelling the returned CompletableFuture
+     * cancels the build, killing any process it is running.
+     * @param source The source to be built.
+     * @param mapper Maps the BuildResult to the value the CompletableFuture is completed with.
+     * @param <T> The type of the value the CompletableFuture is completed with.
+     * @return The CompletableFuture.
+     */
+    private <T> CompletableFuture<T> async(TeXSource source, Function<BuildResult, T> mapper){
+        if(isolated) return forInvocation().async(source, mapper);
+        if(scheduler != null) {
+            CompletableFuture<BuildResult> queued = scheduler.submit(this, source, priority);
+            CompletableFuture<T> future = queued.thenApply(mapper);
+            future.whenComplete((result, error) -> {
+                if(future.isCancelled()) queued.cancel(false);
+            });
+            return future;
+        }
+        String key = getCoalescingKey(source);
+        if(key != null) {
+            CompletableFuture<BuildResult> waiter = coalesce(source, key);
+            CompletableFuture<T> future = waiter.thenApply(mapper);
+            future.whenComplete((result, error) -> {
+                if(future.isCancelled()) waiter.cancel(false);
+            });
+            return future;
+        }
+        BuildContext context = newContext();
+        CompletableFuture<T> future = CompletableFuture.supplyAsync(() -> mapper.apply(compile(source, context)), executor);
+        future.whenComplete((result, error) -> {
+            if(future.isCancelled()) context.cancel();
+        });
+        return future;
+    }
+
+    /**
+     * This function describes a build that never started, e.g., because a BuildScheduler refused it.
+     * @param status How the build ended.
+     * @return The BuildResult of the build, which produced no artifacts.
+     */
+    BuildResult notBuilt(BuildStatus status){
+        BuildContext context = newContext();
+        return context.finished(new BuildResult(status, outputFilePath, outputFileName, Collections.emptySet(), false,
+                context));
+    }
+
+    /**
+     * @param context The build invocation.
+     * @return A BuildResult describing a build that could not be started, or that the caller stopped waiting for.
+     */
+    private BuildResult failure(BuildContext context){
+        return context.finished(new BuildResult(context.getStatus(false), outputFilePath, outputFileName,
+                getOutputArtifacts(), false, context));
+    }
+
+    /**
+     * This function builds every given JavaTeX.core.TeXSource using one worker per process permit of this
+     * TeXBuilder's ProcessLimiter.
+     * @param sources The JavaTeX.core.TeXSources to be built.
+     * @return The BatchResult describing the build of each source.
+     * @see #buildAll(Collection, int)
+     */
+    public BatchResult buildAll(Collection<? extends TeXSource> sources){
+        return buildAll(sources, processLimiter.getMaxProcesses());
+    }
+
+    /**
+     * This function builds every given JavaTeX.core.TeXSource on a pool of the given number of workers. So that the
+     * builds do not overwrite each other, the source at position i is written to the output file name of this
+     * TeXBuilder followed by "-i" (e.g., "output-0.pdf", "output-1.pdf", ...).
+     * @param sources The JavaTeX.core.TeXSources to be built.
+     * @param workers The number of sources that may be built at once.
+     * @return The BatchResult describing the build of each source, in the order the sources were given.
+     */
+    public BatchResult buildAll(Collection<? extends TeXSource> sources, int workers){
+        if(isolated) return forInvocation().buildAll(sources, workers);
+        List<TeXSource> jobs = sources == null ? new ArrayList<>() : new ArrayList<>(sources);
+        int size = jobs.size();
+        workers = Math.max(1, Math.min(workers, size));
+        Boolean[] results = new Boolean[size];
+        String[] names = new String[size];
+        long[] itemNanos = new long[size];
+        Arrays.fill(results, false);
+
+        /* Create one task per source, each writing to its own output file name. */
+        List<Callable<Boolean>> tasks = new ArrayList<>(size);
+        for(int i = 0; i < size; i++){
+            int index = i;
+            names[index] = this.outputFileName + "-" + index;
+            TeXBuilder builder = withOutputFileName(names[index]);
+            tasks.add(() -> {
+                long start = System.nanoTime();
+                boolean result = builder.build(jobs.get(index));
+                itemNanos[index] = System.nanoTime() - start;
+                return result;
+            });
+        }
+
+        long start = System.nanoTime();
+        if(size > 0) {
+            ExecutorService pool = Executors.newFixedThreadPool(workers, BuildExecutors.daemonThreadFactory("javatex-batch"));
+            try {
+                List<Future<Boolean>> futures = pool.invokeAll(tasks);
+                for(int i = 0; i < size; i++) {
+                    try {
+                        results[i] = futures.get(i).get();
+                    }catch(ExecutionException e){
+                        results[i] = false;
+                    }
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }finally{
+                pool.shutdownNow();
+            }
+        }
+        long elapsedNanos = System.nanoTime() - start;
+
+        return new BatchResult(Arrays.asList(results), Arrays.asList(names), itemNanos, elapsedNanos, workers);
+    }
+
+    /**
+     * This function builds a large JavaTeX.core.TeXString in parallel. The source is split before occurrences of the
+     * given break point (e.g., "\eject" or a chapter macro) into at most the given number of chunks of similar size.
+     * Each chunk is built as its own source on this TeXBuilder's executor, and their pdf files are merged in order (see
+     * PdfMerger) into this TeXBuilder's pdf file; if the log file is kept it holds the chunks' logs in order.
+     *
+     * The text before the first break point is the source's preamble, which every chunk starts with, so it should
+     * only hold definitions (e.g., \def's, \font's and \input's of macros); a preamble that is expensive to load
+     * belongs in a TeXFormat (see withFormat). Chunks are typeset independently: page numbers restart in every chunk
+     * unless it sets \pageno, and the line numbers of diagnostics refer to the chunk. A dvi file is never kept.
+     * @param source The JavaTeX.core.TeXString to be built.
+     * @param breakPoint The text the source may be split before.
+     * @param chunks The largest number of chunks built, e.g., the number of available processors.
+     * @return The BuildResult describing the merged build. A null source or break point is not built, and reported
+     * as BuildStatus.FAILED.
+     */
+    public BuildResult compileChunked(TeXString source, String breakPoint, int chunks){
+        if(source == null) return notBuilt(BuildStatus.FAILED);
+        return compileChunked(source.getSource(), breakPoint, chunks);
+    }
+
+    /**
+     * This function builds a large JavaTeX.core.TeXFile in parallel (see compileChunked(TeXString, String, int)). The
+     * file is read as UTF-8 and its chunks are built as strings, so files it inputs are found relative to the JRE
+     * working directory.
+     * @param source The JavaTeX.core.TeXFile to be built.
+     * @param breakPoint The text the source may be split before.
+     * @param chunks The largest number of chunks built, e.g., the number of available processors.
+     * @return The BuildResult describing the merged build. A null source or break point is not built, and reported
+     * as BuildStatus.FAILED.
+     */
+    public BuildResult compileChunked(TeXFile source, String breakPoint, int chunks){
+        if(source == null || source.getPath() == null) return notBuilt(BuildStatus.FAILED);
+        try {
+            return compileChunked(new String(Files.readAllBytes(source.getPath()), StandardCharsets.UTF_8), breakPoint,
+                    chunks);
+        }catch(IOException e){
+            return notBuilt(BuildStatus.FAILED);
+        }
+    }
+
+    /**
+     * This function builds the given text in chunks and merges their pdf files.
+     * @param text The text to be built.
+     * @param breakPoint The text the source may be split before.
+     * @param chunks The largest number of chunks built.
+     * @return The BuildResult describing the merged build.
+     */
+    private BuildResult compileChunked(String text, String breakPoint, int chunks){
+        if(text == null || breakPoint == null) return notBuilt(BuildStatus.FAILED);
+        if(isolated) return forInvocation().compileChunked(text, breakPoint, chunks);
+        BuildContext context = newContext();
+        /* Every chunk starts with the preamble, the text before the first break point. */
+        List<Integer> breaks = findBreakPoints(text, breakPoint);
+        String preamble = breaks.isEmpty() ? "" : text.substring(0, breaks.get(0));
+        List<String> parts = splitChunks(text.substring(preamble.length()), breakPoint, chunks);
+        List<CompletableFuture<BuildResult>> futures = new ArrayList<>(parts.size());
+        for(int i = 0; i < parts.size(); i++) {
+            TeXBuilder chunk = withOutputFileName(outputFileName + "-chunk-" + i).withArtifacts(log, false, true);
+            futures.add(chunk.compileAsync(toSource(preamble + parts.get(i))));
+        }
+        List<BuildResult> results = new ArrayList<>(parts.size());
+        try {
+            for(CompletableFuture<BuildResult> future : futures) results.add(future.get());
+        }catch(InterruptedException | ExecutionException e){
+            for(CompletableFuture<BuildResult> future : futures) future.cancel(true);
+            if(e instanceof InterruptedException) Thread.currentThread().interrupt();
+            return notBuilt(e instanceof InterruptedException ? BuildStatus.CANCELLED : BuildStatus.FAILED);
+        }
+
+        BuildStatus status = BuildStatus.SUCCEEDED;
+        boolean cached = true;
+        StringBuilder output = new StringBuilder();
+        Map<BuildStage, StageTiming> timings = new EnumMap<>(BuildStage.class);
+        List<TeXDiagnostic> diagnostics = new ArrayList<>();
+        List<Path> pdfFiles = new ArrayList<>(results.size());
+        List<Path> logFiles = new ArrayList<>(results.size());
+        for(BuildResult result : results) {
+            if(status == BuildStatus.SUCCEEDED && !result.isSuccessful()) status = result.getStatus();
+            cached &= result.isCached();
+            output.append(result.getOutput());
+            for(StageTiming timing : result.getStageTimings()) {
+                timings.merge(timing.getStage(), timing, StageTiming::plus);
+            }
+            diagnostics.addAll(result.getDiagnostics());
+            pdfFiles.add(result.getPath(Artifact.PDF));
+            logFiles.add(result.getPath(Artifact.LOG));
+        }
+
+        Set<Artifact> artifacts = EnumSet.noneOf(Artifact.class);
+        Map<Artifact, Long> sizes = new EnumMap<>(Artifact.class);
+        int pageCount = -1;
+        long start = System.nanoTime();
+        try {
+            if(status == BuildStatus.SUCCEEDED) {
+                Path target = outputFilePath.resolve(outputFileName + Artifact.PDF.getExtension());
+                pageCount = writeAtomically(target, file -> PdfMerger.merge(pdfFiles, file));
+                artifacts.add(Artifact.PDF);
+                sizes.put(Artifact.PDF, Files.size(target));
+                if(log) {
+                    Path logFile = outputFilePath.resolve(outputFileName + Artifact.LOG.getExtension());
+                    writeAtomically(logFile, file -> {
+                        for(Path chunkLog : logFiles) {
+                            Files.write(file, Files.readAllBytes(chunkLog), StandardOpenOption.APPEND);
+                        }
+                        return 0;
+                    });
+                    artifacts.add(Artifact.LOG);
+                    sizes.put(Artifact.LOG, Files.size(logFile));
+                }
+            }
+        }catch(IOException e){
+            status = BuildStatus.FAILED;
+            output.append(e.getMessage()).append('\n');
+        }finally{
+            for(BuildResult result : results) result.deleteArtifacts();
+        }
+        timings.put(BuildStage.MERGE, StageTiming.inJvm(BuildStage.MERGE, status == BuildStatus.SUCCEEDED,
+                System.nanoTime() - start));
+
+        return context.finished(new BuildResult(status, outputFilePath, outputFileName, artifacts, cached,
+                output.toString(), new ArrayList<>(timings.values()), sizes, pageCount, context.getElapsedNanos(),
+                diagnostics));
+    }
+
+    /**
+     * This interface writes a file that is then published (see writeAtomically).
+     */
+    @FunctionalInterface
+    private interface ArtifactWriter {
+        /**
+         * @param file The empty file to be written.
+         * @return A value describing what was written.
+         * @throws IOException If the file could not be written.
+         */
+        int write(Path file) throws IOException;
+    }
+
+    /**
+     * This function writes a file next to the given target and then atomically replaces the target with it.
+     * @param target The path the file is published to.
+     * @param writer Writes the file.
+     * @return The value returned by the writer.
+     * @throws IOException If the file could not be written or published.
+     */
+    private static int writeAtomically(Path target, ArtifactWriter writer) throws IOException {
+        Path temporary = Files.createTempFile(target.toAbsolutePath().getParent(), "." + target.getFileName(), ".tmp");
+        try {
+            int value = writer.write(temporary);
+            publish(temporary, target);
+            return value;
+        }finally{
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * This function splits the given text before occurrences of the given break point into at most the given number of
+     * chunks of similar length (see findBreakPoints).
+     * @param text The text to be split.
+     * @param breakPoint The text the source may be split before.
+     * @param chunks The largest number of chunks.
+     * @return The chunks, in order; the text itself if it has no break points.
+     */
+    static List<String> splitChunks(String text, String breakPoint, int chunks){
+        List<Integer> breaks = findBreakPoints(text, breakPoint);
+
+        /* Split at the break point nearest to each of the chunks' ideal boundaries. */
+        List<String> parts = new ArrayList<>();
+        int start = 0;
+        int next = 0;
+        for(int chunk = 1; chunk < chunks && next < breaks.size(); chunk++) {
+            long boundary = (long) text.length() * chunk / chunks;
+            int best = next;
+            while(best + 1 < breaks.size() && breaks.get(best + 1) <= boundary) best++;
+            if(best + 1 < breaks.size() && boundary - breaks.get(best) > breaks.get(best + 1) - boundary) best++;
+            if(breaks.get(best) <= start) continue;
+            parts.add(text.substring(start, breaks.get(best)));
+            start = breaks.get(best);
+            next = best + 1;
+        }
+        parts.add(text.substring(start));
+        return parts;
+    }
+
+    /**
+     * This function finds the occurrences of the given break point the given text may be split before. A break point
+     * ending in a letter (e.g., a control word) only matches where it is not followed by another letter, and the start
+     * of the text is never a break point.
+     * @param text The text to be split.
+     * @param breakPoint The text the source may be split before.
+     * @return The indices of the break points, in order.
+     */
+    static List<Integer> findBreakPoints(String text, String breakPoint){
+        List<Integer> breaks = new ArrayList<>();
+        boolean word = !breakPoint.isEmpty() && Character.isLetter(breakPoint.charAt(breakPoint.length() - 1));
+        int index = breakPoint.isEmpty() ? -1 : text.indexOf(breakPoint, 1);
+        for(; index >= 0; index = text.indexOf(breakPoint, index + 1)) {
+            int end = index + breakPoint.length();
+            if(!word || end >= text.length() || !Character.isLetter(text.charAt(end))) breaks.add(index);
+        }
+        return breaks;
+    }
+
+    /**
+     * @param text TeX source.
+     * @return The source as a TeXString, or as a TeXStream if it is too large to be passed to TeX as an argument.
+     */
+    static TeXSource toSource(String text){
+        /* A character is at most three bytes in UTF-8. */
+        boolean small = text.length() <= MAX_ARGUMENT_LENGTH / 3
+                || text.getBytes(StandardCharsets.UTF_8).length <= MAX_ARGUMENT_LENGTH;
+        return small ? new TeXString(text) : TeXStream.fromCharSequence(() -> text);
     }
 }
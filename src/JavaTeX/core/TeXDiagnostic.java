@@ -0,0 +1,57 @@
+package JavaTeX.core;
+
+/**
+ * This class describes an error TeX reported while typesetting, e.g.,
+ *
+ *     ! Undefined control sequence.
+ *     l.12 Some text \invCMD
+ *
+ * is reported with the message "Undefined control sequence.", line number 12 and context "Some text \invCMD".
+ */
+public class TeXDiagnostic {
+
+    private final String message; /* The error message, without the leading "! ". */
+    private final int lineNumber; /* The line of the source the error occurred on, or -1 if unknown. */
+    private final String context; /* The source TeX had read when the error occurred. */
+
+    /**
+     * Customized Constructor
+     * @param message The error message, without the leading "! ".
+     * @param lineNumber The line of the source the error occurred on, or -1 if unknown.
+     * @param context The source TeX had read when the error occurred.
+     */
+    TeXDiagnostic(String message, int lineNumber, String context){
+        this.message = message;
+        this.lineNumber = lineNumber;
+        this.context = context;
+    }
+
+    /**
+     * @return The error message, without the leading "! " (e.g., "Undefined control sequence.").
+     */
+    public String getMessage(){
+        return this.message;
+    }
+
+    /**
+     * @return The line of the source the error occurred on, or -1 if unknown (e.g., the source was typed at TeX's
+     * terminal, as TeXStrings and TeXStreams are).
+     */
+    public int getLineNumber(){
+        return this.lineNumber;
+    }
+
+    /**
+     * @return The source TeX had read up to the error, as TeX showed it (the error is at its end). Empty if TeX showed
+     * no context.
+     */
+    public String getContext(){
+        return this.context;
+    }
+
+    @Override
+    public String toString(){
+        return "! " + this.message + (this.lineNumber >= 0 ? " (line " + this.lineNumber + ")" : "")
+                + (this.context.isEmpty() ? "" : ": " + this.context);
+    }
+}
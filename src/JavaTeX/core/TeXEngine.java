@@ -0,0 +1,125 @@
+package JavaTeX.core;
+
+import java.nio.file.Path;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * This interface describes a TeX engine a TeXBuilder runs (see TeXBuilder.withEngine): the executable that typesets
+ * sources, the output files it can write directly, and how a dvi file is converted to a pdf file. A build that keeps
+ * a pdf file but no dvi file is typeset straight to pdf by an engine capable of it, so no dvi file is written and the
+ * CONVERT stage is skipped entirely.
+ *
+ * Engines for tex, pdftex, XeTeX and LuaTeX are provided; other engines implement this interface.
+ */
+public interface TeXEngine {
+
+    /* Knuth's tex, followed by dvipdfm. This is the default engine. */
+    TeXEngine TEX_DVIPDFM = texDvipdfm(TeXBuilder.DEFAULT_TEX_COMMAND, TeXBuilder.DEFAULT_DVIPDFM_COMMAND);
+
+    /* pdftex, which writes pdf files directly (and dvi files converted by dvipdfm when one is kept). */
+    TeXEngine PDFTEX = pdftex("pdftex", TeXBuilder.DEFAULT_DVIPDFM_COMMAND);
+
+    /* XeTeX, which only writes pdf files, so builds keeping a dvi file fail. */
+    TeXEngine XETEX = xetex("xetex");
+
+    /* LuaTeX, which writes pdf files directly (and dvi files converted by dvipdfm when one is kept). */
+    TeXEngine LUATEX = luatex("luatex", TeXBuilder.DEFAULT_DVIPDFM_COMMAND);
+
+    /**
+     * @return The name identifying the engine in cache keys. Engines writing different output must have different
+     * names.
+     */
+    String getName();
+
+    /**
+     * @return The executable that typesets sources.
+     */
+    String getCommand();
+
+    /**
+     * @return The output files (Artifact.DVI and/or Artifact.PDF) the executable can write directly.
+     */
+    Set<Artifact> getCapabilities();
+
+    /**
+     * @return The format sources are typeset with when a TeXBuilder has no preamble of its own (e.g., "plain").
+     */
+    String getBaseFormat();
+
+    /**
+     * This function returns the options that make the executable write the given output file.
+     * @param output The output file to be written, one of the engine's capabilities.
+     * @return The options, passed before the source.
+     */
+    List<String> getTypesetOptions(Artifact output);
+
+    /**
+     * This function returns the command converting the given dvi file to the given pdf file.
+     * @param dviFile The dvi file written by the executable.
+     * @param pdfFile The pdf file to be written.
+     * @return The command and its arguments, or null if the engine can not convert dvi files.
+     */
+    String[] getConvertCommand(Path dviFile, Path pdfFile);
+
+    /**
+     * This function determines which output file the executable writes for a build keeping the given files.
+     * @param dvi Does the build keep the dvi file?
+     * @param pdf Does the build generate a pdf file?
+     * @return Artifact.PDF if the pdf file is written directly, otherwise Artifact.DVI.
+     */
+    default Artifact getTypesetOutput(boolean dvi, boolean pdf){
+        Set<Artifact> capabilities = getCapabilities();
+        if(!capabilities.contains(Artifact.DVI)) return Artifact.PDF;
+        return pdf && !dvi && capabilities.contains(Artifact.PDF) ? Artifact.PDF : Artifact.DVI;
+    }
+
+    /**
+     * This function returns an engine that typesets dvi files with the given tex executable and converts them with
+     * the given dvipdfm executable.
+     * @param texCommand The executable that typesets sources.
+     * @param dvipdfmCommand The executable that converts dvi files to pdf files.
+     * @return The engine.
+     */
+    static TeXEngine texDvipdfm(String texCommand, String dvipdfmCommand){
+        return new StandardTeXEngine(texCommand + "+" + dvipdfmCommand, texCommand, dvipdfmCommand, "plain",
+                EnumSet.of(Artifact.DVI));
+    }
+
+    /**
+     * This function returns an engine that typesets pdf files directly with the given pdftex executable. A build that
+     * also keeps the dvi file is typeset to dvi and converted with the given dvipdfm executable.
+     * @param pdftexCommand The executable that typesets sources.
+     * @param dvipdfmCommand The executable that converts dvi files to pdf files, or null if dvi files are never
+     *                       converted.
+     * @return The engine.
+     */
+    static TeXEngine pdftex(String pdftexCommand, String dvipdfmCommand){
+        return new StandardTeXEngine(pdftexCommand + "+" + dvipdfmCommand, pdftexCommand, dvipdfmCommand, "pdftex",
+                EnumSet.of(Artifact.DVI, Artifact.PDF));
+    }
+
+    /**
+     * This function returns an engine that typesets pdf files with the given xetex executable. XeTeX writes extended
+     * dvi (.xdv) files rather than dvi files, so a build that keeps the dvi file fails.
+     * @param xetexCommand The executable that typesets sources.
+     * @return The engine.
+     */
+    static TeXEngine xetex(String xetexCommand){
+        return new StandardTeXEngine(xetexCommand, xetexCommand, null, "xetex", EnumSet.of(Artifact.PDF));
+    }
+
+    /**
+     * This function returns an engine that typesets pdf files directly with the given luatex executable. A build that
+     * also keeps the dvi file is typeset to dvi and converted with the given dvipdfm executable.
+     * @param luatexCommand The executable that typesets sources.
+     * @param dvipdfmCommand The executable that converts dvi files to pdf files, or null if dvi files are never
+     *                       converted.
+     * @return The engine.
+     */
+    static TeXEngine luatex(String luatexCommand, String dvipdfmCommand){
+        return new StandardTeXEngine(luatexCommand + "+" + dvipdfmCommand, luatexCommand, dvipdfmCommand, "luatex",
+                EnumSet.of(Artifact.DVI, Artifact.PDF));
+    }
+}
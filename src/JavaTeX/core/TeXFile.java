@@ -5,7 +5,7 @@ import java.nio.file.Path;
 /**
  * This class represents a TeX source file.
  */
-public class TeXFile{
+public class TeXFile implements TeXSource {
     private Path path;
 
     public TeXFile(Path path){
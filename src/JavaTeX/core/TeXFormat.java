@@ -0,0 +1,98 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * This class describes a preamble (macro definitions shared by many documents) that TeX dumps once into a format file.
+ * A TeXBuilder using a TeXFormat (see TeXBuilder.withFormat) starts TeX from the dumped format, so only the body of
+ * each document is typeset. Format files are kept in the given directory, named by the hash of the preamble and the TeX
+ * executable that dumped them, so they are shared by every TeXFormat (and JVM) using the same preamble and directory.
+ */
+public class TeXFormat {
+
+    private final String preamble; /* The macro definitions dumped into the format. */
+    private final Path directory; /* The directory holding the format files. */
+    private final String hash; /* The SHA-256 hash of the preamble. */
+
+    /**
+     * Customized Constructor
+     * @param preamble The macro definitions dumped into the format, on top of plain TeX.
+     * @param directory The directory holding the format files. It is created if it does not exist.
+     * @throws IOException If the directory could not be created.
+     */
+    public TeXFormat(String preamble, Path directory) throws IOException {
+        if(preamble == null) throw new IllegalArgumentException("preamble must not be null");
+        this.preamble = preamble;
+        this.directory = Files.createDirectories(directory).toAbsolutePath();
+        this.hash = hash(preamble);
+    }
+
+    /**
+     * @return The macro definitions dumped into the format.
+     */
+    public String getPreamble(){
+        return this.preamble;
+    }
+
+    /**
+     * @return The directory holding the format files.
+     */
+    public Path getDirectory(){
+        return this.directory;
+    }
+
+    /**
+     * @return The SHA-256 hash of the preamble, as a lower case hexadecimal string.
+     */
+    public String getHash(){
+        return this.hash;
+    }
+
+    /**
+     * @param texCommand The TeX executable.
+     * @return The name of the format file the given executable dumps the preamble to (Excluding the file extension).
+     */
+    String getName(String texCommand){
+        return "javatex-" + hash(texCommand + "\u0000" + hash).substring(0, 32);
+    }
+
+    /**
+     * @param texCommand The TeX executable.
+     * @return The path of the format file the given executable dumps the preamble to.
+     */
+    Path getFormatFile(String texCommand){
+        return directory.resolve(getName(texCommand) + ".fmt");
+    }
+
+    /**
+     * @param texCommand The TeX executable.
+     * @return A boolean indicating whether the given executable already dumped the preamble.
+     */
+    public boolean isDumped(String texCommand){
+        return Files.isRegularFile(getFormatFile(texCommand));
+    }
+
+    /**
+     * This function computes the SHA-256 hash of the given text.
+     * @param text The text to be hashed.
+     * @return The hash as a lower case hexadecimal string.
+     */
+    private static String hash(String text){
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return BuildCache.toHex(digest.digest(text.getBytes(StandardCharsets.UTF_8)));
+        }catch(NoSuchAlgorithmException e){
+            throw new IllegalStateException("SHA-256 is not supported", e);
+        }
+    }
+
+    @Override
+    public String toString(){
+        return "TeXFormat[hash=" + this.hash + ", directory=" + this.directory + "]";
+    }
+}
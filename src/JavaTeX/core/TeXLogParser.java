@@ -0,0 +1,111 @@
+package JavaTeX.core;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * This class incrementally parses the terminal output of TeX, as it is written, into TeXDiagnostics. An error starts
+ * with a line beginning "! " and is complete once TeX shows where it occurred: a line "l.N text" for a line of a file,
+ * or "<*> text" for input typed at the terminal. Every complete diagnostic is passed to the given consumer as soon as
+ * it is parsed, so a build can react to the first error while TeX is still running.
+ */
+final class TeXLogParser {
+
+    /* Lines longer than this are truncated; TeX itself breaks lines at 79 characters. */
+    private static final int MAX_LINE_LENGTH = 4096;
+
+    private final Consumer<TeXDiagnostic> consumer; /* Receives every diagnostic once it is complete. */
+    private final List<TeXDiagnostic> diagnostics = new ArrayList<>(); /* Guarded by this. */
+    private byte[] line = new byte[128]; /* The bytes of the current line. */
+    private int length; /* The number of bytes of the current line. */
+    private String message; /* The message of the diagnostic being parsed, or null if none is. */
+
+    /**
+     * Customized Constructor
+     * @param consumer Receives every diagnostic once it is complete.
+     */
+    TeXLogParser(Consumer<TeXDiagnostic> consumer){
+        this.consumer = consumer;
+    }
+
+    /**
+     * This function parses the given output of TeX. Output may be split anywhere, including within a line.
+     * @param bytes The buffer holding the output.
+     * @param offset The offset of the output in the buffer.
+     * @param count The number of bytes of output.
+     */
+    synchronized void write(byte[] bytes, int offset, int count){
+        for(int i = offset; i < offset + count; i++) {
+            byte b = bytes[i];
+            if(b == '\n') {
+                parseLine(new String(line, 0, length, StandardCharsets.UTF_8));
+                length = 0;
+            }else if(b != '\r' && length < MAX_LINE_LENGTH) {
+                if(length == line.length) line = Arrays.copyOf(line, Math.min(line.length * 2, MAX_LINE_LENGTH));
+                line[length++] = b;
+            }
+        }
+    }
+
+    /**
+     * This function completes parsing once TeX's output has ended. An error whose location was never shown is
+     * reported without one.
+     */
+    synchronized void close(){
+        if(length > 0) parseLine(new String(line, 0, length, StandardCharsets.UTF_8));
+        length = 0;
+        if(message != null) complete(-1, "");
+    }
+
+    /**
+     * @return The diagnostics parsed so far, in the order TeX reported them.
+     */
+    synchronized List<TeXDiagnostic> getDiagnostics(){
+        return new ArrayList<>(diagnostics);
+    }
+
+    /**
+     * This function parses a complete line of output.
+     * @param text The line, without its line terminator.
+     */
+    private void parseLine(String text){
+        if(text.startsWith("! ")) {
+            /* A new error; one still waiting for its location is reported without it. */
+            if(message != null) complete(-1, "");
+            message = text.substring(2);
+        }else if(message != null) {
+            if(text.startsWith("l.")) {
+                int space = text.indexOf(' ');
+                int lineNumber = parseLineNumber(text.substring(2, space < 0 ? text.length() : space));
+                if(lineNumber >= 0) complete(lineNumber, space < 0 ? "" : text.substring(space + 1));
+            }else if(text.startsWith("<*>")) {
+                complete(-1, text.substring(3).trim());
+            }
+        }
+    }
+
+    /**
+     * @param digits The digits following "l.".
+     * @return The line number, or -1 if the digits are not a line number.
+     */
+    private static int parseLineNumber(String digits){
+        if(digits.isEmpty() || digits.length() > 9) return -1;
+        for(int i = 0; i < digits.length(); i++) if(!Character.isDigit(digits.charAt(i))) return -1;
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * This function completes the diagnostic being parsed and passes it to the consumer.
+     * @param lineNumber The line the error occurred on, or -1 if unknown.
+     * @param context The source TeX had read when the error occurred.
+     */
+    private void complete(int lineNumber, String context){
+        TeXDiagnostic diagnostic = new TeXDiagnostic(message, lineNumber, context);
+        message = null;
+        diagnostics.add(diagnostic);
+        consumer.accept(diagnostic);
+    }
+}
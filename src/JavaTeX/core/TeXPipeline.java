@@ -0,0 +1,175 @@
+package JavaTeX.core;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class builds many sources as a pipeline of two stages, each with its own queue and workers: the CPU heavy TeX
+ * stage and the I/O heavy conversion stage (dvipdfm followed by clean up). While one job is converted the next job is
+ * already being typeset.
+ *
+ * Every job is written to the output file name of the TeXBuilder followed by "-n", where n counts the jobs submitted
+ * to the pipeline (e.g., "output-0.pdf", "output-1.pdf", ...), so that jobs in flight never share files. When a stage's
+ * queue is full, the thread handing it a job blocks until there is room.
+ */
+public class TeXPipeline implements AutoCloseable {
+
+    /**
+     * This enum lists the stages of the pipeline.
+     */
+    public enum Stage {
+        /* TeX typesets the source into a dvi file. */
+        TYPESET,
+        /* The dvi file is converted to pdf and unwanted files are removed. */
+        CONVERT
+    }
+
+    private final TeXBuilder builder; /* The TeXBuilder whose configuration every job uses. */
+    private final ThreadPoolExecutor typesetStage; /* Runs the TYPESET stage. */
+    private final ThreadPoolExecutor convertStage; /* Runs the CONVERT stage. */
+    private final AtomicLong counter; /* Used to give every job a unique output file name. */
+
+    /**
+     * Customized Constructor
+     * Creates a TeXPipeline whose stage queues are unbounded.
+     * @param builder The TeXBuilder whose configuration every job uses.
+     * @param typesetWorkers The number of jobs that may be typeset at once.
+     * @param convertWorkers The number of jobs that may be converted at once.
+     */
+    public TeXPipeline(TeXBuilder builder, int typesetWorkers, int convertWorkers){
+        this(builder, typesetWorkers, Integer.MAX_VALUE, convertWorkers, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Customized Constructor
+     * @param builder The TeXBuilder whose configuration every job uses.
+     * @param typesetWorkers The number of jobs that may be typeset at once.
+     * @param typesetQueueCapacity The number of jobs that may wait to be typeset.
+     * @param convertWorkers The number of jobs that may be converted at once.
+     * @param convertQueueCapacity The number of typeset jobs that may wait to be converted.
+     */
+    public TeXPipeline(TeXBuilder builder, int typesetWorkers, int typesetQueueCapacity, int convertWorkers,
+                       int convertQueueCapacity){
+        this.builder = builder != null ? builder : new TeXBuilder();
+        this.typesetStage = createStage("javatex-typeset", typesetWorkers, typesetQueueCapacity);
+        this.convertStage = createStage("javatex-convert", convertWorkers, convertQueueCapacity);
+        this.counter = new AtomicLong();
+    }
+
+    /**
+     * This function creates the executor running one stage of the pipeline.
+     * @param name The prefix of the stage's thread names.
+     * @param workers The number of threads running the stage.
+     * @param queueCapacity The number of jobs that may wait for the stage.
+     * @return The executor.
+     */
+    private static ThreadPoolExecutor createStage(String name, int workers, int queueCapacity){
+        workers = Math.max(1, workers);
+        return new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(Math.max(1, queueCapacity)), BuildExecutors.daemonThreadFactory(name),
+                new BlockWhenFull());
+    }
+
+    /**
+     * This class makes the thread handing a job to a full stage wait for room in the stage's queue.
+     */
+    private static class BlockWhenFull implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable job, ThreadPoolExecutor stage){
+            if(stage.isShutdown()) throw new RejectedExecutionException("The pipeline is closed");
+            try {
+                stage.getQueue().put(job);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException("Interrupted while waiting for room in the queue", e);
+            }
+        }
+    }
+
+    /**
+     * This function submits the given source to the pipeline.
+     * @param source The JavaTeX.core.TeXSource to be built.
+     * @return A CompletableFuture completed with the BuildResult describing the build. Its output file name identifies
+     * the job's artifacts. Cancelling it cancels the build, killing any process it is running.
+     * @throws RejectedExecutionException If the pipeline is closed.
+     */
+    public CompletableFuture<BuildResult> submit(TeXSource source){
+        TeXBuilder job = builder.withOutputFileName(builder.getOutputFileName() + "-" + counter.getAndIncrement());
+        if(!job.isBuildable(source)) return CompletableFuture.completedFuture(job.compile(source));
+        BuildContext context = job.newContext();
+        CompletableFuture<BuildResult> future = CompletableFuture.supplyAsync(() -> job.typeset(source, context), typesetStage)
+                .thenApplyAsync(job::finish, convertStage);
+        future.whenComplete((result, error) -> {
+            if(future.isCancelled()) context.cancel();
+        });
+        return future;
+    }
+
+    /**
+     * @param stage The stage to be checked.
+     * @return The number of jobs waiting for the given stage.
+     */
+    public int getQueueDepth(Stage stage){
+        return getStage(stage).getQueue().size();
+    }
+
+    /**
+     * @param stage The stage to be checked.
+     * @return The number of jobs the given stage is working on.
+     */
+    public int getActiveCount(Stage stage){
+        return getStage(stage).getActiveCount();
+    }
+
+    /**
+     * @param stage The stage to be checked.
+     * @return The number of jobs the given stage has finished.
+     */
+    public long getCompletedCount(Stage stage){
+        return getStage(stage).getCompletedTaskCount();
+    }
+
+    /**
+     * @param stage The stage to be checked.
+     * @return The number of jobs that may be waiting for the given stage and have not been accepted yet.
+     */
+    public int getRemainingCapacity(Stage stage){
+        BlockingQueue<Runnable> queue = getStage(stage).getQueue();
+        return queue.remainingCapacity();
+    }
+
+    /**
+     * @param stage A stage of the pipeline.
+     * @return The executor running the given stage.
+     */
+    private ThreadPoolExecutor getStage(Stage stage){
+        return stage == Stage.TYPESET ? typesetStage : convertStage;
+    }
+
+    /**
+     * This function stops the pipeline from accepting jobs. Jobs already submitted are finished.
+     */
+    @Override
+    public void close(){
+        typesetStage.shutdown();
+        /* Jobs still being typeset hand their conversion over once they finish. */
+        try {
+            typesetStage.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        convertStage.shutdown();
+    }
+
+    @Override
+    public String toString(){
+        return "TeXPipeline[typeset(active=" + getActiveCount(Stage.TYPESET) + ", queued=" + getQueueDepth(Stage.TYPESET)
+                + "), convert(active=" + getActiveCount(Stage.CONVERT) + ", queued=" + getQueueDepth(Stage.CONVERT) + ")]";
+    }
+}
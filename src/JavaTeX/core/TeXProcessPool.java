@@ -0,0 +1,368 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class keeps a pool of warm TeX processes so that builds do not pay for engine start up, format loading and
+ * kpathsea initialization. Each warm process is started with "\relax" as its first line, which makes TeX load its
+ * format and then wait at the terminal prompt for more input. A job is typeset by writing its source (followed by
+ * "\end") to the process's standard input.
+ *
+ * TeX writes exactly one dvi file per run, so every warm process serves a single job and is replaced in the
+ * background as soon as it is taken. Idle processes older than the configured maximum age, and processes that died
+ * while idle, are recycled when they are found.
+ *
+ * A warm process prints little before its job arrives, so its output is only drained once it is given a job.
+ *
+ * Every warm process, idle or not, holds a permit of the pool's ProcessLimiter until its job ends. Idle processes are
+ * only started while another permit remains available, so they never hold every permit; a limiter allowing a single
+ * process therefore leaves the pool empty, and every job starts its own process once it is granted the permit.
+ *
+ * Warm processes all run the command of the pool's engine with the options that make it write a dvi file, so a
+ * TeXBuilder only typesets on the pool if its engine runs the same command with the same options (see
+ * TeXBuilder.withProcessPool).
+ *
+ * Warm processes run in the pool's work directory under a job name private to the pool; their dvi and log files are
+ * moved to the TeXBuilder's output path when the job finishes. Relative \input's in a TeXString are therefore resolved
+ * against the work directory.
+ */
+public class TeXProcessPool implements AutoCloseable {
+
+    public static final long DEFAULT_MAX_IDLE_MILLIS = TimeUnit.MINUTES.toMillis(10);
+
+    /* The prefix of the job names used by warm processes. */
+    private static final String JOB_NAME_PREFIX = "javatex-warm-";
+
+    private final Path workDirectory; /* The directory warm processes run in. */
+    private final int size; /* The number of warm processes kept ready. */
+    private final long maxIdleMillis; /* How long a warm process may stay idle before it is recycled. */
+    private final String command; /* The executable warm processes run. */
+    private final List<String> typesetOptions; /* The options that make warm processes write a dvi file. */
+    private final ProcessLimiter processLimiter; /* Grants the permits held by warm processes. */
+    private final LinkedBlockingDeque<WarmProcess> idle; /* The warm processes ready for a job. */
+    private final ExecutorService starter; /* Starts replacement processes in the background. */
+    private final AtomicInteger starting; /* The number of processes being started in the background. */
+    private final AtomicLong counter; /* Used to give every warm process a unique job name. */
+    private volatile boolean closed;
+
+    private final AtomicLong jobs = new AtomicLong();
+    private final AtomicLong coldStarts = new AtomicLong();
+    private final AtomicLong recycled = new AtomicLong();
+
+    /**
+     * Customized Constructor
+     * @param workDirectory The directory warm processes run in. It is created if it does not exist.
+     * @param size The number of warm processes kept ready.
+     * @throws IOException If the work directory could not be created.
+     */
+    public TeXProcessPool(Path workDirectory, int size) throws IOException {
+        this(workDirectory, size, DEFAULT_MAX_IDLE_MILLIS);
+    }
+
+    /**
+     * Customized Constructor
+     * @param workDirectory The directory warm processes run in. It is created if it does not exist.
+     * @param size The number of warm processes kept ready.
+     * @param maxIdleMillis How long a warm process may stay idle before it is recycled.
+     * @throws IOException If the work directory could not be created.
+     */
+    public TeXProcessPool(Path workDirectory, int size, long maxIdleMillis) throws IOException {
+        this(workDirectory, size, maxIdleMillis, TeXEngine.TEX_DVIPDFM, ProcessLimiter.shared());
+    }
+
+    /**
+     * Customized Constructor
+     * @param workDirectory The directory warm processes run in. It is created if it does not exist.
+     * @param size The number of warm processes kept ready.
+     * @param maxIdleMillis How long a warm process may stay idle before it is recycled.
+     * @param engine The engine whose command warm processes run, typesetting to dvi. A null engine runs
+     *               TeXEngine.TEX_DVIPDFM.
+     * @param processLimiter Grants the permits held by warm processes. A null limiter uses ProcessLimiter.shared().
+     * @throws IOException If the work directory could not be created.
+     */
+    public TeXProcessPool(Path workDirectory, int size, long maxIdleMillis, TeXEngine engine,
+                          ProcessLimiter processLimiter) throws IOException {
+        if(engine == null) engine = TeXEngine.TEX_DVIPDFM;
+        this.workDirectory = Files.createDirectories(workDirectory).toAbsolutePath();
+        this.size = Math.max(1, size);
+        this.maxIdleMillis = maxIdleMillis;
+        this.command = engine.getCommand();
+        this.typesetOptions = Collections.unmodifiableList(new ArrayList<>(engine.getTypesetOptions(Artifact.DVI)));
+        this.processLimiter = processLimiter != null ? processLimiter : ProcessLimiter.shared();
+        this.idle = new LinkedBlockingDeque<>();
+        this.starter = Executors.newSingleThreadExecutor(BuildExecutors.daemonThreadFactory("javatex-pool"));
+        this.starting = new AtomicInteger();
+        this.counter = new AtomicLong();
+        replenish();
+    }
+
+    /**
+     * This class is a TeX process waiting at the terminal prompt for its job.
+     */
+    private static class WarmProcess {
+        final Process process;
+        final String jobName;
+        final long startedMillis;
+        final AtomicBoolean released = new AtomicBoolean(); /* Was the process's permit released? */
+
+        WarmProcess(Process process, String jobName){
+            this.process = process;
+            this.jobName = jobName;
+            this.startedMillis = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * This function starts a new warm process. The caller holds the permit the process is started with.
+     * @return The warm process.
+     * @throws IOException If the process could not be started.
+     */
+    private WarmProcess start() throws IOException {
+        String jobName = JOB_NAME_PREFIX + ProcessHandle.current().pid() + "-" + counter.incrementAndGet();
+        List<String> cmds = new ArrayList<>();
+        cmds.add(command);
+        cmds.addAll(typesetOptions);
+        cmds.addAll(Arrays.asList("-jobname=" + jobName, "-interaction=scrollmode", "\\relax"));
+        ProcessBuilder builder = new ProcessBuilder(cmds);
+        builder.directory(workDirectory.toFile());
+        return new WarmProcess(builder.start(), jobName);
+    }
+
+    /**
+     * This function starts processes in the background until the pool holds its configured number of warm processes,
+     * or no spare permit is left.
+     */
+    private void replenish(){
+        while(!closed && idle.size() + starting.get() < size) {
+            if(!processLimiter.tryAcquireSpare()) return;
+            starting.incrementAndGet();
+            starter.execute(() -> {
+                boolean started = false;
+                try {
+                    if(!closed) {
+                        idle.addLast(start());
+                        started = true;
+                    }
+                }catch(IOException e){
+                    /* The next job will start its own process, and report the failure if it happens again. */
+                }finally{
+                    if(!started) processLimiter.release();
+                    starting.decrementAndGet();
+                }
+                if(closed) discardAll();
+            });
+        }
+    }
+
+    /**
+     * This function releases the permit held by the given warm process, unless it was released before.
+     * @param warm The warm process.
+     */
+    private void release(WarmProcess warm){
+        if(warm.released.compareAndSet(false, true)) processLimiter.release();
+    }
+
+    /**
+     * This function takes a healthy warm process from the pool, recycling idle processes that died or grew too old.
+     * If no warm process is ready a new one is started on the calling thread, once the pool's ProcessLimiter grants
+     * it a permit.
+     * @param context The build the process is taken for.
+     * @return The warm process, or null if the build was stopped before a permit was granted.
+     * @throws IOException If a process had to be started and could not be.
+     */
+    private WarmProcess take(BuildContext context) throws IOException {
+        WarmProcess warm;
+        while((warm = idle.pollFirst()) != null) {
+            boolean expired = System.currentTimeMillis() - warm.startedMillis > maxIdleMillis;
+            if(warm.process.isAlive() && !expired) break;
+            discard(warm);
+            recycled.incrementAndGet();
+        }
+        replenish();
+        if(warm != null) return warm;
+        if(!context.acquire(processLimiter)) return null;
+        coldStarts.incrementAndGet();
+        try {
+            return start();
+        }catch(IOException e){
+            processLimiter.release();
+            throw e;
+        }
+    }
+
+    /**
+     * This function typesets the given input on a warm process and moves the resulting dvi and log files to the given
+     * output files.
+     * @param input Opens the TeX input, which is piped to the process as if typed at the terminal. "\end" is appended.
+     * @param outputFilePath The directory the dvi and log files are moved to.
+     * @param outputFileName The name of the dvi and log files (Excluding file extensions).
+     * @param context The build the job belongs to. Its output receives the process's output, and the process is killed
+     *                if the build times out, is cancelled or exceeds a limit (the files of a killed process are
+     *                deleted).
+     * @return A boolean indicating whether TeX exited with a value of zero.
+     * @throws InterruptedException If the calling thread was interrupted while waiting for TeX.
+     */
+    boolean typeset(TeXStream.ReaderSource input, Path outputFilePath, String outputFileName, BuildContext context)
+            throws InterruptedException {
+        if(closed) return false;
+        WarmProcess warm = null;
+        /* A process may die between its health check and its job; if it has, retry once on another. */
+        for(int attempt = 0; attempt < 2 && warm == null; attempt++) {
+            try {
+                warm = take(context);
+            }catch(IOException e){
+                return false;
+            }
+            if(warm == null) return false;
+            if(!warm.process.isAlive()) {
+                discard(warm);
+                recycled.incrementAndGet();
+                warm = null;
+            }
+        }
+        if(warm == null) return false;
+        jobs.incrementAndGet();
+
+        /* The build's file size limit applies to the files the process writes under its own name. */
+        context.limitFiles(Arrays.asList(workDirectory.resolve(warm.jobName + ".dvi"),
+                workDirectory.resolve(warm.jobName + ".log")));
+        int exitVal;
+        try {
+            exitVal = context.await(warm.process, input, BuildStage.TYPESET);
+        }catch(InterruptedException e){
+            discard(warm);
+            throw e;
+        }finally{
+            release(warm);
+        }
+        if(exitVal == -1) {
+            discard(warm);
+            return false;
+        }
+
+        /* Publish the artifacts under the requested name. */
+        try {
+            for(String extension : new String[]{".dvi", ".log"}) {
+                Path produced = workDirectory.resolve(warm.jobName + extension);
+                if(Files.exists(produced)) {
+                    Files.move(produced, outputFilePath.resolve(outputFileName + extension), StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }catch(IOException e){
+            return false;
+        }
+        return exitVal == 0;
+    }
+
+    /**
+     * This function destroys a warm process and deletes any files it wrote.
+     * @param warm The warm process to be discarded.
+     */
+    private void discard(WarmProcess warm){
+        warm.process.destroyForcibly();
+        try {
+            warm.process.waitFor(1, TimeUnit.SECONDS);
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        release(warm);
+        for(String extension : new String[]{".dvi", ".log"}) {
+            workDirectory.resolve(warm.jobName + extension).toFile().delete();
+        }
+    }
+
+    /**
+     * This function discards every idle warm process.
+     */
+    private void discardAll(){
+        List<WarmProcess> warm = new ArrayList<>();
+        idle.drainTo(warm);
+        for(WarmProcess process : warm) discard(process);
+    }
+
+    /**
+     * This function stops the pool and destroys its idle warm processes. Jobs already running are allowed to finish.
+     */
+    @Override
+    public void close(){
+        closed = true;
+        starter.shutdown();
+        discardAll();
+    }
+
+    /**
+     * @return The directory warm processes run in.
+     */
+    public Path getWorkDirectory(){
+        return this.workDirectory;
+    }
+
+    /**
+     * @return The executable warm processes run.
+     */
+    public String getCommand(){
+        return this.command;
+    }
+
+    /**
+     * @return The options that make warm processes write a dvi file.
+     */
+    public List<String> getTypesetOptions(){
+        return this.typesetOptions;
+    }
+
+    /**
+     * @return The number of warm processes the pool keeps ready.
+     */
+    public int getSize(){
+        return this.size;
+    }
+
+    /**
+     * @return The number of warm processes currently ready for a job.
+     */
+    public int getWarmCount(){
+        return this.idle.size();
+    }
+
+    /**
+     * @return The number of jobs dispatched to the pool.
+     */
+    public long getJobs(){
+        return this.jobs.get();
+    }
+
+    /**
+     * @return The number of jobs that found no warm process and had to start one.
+     */
+    public long getColdStarts(){
+        return this.coldStarts.get();
+    }
+
+    /**
+     * @return The number of idle processes that were recycled because they died or grew too old.
+     */
+    public long getRecycled(){
+        return this.recycled.get();
+    }
+
+    @Override
+    public String toString(){
+        return "TeXProcessPool[size=" + size + ", warm=" + getWarmCount() + ", jobs=" + getJobs() + ", coldStarts="
+                + getColdStarts() + ", recycled=" + getRecycled() + "]";
+    }
+}
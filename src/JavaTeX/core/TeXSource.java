@@ -0,0 +1,7 @@
+package JavaTeX.core;
+
+/**
+ * This interface is implemented by every kind of TeX source a TeXBuilder can build.
+ */
+public interface TeXSource {
+}
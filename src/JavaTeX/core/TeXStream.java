@@ -0,0 +1,114 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.function.Supplier;
+
+/**
+ * This class represents TeX source that is streamed to TeX rather than held in memory. Its content is piped to TeX's
+ * standard input in fixed size chunks, so neither the command line nor the heap has to hold the whole document.
+ *
+ * The content is opened once per build, so a TeXStream may be built more than once if its source can be reopened.
+ * TeX reads piped input a line at a time, so no single line may exceed TeX's input buffer (buf_size).
+ */
+public class TeXStream implements TeXSource {
+
+    /* The number of characters copied to TeX at a time. */
+    static final int CHUNK_SIZE = 8192;
+
+    /**
+     * This interface opens the content of a TeXStream.
+     */
+    @FunctionalInterface
+    public interface ReaderSource {
+        /**
+         * @return A Reader positioned at the start of the content. It is closed once the content has been piped.
+         * @throws IOException If the content could not be opened.
+         */
+        Reader open() throws IOException;
+    }
+
+    /**
+     * This interface opens the content of a TeXStream as bytes.
+     */
+    @FunctionalInterface
+    public interface InputStreamSource {
+        /**
+         * @return An InputStream positioned at the start of the content. It is closed once the content has been piped.
+         * @throws IOException If the content could not be opened.
+         */
+        InputStream open() throws IOException;
+    }
+
+    private ReaderSource source;
+
+    public TeXStream(ReaderSource source){
+        this.source = source;
+    }
+
+    /**
+     * This function creates a TeXStream whose content is read from the InputStreams opened by the given source.
+     * @param source Opens the content.
+     * @param charset The charset the content is encoded in.
+     * @return The TeXStream.
+     */
+    public static TeXStream fromInputStream(InputStreamSource source, Charset charset){
+        if(source == null) return new TeXStream(null);
+        return new TeXStream(() -> new InputStreamReader(source.open(), charset));
+    }
+
+    /**
+     * This function creates a TeXStream whose content is the CharSequence returned by the given supplier. The sequence
+     * is read a chunk at a time, so a lazily generated CharSequence never has to be materialized as a String.
+     * @param source Supplies the content.
+     * @return The TeXStream.
+     */
+    public static TeXStream fromCharSequence(Supplier<? extends CharSequence> source){
+        if(source == null) return new TeXStream(null);
+        return new TeXStream(() -> new CharSequenceReader(source.get()));
+    }
+
+    public ReaderSource getSource(){
+        return this.source;
+    }
+
+    /**
+     * This function copies the content of the given Reader to the given Writer a chunk at a time.
+     * @param reader The Reader to be copied.
+     * @param writer The Writer the content is copied to.
+     * @throws IOException If the content could not be read or written.
+     */
+    static void copy(Reader reader, Writer writer) throws IOException {
+        char[] chunk = new char[CHUNK_SIZE];
+        int read;
+        while((read = reader.read(chunk)) != -1) writer.write(chunk, 0, read);
+    }
+
+    /**
+     * This class reads a CharSequence without copying it.
+     */
+    private static class CharSequenceReader extends Reader {
+        private final CharSequence sequence;
+        private int position;
+
+        CharSequenceReader(CharSequence sequence){
+            this.sequence = sequence != null ? sequence : "";
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length){
+            if(position >= sequence.length()) return -1;
+            int count = Math.min(length, sequence.length() - position);
+            for(int i = 0; i < count; i++) buffer[offset + i] = sequence.charAt(position++);
+            return count;
+        }
+
+        @Override
+        public void close(){
+        }
+    }
+}
@@ -3,7 +3,7 @@ package JavaTeX.core;
 /**
  * This class represents a string of TeX Source.
  */
-public class TeXString {
+public class TeXString implements TeXSource {
     private String source;
 
     public TeXString(String source){
@@ -0,0 +1,334 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * This class checks TeX sources in the JVM before any process is started (see TeXBuilder.withValidator), so that
+ * sources TeX would certainly reject do not cost a tex and a dvipdfm process. It checks that braces are balanced and,
+ * optionally, that every control word is known: a primitive of TeX, a macro of plain TeX, one of the configured names,
+ * or a name the source defines itself (e.g., with \def, \let or \newcount). Comments, control symbols (e.g., \{ or \%),
+ * \verb|...| and \begin{verbatim}...\end{verbatim} are skipped. The scan assumes plain TeX's category codes and does not
+ * allocate per token, so it is cheap enough to run on every build.
+ */
+public class TeXValidator {
+
+    /* The most diagnostics reported for a source. */
+    public static final int MAX_DIAGNOSTICS = 20;
+
+    /* The primitives of TeX. */
+    private static final String[] PRIMITIVES = {
+            "above", "abovedisplayshortskip", "abovedisplayskip", "abovewithdelims", "accent", "adjdemerits", "advance",
+            "afterassignment", "aftergroup", "atop", "atopwithdelims", "badness", "baselineskip", "batchmode",
+            "begingroup", "belowdisplayshortskip", "belowdisplayskip", "binoppenalty", "botmark", "box", "boxmaxdepth",
+            "brokenpenalty", "catcode", "char", "chardef", "cleaders", "closein", "closeout", "clubpenalty", "copy",
+            "count", "countdef", "cr", "crcr", "csname", "day", "deadcycles", "def", "defaulthyphenchar",
+            "defaultskewchar", "delcode", "delimiter", "delimiterfactor", "delimitershortfall", "dimen", "dimendef",
+            "discretionary", "displayindent", "displaylimits", "displaystyle", "displaywidowpenalty", "displaywidth",
+            "divide", "doublehyphendemerits", "dp", "dump", "edef", "else", "emergencystretch", "end", "endcsname",
+            "endgroup", "endinput", "endlinechar", "eqno", "errhelp", "errmessage", "errorcontextlines",
+            "errorstopmode", "escapechar", "everycr", "everydisplay", "everyhbox", "everyjob", "everymath", "everypar",
+            "everyvbox", "exhyphenpenalty", "expandafter", "fam", "fi", "finalhyphendemerits", "firstmark",
+            "floatingpenalty", "font", "fontdimen", "fontname", "futurelet", "gdef", "global", "globaldefs", "halign",
+            "hangafter", "hangindent", "hbadness", "hbox", "hfil", "hfill", "hfilneg", "hfuzz", "hoffset",
+            "holdinginserts", "hrule", "hsize", "hskip", "hss", "ht", "hyphenation", "hyphenchar", "hyphenpenalty",
+            "if", "ifcase", "ifcat", "ifdim", "ifeof", "iffalse", "ifhbox", "ifhmode", "ifinner", "ifmmode", "ifnum",
+            "ifodd", "iftrue", "ifvbox", "ifvmode", "ifvoid", "ifx", "ignorespaces", "immediate", "indent", "input",
+            "inputlineno", "insert", "insertpenalties", "interlinepenalty", "jobname", "kern", "language", "lastbox",
+            "lastkern", "lastpenalty", "lastskip", "lccode", "leaders", "left", "lefthyphenmin", "leftskip", "leqno",
+            "let", "limits", "linepenalty", "lineskip", "lineskiplimit", "long", "looseness", "lower", "lowercase",
+            "mag", "mark", "mathaccent", "mathbin", "mathchar", "mathchardef", "mathchoice", "mathclose", "mathcode",
+            "mathinner", "mathop", "mathopen", "mathord", "mathpunct", "mathrel", "mathsurround", "maxdeadcycles",
+            "maxdepth", "meaning", "medmuskip", "message", "mkern", "month", "moveleft", "moveright", "mskip",
+            "multiply", "muskip", "muskipdef", "newlinechar", "noalign", "noboundary", "noexpand", "noindent",
+            "nolimits", "nonscript", "nonstopmode", "nulldelimiterspace", "nullfont", "number", "omit", "openin",
+            "openout", "or", "outer", "output", "outputpenalty", "over", "overfullrule", "overline", "overwithdelims",
+            "pagedepth", "pagefilllstretch", "pagefillstretch", "pagefilstretch", "pagegoal", "pageshrink",
+            "pagestretch", "pagetotal", "par", "parfillskip", "parindent", "parshape", "parskip", "patterns",
+            "pausing", "penalty", "postdisplaypenalty", "predisplaypenalty", "predisplaysize", "pretolerance",
+            "prevdepth", "prevgraf", "radical", "raise", "read", "relax", "relpenalty", "right", "righthyphenmin",
+            "rightskip", "romannumeral", "scriptfont", "scriptscriptfont", "scriptscriptstyle", "scriptspace",
+            "scriptstyle", "scrollmode", "setbox", "sfcode", "shipout", "show", "showbox", "showboxbreadth",
+            "showboxdepth", "showlists", "showthe", "skewchar", "skip", "skipdef", "spacefactor", "spaceskip", "span",
+            "special", "splitbotmark", "splitfirstmark", "splitmaxdepth", "splittopskip", "string", "tabskip",
+            "textfont", "textstyle", "the", "thickmuskip", "thinmuskip", "time", "toks", "toksdef", "tolerance",
+            "topmark", "topskip", "tracingcommands", "tracinglostchars", "tracingmacros", "tracingonline",
+            "tracingoutput", "tracingpages", "tracingparagraphs", "tracingrestores", "tracingstats", "uccode",
+            "uchyph", "underline", "unhbox", "unhcopy", "unkern", "unpenalty", "unskip", "unvbox", "unvcopy",
+            "uppercase", "vadjust", "valign", "vbadness", "vbox", "vcenter", "vfil", "vfill", "vfilneg", "vfuzz",
+            "voffset", "vrule", "vsize", "vskip", "vsplit", "vss", "vtop", "wd", "widowpenalty", "write", "xdef",
+            "xleaders", "xspaceskip", "year"
+    };
+
+    /* The macros, registers and fonts plain.tex defines, and delimiters its macros take (e.g., \of and \columns). */
+    private static final String[] PLAIN_MACROS = {
+            "AA", "AE", "Arrowvert", "Big", "Bigg", "Biggl", "Biggm", "Biggr", "Bigl", "Bigm", "Bigr", "Delta",
+            "Downarrow", "Gamma", "H", "Im", "L", "Lambda", "Leftarrow", "Leftrightarrow", "Longleftarrow",
+            "Longleftrightarrow", "Longrightarrow", "O", "OE", "Omega", "P", "Phi", "Pi", "Pr", "Psi", "Re", "Relbar",
+            "Rightarrow", "S", "Sigma", "TeX", "Theta", "Uparrow", "Updownarrow", "Upsilon", "Vert", "Xi", "aa",
+            "active", "acute", "advancepageno", "ae", "aleph", "allocationnumber", "allowbreak", "alpha", "amalg",
+            "angle", "approx", "arccos", "arcsin", "arctan", "arg", "arrowvert", "ast", "asymp", "b", "backslash",
+            "bar", "beginsection", "beta", "bf", "bffam", "bgroup", "big", "bigbreak", "bigcap", "bigcirc", "bigcup",
+            "bigg", "biggl", "biggm", "biggr", "bigl", "bigm", "bigodot", "bigoplus", "bigotimes", "bigr", "bigskip",
+            "bigskipamount", "bigsqcup", "bigtriangledown", "bigtriangleup", "biguplus", "bigvee", "bigwedge", "bmod",
+            "body", "bordermatrix", "bot", "bowtie", "brace", "bracevert", "brack", "break", "breve", "buildrel",
+            "bullet", "bye", "c", "cal", "cap", "cases", "cdot", "cdotp", "cdots", "centering", "centerline", "check",
+            "chi", "choose", "circ", "cleartabs", "clubsuit", "colon", "columns", "cong", "coprod", "copyright", "cos",
+            "cosh", "cot", "coth", "csc", "cup", "d", "dag", "dagger", "dashv", "ddag", "ddagger", "ddot", "ddots",
+            "deg", "delta", "det", "diamond", "diamondsuit", "dim", "displaylines", "div", "dospecials",
+            "dosupereject", "dot", "doteq", "dotfill", "dots", "downarrow", "downbracefill", "egroup", "eject", "ell",
+            "empty", "emptyset", "endgraf", "endinsert", "endline", "enskip", "enspace", "epsilon", "eqalign",
+            "eqalignno", "equiv", "eta", "exists", "exp", "filbreak", "fivebf", "fivei", "fiverm", "fivesy", "flat",
+            "fmtname", "fmtversion", "folio", "footins", "footline", "footnote", "footnoterule", "footstrut", "forall",
+            "frenchspacing", "frown", "gamma", "gcd", "ge", "geq", "gets", "gg", "goodbreak", "grave", "hang", "hat",
+            "hbar", "headline", "heartsuit", "hglue", "hideskip", "hidewidth", "hom", "hookleftarrow",
+            "hookrightarrow", "hphantom", "hrulefill", "i", "ialign", "iff", "imath", "in", "inf", "infty", "int",
+            "interdisplaylinepenalty", "interfootnotelinepenalty", "intop", "iota", "it", "item", "itemitem",
+            "iterate", "itfam", "j", "jmath", "joinrel", "jot", "kappa", "ker", "l", "lambda", "land", "langle",
+            "lbrace", "lbrack", "lceil", "ldotp", "ldots", "le", "leavevmode", "leftarrow", "leftarrowfill",
+            "leftharpoondown", "leftharpoonup", "leftline", "leftrightarrow", "leq", "leqalignno", "lfloor", "lg",
+            "lgroup", "lhook", "lim", "liminf", "limsup", "line", "ll", "llap", "lmoustache", "ln", "lnot", "log",
+            "loggingall", "longleftarrow", "longleftrightarrow", "longmapsto", "longrightarrow", "loop", "lor", "lq",
+            "magnification", "magstep", "magstephalf", "makefootline", "makeheadline", "mapsto", "mapstochar",
+            "mathhexbox", "mathpalette", "mathstrut", "matrix", "max", "maxdimen", "medbreak", "medskip",
+            "medskipamount", "mid", "midinsert", "min", "mit", "models", "mp", "mu", "multispan", "nabla", "narrower",
+            "natural", "ne", "nearrow", "neg", "negthinspace", "neq", "newbox", "newcount", "newdimen", "newfam",
+            "newhelp", "newif", "newinsert", "newlanguage", "newmuskip", "newread", "newskip", "newtoks", "newwrite",
+            "ni", "nobreak", "nointerlineskip", "nonfrenchspacing", "nopagenumbers", "normalbaselines",
+            "normalbaselineskip", "normalbottom", "normallineskip", "normallineskiplimit", "not", "notin", "nu",
+            "null", "nwarrow", "o", "oalign", "obeylines", "obeyspaces", "odot", "oe", "of", "offinterlineskip",
+            "oint", "ointop", "oldstyle", "omega", "ominus", "ooalign", "openup", "oplus", "oslash", "otimes",
+            "overbrace", "overleftarrow", "overrightarrow", "owns", "pagebody", "pagecontents", "pageinsert", "pageno",
+            "parallel", "partial", "perp", "phantom", "phi", "pi", "plainoutput", "pm", "pmatrix", "pmod", "prec",
+            "preceq", "preloaded", "prime", "proclaim", "prod", "propto", "psi", "qquad", "quad", "raggedbottom",
+            "raggedright", "rangle", "rbrace", "rbrack", "rceil", "relbar", "removelastskip", "repeat", "rfloor",
+            "rgroup", "rho", "rhook", "rightarrow", "rightarrowfill", "rightharpoondown", "rightharpoonup",
+            "rightleftharpoons", "rightline", "rlap", "rm", "rmoustache", "root", "rootbox", "rq", "sb", "searrow",
+            "sec", "setminus", "settabs", "sevenbf", "seveni", "sevenrm", "sevensy", "sharp", "showhyphens", "sigma",
+            "sim", "simeq", "sin", "sinh", "skew", "sl", "slash", "slfam", "smallbreak", "smallint", "smallskip",
+            "smallskipamount", "smash", "smile", "sp", "space", "spadesuit", "sqcap", "sqcup", "sqrt", "sqsubseteq",
+            "sqsupseteq", "ss", "star", "strut", "strutbox", "subset", "subseteq", "succ", "succeq", "sum", "sup",
+            "supereject", "supset", "supseteq", "surd", "swarrow", "t", "tabalign", "tabs", "tabsdone", "tabsyet",
+            "tan", "tanh", "tau", "tenbf", "tenex", "teni", "tenit", "tenrm", "tensl", "tensy", "tentt", "textindent",
+            "theta", "thinspace", "tilde", "times", "to", "top", "topins", "topinsert", "tracingall", "triangle",
+            "triangleleft", "triangleright", "tt", "ttfam", "ttglue", "ttraggedright", "u", "underbar", "underbrace",
+            "uparrow", "upbracefill", "updownarrow", "uplus", "upsilon", "v", "varepsilon", "varphi", "varpi",
+            "varrho", "varsigma", "vartheta", "vdash", "vdots", "vec", "vee", "vert", "vfootnote", "vglue", "vphantom",
+            "wedge", "widehat", "widetilde", "wlog", "wp", "wr", "xi", "zeta"
+    };
+
+    /* The control words whose next control sequence they define. */
+    private static final ControlSequenceSet DEFINERS = setOf(new String[]{
+            "def", "edef", "gdef", "xdef", "let", "futurelet", "chardef", "mathchardef", "countdef", "dimendef",
+            "skipdef", "muskipdef", "toksdef", "font", "newcount", "newdimen", "newskip", "newmuskip", "newtoks",
+            "newbox", "newread", "newwrite", "newfam", "newinsert", "newlanguage", "newif"
+    });
+
+    private final ControlSequenceSet known; /* The known control words, or null if they are not checked. */
+
+    /**
+     * Default Constructor
+     * Creates a TeXValidator that checks that braces are balanced, but not which control sequences are used.
+     */
+    public TeXValidator(){
+        this.known = null;
+    }
+
+    /**
+     * Customized Constructor
+     * @param known The known control words, or null if they are not checked.
+     */
+    private TeXValidator(ControlSequenceSet known){
+        this.known = known;
+    }
+
+    /**
+     * This function returns a copy of this TeXValidator that also rejects control words other than the primitives of
+     * TeX, the macros of plain TeX, the given names (and those given before) and those the source defines.
+     * @param names The names of further known control words, with or without the leading backslash (e.g., the macros
+     *              of a TeXFormat's preamble).
+     * @return A TeXValidator checking control words.
+     */
+    public TeXValidator withKnownControlSequences(Collection<String> names){
+        ControlSequenceSet set = new ControlSequenceSet(known != null ? known : setOf(PRIMITIVES));
+        if(known == null) for(String name : PLAIN_MACROS) set.add(name);
+        if(names != null) {
+            for(String name : names) {
+                if(name != null) set.add(name.startsWith("\\") ? name.substring(1) : name);
+            }
+        }
+        return new TeXValidator(set);
+    }
+
+    /**
+     * This function validates the given source. TeXStreams are not validated, since they can only be read once.
+     * @param source The source to be validated.
+     * @return The problems found, in the order they occur; empty if the source passed (or could not be read, in which
+     * case TeX will report the problem).
+     */
+    public List<TeXDiagnostic> validate(TeXSource source){
+        if(source instanceof TeXString && ((TeXString) source).getSource() != null) {
+            return validate(((TeXString) source).getSource());
+        }
+        if(source instanceof TeXFile && ((TeXFile) source).getPath() != null) {
+            try {
+                /* TeX reads bytes, so decode them one to one. */
+                byte[] bytes = Files.readAllBytes(((TeXFile) source).getPath());
+                return validate(new String(bytes, StandardCharsets.ISO_8859_1));
+            }catch(IOException e){
+                return new ArrayList<>();
+            }
+        }
+        return new ArrayList<>();
+    }
+
+    /**
+     * This function validates the given TeX source.
+     * @param source The TeX source to be validated.
+     * @return The problems found, in the order they occur; empty if the source passed.
+     */
+    public List<TeXDiagnostic> validate(String source){
+        List<TeXDiagnostic> diagnostics = new ArrayList<>(0);
+        ControlSequenceSet defined = known != null ? scan(source, null, null) : null;
+        scan(source, defined, diagnostics);
+        return diagnostics;
+    }
+
+    /**
+     * This function scans the given source. Without a list of diagnostics it collects the names the source defines;
+     * with one it reports unbalanced braces and (if this TeXValidator checks them) unknown control words.
+     * @param source The source to be scanned.
+     * @param defined The names the source defines, or null if none (or if they are being collected).
+     * @param diagnostics Receives the problems found, or null to collect the names the source defines.
+     * @return The names the source defines, or null if it defines none (or if problems were being checked).
+     */
+    private ControlSequenceSet scan(String source, ControlSequenceSet defined, List<TeXDiagnostic> diagnostics){
+        boolean check = diagnostics != null;
+        int n = source.length();
+        int[] open = new int[check ? 8 : 0]; /* The positions of the unclosed braces. */
+        int depth = 0;
+        int definer = 0; /* 0, or 1 if the next control sequence is defined, or 2 if it is defined by \newif. */
+        int i = 0;
+        while(i < n && (!check || diagnostics.size() < MAX_DIAGNOSTICS)) {
+            char c = source.charAt(i);
+            if(c == '%') {
+                /* A comment runs to the end of the line. */
+                int end = source.indexOf('\n', i);
+                i = end < 0 ? n : end;
+            }else if(c == '{' && check) {
+                if(depth == open.length) open = Arrays.copyOf(open, depth * 2);
+                open[depth++] = i++;
+            }else if(c == '}' && check) {
+                if(depth == 0) diagnostics.add(diagnostic("Too many }'s.", source, i));
+                else depth--;
+                i++;
+            }else if(c == '\\' && i + 1 < n) {
+                int start = i + 1;
+                if(!isLetter(source.charAt(start))) {
+                    /* A control symbol (e.g., \{ or \%) is always known. */
+                    definer = 0;
+                    i = source.charAt(start) == '\n' ? start : start + 1;
+                    continue;
+                }
+                int end = start;
+                while(end < n && isLetter(source.charAt(end))) end++;
+                i = end;
+                if(is(source, start, end, "verb") && end < n) {
+                    /* \verb<c>...<c> must end on the same line. */
+                    char delimiter = source.charAt(end);
+                    int close = end + 1;
+                    while(close < n && source.charAt(close) != delimiter && source.charAt(close) != '\n') close++;
+                    if(close >= n || source.charAt(close) != delimiter) {
+                        if(check) diagnostics.add(diagnostic("\\verb ended by end of line.", source, end));
+                        i = close;
+                    }else {
+                        i = close + 1;
+                    }
+                }else if(is(source, start, end, "begin") && source.startsWith("{verbatim}", end)) {
+                    int close = source.indexOf("\\end{verbatim}", end);
+                    if(close < 0) {
+                        if(check) diagnostics.add(diagnostic("\\begin{verbatim} is never ended.", source, end));
+                        i = n;
+                    }else {
+                        i = close + "\\end{verbatim}".length();
+                    }
+                }else if(!check) {
+                    if(definer != 0) {
+                        if(defined == null) defined = new ControlSequenceSet();
+                        String name = source.substring(start, end);
+                        defined.add(name);
+                        if(definer == 2 && name.startsWith("if")) {
+                            defined.add(name.substring(2) + "true");
+                            defined.add(name.substring(2) + "false");
+                        }
+                        definer = 0;
+                    }else if(DEFINERS.contains(source, start, end)) {
+                        definer = is(source, start, end, "newif") ? 2 : 1;
+                    }
+                }else if(known != null && !known.contains(source, start, end)
+                        && (defined == null || !defined.contains(source, start, end))) {
+                    diagnostics.add(diagnostic("Undefined control sequence.", source, end - 1));
+                }
+            }else {
+                i++;
+            }
+        }
+        if(check && depth > 0 && diagnostics.size() < MAX_DIAGNOSTICS) {
+            diagnostics.add(diagnostic("Unbalanced braces: a { is never closed.", source, open[depth - 1]));
+        }
+        return check ? null : defined;
+    }
+
+    /**
+     * @param c The character to be checked.
+     * @return A boolean indicating whether the character is a letter, and so part of a control word.
+     */
+    private static boolean isLetter(char c){
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    /**
+     * @param source The source holding the name.
+     * @param start The index of the first character of the name.
+     * @param end The index after the last character of the name.
+     * @param name The name to be compared with.
+     * @return A boolean indicating whether the given region is the given name.
+     */
+    private static boolean is(String source, int start, int end, String name){
+        return end - start == name.length() && source.startsWith(name, start);
+    }
+
+    /**
+     * This function describes a problem the way TeX would: with the line it occurs on, and that line up to the problem.
+     * @param message The description of the problem.
+     * @param source The source holding the problem.
+     * @param position The index of the problem's last character.
+     * @return The TeXDiagnostic.
+     */
+    private static TeXDiagnostic diagnostic(String message, String source, int position){
+        int line = 1;
+        int lineStart = 0;
+        for(int i = 0; i < position; i++) {
+            if(source.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new TeXDiagnostic(message, line, source.substring(lineStart, position + 1));
+    }
+
+    /**
+     * @param names The names to be added.
+     * @return A ControlSequenceSet holding the given names.
+     */
+    private static ControlSequenceSet setOf(String[] names){
+        ControlSequenceSet set = new ControlSequenceSet();
+        for(String name : names) set.add(name);
+        return set;
+    }
+}
@@ -0,0 +1,498 @@
+package JavaTeX.core;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * This class rebuilds TeXFiles when their inputs change, e.g., for authoring previews. The inputs of a document are the
+ * files TeX actually read while building it, taken from TeX's recorder file (its "-recorder" option) or, if there is
+ * none, from the files its log opened; the main file is always one of them. Their directories are watched with a
+ * WatchService, and a document is only rebuilt once a change to one of its inputs has been followed by a quiet period
+ * (the debounce), so a burst of saves causes a single build. A change that leaves the contents of every input as they
+ * were at the last build (e.g., saving an unmodified file) causes none.
+ *
+ * A document is never built twice at once: a change during its build causes a rebuild once the build ends. Files of the
+ * TeX installation (formats, fonts and font maps) are not watched. Builds run without the TeXBuilder's cache, process
+ * pool and scratch directory, so that TeX records its inputs next to the document's artifacts. Each document writes
+ * its artifacts under a name of its own, the TeXBuilder's output file name followed by the name of its main file
+ * (e.g., "out-chapter.pdf"), so documents watched at once do not overwrite each other's artifacts or recorder files.
+ */
+public class TeXWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 300;
+
+    /* The extensions of the installation's files TeX reads, which are not watched. */
+    private static final Set<String> IGNORED_EXTENSIONS = new HashSet<>(Arrays.asList(".fmt", ".tfm", ".vf", ".pfb",
+            ".pk", ".map", ".enc", ".cnf"));
+
+    /* Matches a file TeX opened in its log, e.g., "(./chapter1.tex". */
+    private static final Pattern LOGGED_INPUT = Pattern.compile("\\(([^\\s()]+)");
+
+    /**
+     * This class describes a watched document.
+     */
+    private static final class Document {
+        final TeXFile source; /* The main file of the document. */
+        final TeXBuilder builder; /* Builds the document under its own output file name. */
+        final Consumer<BuildResult> listener; /* Receives the result of every build. */
+        final CompletableFuture<BuildResult> first; /* Completed by the first build. */
+        Map<Path, String> inputs; /* The fingerprint of each input at the start of the last build. */
+        ScheduledFuture<?> pending; /* The debounced check for changes, or null. */
+        boolean building; /* Is the document being built? */
+        boolean dirty; /* Did an input change while the document was being built? */
+        boolean waiting; /* Is the document waiting for the build of a document it replaced to end? */
+
+        Document(TeXFile source, TeXBuilder builder, Consumer<BuildResult> listener, Path main){
+            this.source = source;
+            this.builder = builder;
+            this.listener = listener;
+            this.first = new CompletableFuture<>();
+            this.inputs = Collections.singletonMap(main, "");
+        }
+    }
+
+    private final TeXBuilder builder; /* Builds the documents. */
+    private final long debounceNanos; /* The quiet period after a change before a document is rebuilt. */
+    private final WatchService watchService; /* Reports changes to the watched directories. */
+    private final ScheduledExecutorService timer; /* Runs the debounced checks for changes. */
+    private final Thread poller; /* Takes the changes reported by the WatchService. */
+    private final Map<Path, Document> documents = new HashMap<>(); /* Keyed by main file; guarded by this. */
+    private final Map<Path, WatchKey> directories = new HashMap<>(); /* The watched directories; guarded by this. */
+    private final Map<Path, Document> running = new HashMap<>(); /* The documents being built; guarded by this. */
+    private long builds; /* The number of builds started; guarded by this. */
+    private volatile boolean closed;
+
+    /**
+     * Customized Constructor
+     * Creates a TeXWatcher with a debounce of DEFAULT_DEBOUNCE_MILLIS.
+     * @param builder Builds the documents.
+     * @throws IOException If the WatchService could not be created.
+     */
+    public TeXWatcher(TeXBuilder builder) throws IOException {
+        this(builder, DEFAULT_DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Customized Constructor
+     * @param builder Builds the documents.
+     * @param debounce The quiet period after a change before a document is rebuilt.
+     * @param unit The unit of the debounce.
+     * @throws IOException If the WatchService could not be created.
+     */
+    public TeXWatcher(TeXBuilder builder, long debounce, TimeUnit unit) throws IOException {
+        this.builder = (builder != null ? builder : new TeXBuilder()).withRecorder(true).withCache(null)
+                .withProcessPool(null).withScratchDirectory(null);
+        this.debounceNanos = Math.max(0, unit.toNanos(debounce));
+        this.watchService = FileSystems.getDefault().newWatchService();
+        this.timer = Executors.newSingleThreadScheduledExecutor(BuildExecutors.daemonThreadFactory("javatex-watch"));
+        this.poller = BuildExecutors.daemonThreadFactory("javatex-watch-poller").newThread(this::poll);
+        this.poller.start();
+    }
+
+    /**
+     * This function builds the given document, then rebuilds it whenever its inputs change until it is unwatched.
+     * Watching a document again replaces its listener. If the document is being built, e.g., because it was watched
+     * before, it is built again once that build ends, so it is never built twice at once.
+     * @param source The main file of the document.
+     * @param listener Receives the result of every build, on the thread that ran it.
+     * @return A CompletableFuture completed with the result of the first build, once the listener received it, or
+     *         exceptionally if the first build failed unexpectedly.
+     */
+    public CompletableFuture<BuildResult> watch(TeXFile source, Consumer<BuildResult> listener){
+        if(closed) throw new IllegalStateException("The watcher is closed");
+        Path main = canonical(source.getPath());
+        Document document;
+        Document previous;
+        synchronized(this) {
+            previous = documents.get(main);
+            Document busy = running.get(main);
+            TeXBuilder job = previous != null ? previous.builder : busy != null ? busy.builder
+                    : builder.withOutputFileName(outputFileName(main));
+            document = new Document(source, job, listener, main);
+            if(busy != null) {
+                /* The build of the document being replaced writes the same files; this one starts once it ends. */
+                document.building = true;
+                document.dirty = true;
+                document.waiting = true;
+            }
+            documents.put(main, document);
+            updateDirectories();
+        }
+        if(previous != null) cancelPending(previous);
+        build(document);
+        return document.first;
+    }
+
+    /**
+     * This function names the artifacts of a newly watched document after its main file, numbering the name if another
+     * watched document, or a document still being built, already uses it (e.g., two "main.tex" files in different
+     * directories).
+     * It must be called while holding this.
+     * @param main The main file of the document.
+     * @return An output file name no other watched document uses.
+     */
+    private String outputFileName(Path main){
+        String name = main.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = builder.getOutputFileName() + "-" + (dot > 0 ? name.substring(0, dot) : name);
+        Set<String> used = new HashSet<>();
+        for(Document document : documents.values()) used.add(document.builder.getOutputFileName());
+        for(Document document : running.values()) used.add(document.builder.getOutputFileName());
+        String candidate = base;
+        for(int i = 2; used.contains(candidate); i++) candidate = base + "-" + i;
+        return candidate;
+    }
+
+    /**
+     * This function stops watching the given document. A build already running still reports its result.
+     * @param source The main file of the document.
+     */
+    public void unwatch(TeXFile source){
+        Document document;
+        synchronized(this) {
+            document = documents.remove(canonical(source.getPath()));
+            updateDirectories();
+        }
+        if(document != null) cancelPending(document);
+    }
+
+    /**
+     * @param source The main file of a watched document.
+     * @return The inputs of the document found by its last build, or an empty set if it is not watched.
+     */
+    public synchronized Set<Path> getInputs(TeXFile source){
+        Document document = documents.get(canonical(source.getPath()));
+        return document == null ? Collections.emptySet() : Collections.unmodifiableSet(document.inputs.keySet());
+    }
+
+    /**
+     * @return The number of builds the watcher started.
+     */
+    public synchronized long getBuilds(){
+        return this.builds;
+    }
+
+    /**
+     * This function builds the given document, or if it is being built, rebuilds it once that build ends.
+     * @param document The document to be built.
+     */
+    private void build(Document document){
+        Map<Path, String> inputs;
+        synchronized(this) {
+            if(closed || documents.get(canonical(document.source.getPath())) != document) return;
+            if(document.building) {
+                document.dirty = true;
+                return;
+            }
+            document.building = true;
+            running.put(canonical(document.source.getPath()), document);
+            builds++;
+            inputs = document.inputs;
+        }
+        /* Fingerprint the known inputs before TeX reads them, so a change during the build is not missed. */
+        Map<Path, String> fingerprints = new HashMap<>();
+        for(Path input : inputs.keySet()) fingerprints.put(input, fingerprint(input));
+        try {
+            document.builder.compileAsync(document.source)
+                    .whenComplete((result, error) -> finished(document, fingerprints, result, error));
+        }catch(RuntimeException e){
+            finished(document, fingerprints, null, e);
+        }
+    }
+
+    /**
+     * This function records the inputs of a finished build and reports its result.
+     * @param document The document that was built.
+     * @param fingerprints The fingerprints of the known inputs at the start of the build.
+     * @param result The BuildResult describing the build, or null if it failed unexpectedly.
+     * @param error The reason the build failed unexpectedly, or null if it did not.
+     */
+    private void finished(Document document, Map<Path, String> fingerprints, BuildResult result, Throwable error){
+        if(result == null) {
+            /* Nothing is reported to the listener, but a caller waiting for the first build must not wait forever. */
+            document.first.completeExceptionally(error != null ? error : new IllegalStateException("The build failed"));
+        }else {
+            Set<Path> found = readInputs(document, result);
+            Map<Path, String> inputs = new HashMap<>();
+            for(Path input : found) {
+                String known = fingerprints.get(input);
+                inputs.put(input, known != null ? known : fingerprint(input));
+            }
+            synchronized(this) {
+                document.inputs = inputs;
+                updateDirectories();
+            }
+            try {
+                if(document.listener != null) document.listener.accept(result);
+            }catch(RuntimeException e){
+                /* A listener must not stop the watcher. */
+            }finally{
+                document.first.complete(result);
+            }
+        }
+        boolean dirty;
+        Document successor = null;
+        synchronized(this) {
+            document.building = false;
+            dirty = document.dirty;
+            document.dirty = false;
+            Path main = canonical(document.source.getPath());
+            running.remove(main, document);
+            /* A document that replaced this one while it was being built is built now. */
+            Document current = documents.get(main);
+            if(current != null && current.waiting) {
+                current.waiting = false;
+                current.building = false;
+                current.dirty = false;
+                successor = current;
+            }
+        }
+        if(dirty) schedule(document);
+        if(successor != null) build(successor);
+    }
+
+    /**
+     * This function finds the files TeX read while building the given document, from its recorder file (which is then
+     * deleted) or else from its log.
+     * @param document The document that was built.
+     * @param result The BuildResult describing the build.
+     * @return The inputs of the document, including its main file.
+     */
+    private Set<Path> readInputs(Document document, BuildResult result){
+        Set<Path> inputs = new HashSet<>();
+        inputs.add(canonical(document.source.getPath()));
+        Path recorded = result.getPath(Artifact.LOG).resolveSibling(result.getOutputFileName() + ".fls");
+        try {
+            if(Files.isRegularFile(recorded)) {
+                parseRecorder(Files.readAllLines(recorded, StandardCharsets.UTF_8), inputs);
+                Files.deleteIfExists(recorded);
+                return inputs;
+            }
+            Path log = result.getPath(Artifact.LOG);
+            if(Files.isRegularFile(log)) {
+                String text = new String(Files.readAllBytes(log), StandardCharsets.ISO_8859_1);
+                Matcher matcher = LOGGED_INPUT.matcher(text);
+                while(matcher.find()) {
+                    Path input = Paths.get(matcher.group(1));
+                    if(Files.isRegularFile(input) && isWatchable(input)) inputs.add(canonical(input));
+                }
+            }
+        }catch(IOException | RuntimeException e){
+            /* The inputs are unknown, so only the main file is watched. */
+        }
+        return inputs;
+    }
+
+    /**
+     * This function adds the files a recorder file lists as read, and not also written, to the given inputs.
+     * @param lines The lines of the recorder file ("PWD dir", "INPUT file" and "OUTPUT file").
+     * @param inputs The inputs found so far.
+     */
+    static void parseRecorder(List<String> lines, Set<Path> inputs){
+        Path directory = Paths.get("").toAbsolutePath();
+        Set<Path> read = new HashSet<>();
+        Set<Path> written = new HashSet<>();
+        for(String line : lines) {
+            if(line.startsWith("PWD ")) directory = Paths.get(line.substring(4));
+            else if(line.startsWith("INPUT ")) read.add(directory.resolve(line.substring(6)).normalize());
+            else if(line.startsWith("OUTPUT ")) written.add(directory.resolve(line.substring(7)).normalize());
+        }
+        /* Files TeX writes itself (e.g., its .aux file) change with every build. */
+        read.removeAll(written);
+        for(Path input : read) {
+            if(isWatchable(input)) inputs.add(canonical(input));
+        }
+    }
+
+    /**
+     * @param file A file TeX read.
+     * @return A boolean indicating whether the file belongs to the document rather than the TeX installation.
+     */
+    private static boolean isWatchable(Path file){
+        String name = file.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 || !IGNORED_EXTENSIONS.contains(name.substring(dot));
+    }
+
+    /**
+     * This function watches the directories of every watched document's inputs, and stops watching the others.
+     * It must be called while holding this.
+     */
+    private void updateDirectories(){
+        Set<Path> needed = new HashSet<>();
+        for(Document document : documents.values()) {
+            for(Path input : document.inputs.keySet()) {
+                if(input.getParent() != null) needed.add(input.getParent());
+            }
+        }
+        directories.entrySet().removeIf(entry -> {
+            if(needed.contains(entry.getKey())) return false;
+            entry.getValue().cancel();
+            return true;
+        });
+        for(Path directory : needed) {
+            if(directories.containsKey(directory) || closed) continue;
+            try {
+                directories.put(directory, directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                        StandardWatchEventKinds.ENTRY_MODIFY));
+            }catch(IOException | ClosedWatchServiceException e){
+                /* The directory does not exist (yet); its files are checked when another input changes. */
+            }
+        }
+    }
+
+    /**
+     * This function takes the changes reported by the WatchService until the watcher is closed, and schedules the
+     * debounced check of every document one of whose inputs changed.
+     */
+    private void poll(){
+        while(!closed) {
+            WatchKey key;
+            try {
+                key = watchService.take();
+            }catch(InterruptedException | ClosedWatchServiceException e){
+                return;
+            }
+            Path directory = (Path) key.watchable();
+            Set<Path> changed = new HashSet<>();
+            boolean overflow = false;
+            for(WatchEvent<?> event : key.pollEvents()) {
+                if(event.kind() == StandardWatchEventKinds.OVERFLOW) overflow = true;
+                else changed.add(directory.resolve((Path) event.context()));
+            }
+            key.reset();
+            List<Document> affected = new ArrayList<>();
+            synchronized(this) {
+                for(Document document : documents.values()) {
+                    for(Path input : document.inputs.keySet()) {
+                        if(changed.contains(input) || overflow && directory.equals(input.getParent())) {
+                            affected.add(document);
+                            break;
+                        }
+                    }
+                }
+            }
+            for(Document document : affected) schedule(document);
+        }
+    }
+
+    /**
+     * This function (re)starts the debounce of the given document: it is checked for changes once no input changed for
+     * the debounce.
+     * @param document The document whose input changed.
+     */
+    private void schedule(Document document){
+        synchronized(this) {
+            if(closed) return;
+            if(document.building) {
+                document.dirty = true;
+                return;
+            }
+            if(document.pending != null) document.pending.cancel(false);
+            document.pending = timer.schedule(() -> check(document), debounceNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * This function rebuilds the given document if the contents of one of its inputs changed since its last build.
+     * @param document The document to be checked.
+     */
+    private void check(Document document){
+        Map<Path, String> inputs;
+        synchronized(this) {
+            document.pending = null;
+            inputs = document.inputs;
+        }
+        for(Map.Entry<Path, String> input : inputs.entrySet()) {
+            if(!fingerprint(input.getKey()).equals(input.getValue())) {
+                build(document);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @param document The document whose debounce is cancelled.
+     */
+    private synchronized void cancelPending(Document document){
+        if(document.pending != null) document.pending.cancel(false);
+        document.pending = null;
+    }
+
+    /**
+     * This function computes the SHA-256 hash of the given file's contents.
+     * @param file The file to be hashed.
+     * @return The hash, or "missing" if the file could not be read.
+     */
+    private static String fingerprint(Path file){
+        try(InputStream in = Files.newInputStream(file)) {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] chunk = new byte[8192];
+            int read;
+            while((read = in.read(chunk)) != -1) digest.update(chunk, 0, read);
+            return BuildCache.toHex(digest.digest());
+        }catch(IOException | NoSuchAlgorithmException e){
+            return "missing";
+        }
+    }
+
+    /**
+     * @param file A file.
+     * @return The real path of the file, or its normalized absolute path if it does not exist.
+     */
+    private static Path canonical(Path file){
+        try {
+            return file.toRealPath();
+        }catch(IOException e){
+            return file.toAbsolutePath().normalize();
+        }
+    }
+
+    /**
+     * This function stops watching every document. Builds already running still report their results.
+     */
+    @Override
+    public void close(){
+        synchronized(this) {
+            closed = true;
+            documents.clear();
+            directories.clear();
+            running.clear();
+        }
+        timer.shutdownNow();
+        try {
+            watchService.close();
+        }catch(IOException e){
+            /* The WatchService is abandoned. */
+        }
+        poller.interrupt();
+    }
+}
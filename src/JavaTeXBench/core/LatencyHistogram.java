@@ -0,0 +1,96 @@
+package JavaTeXBench.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * This class records latencies into logarithmic buckets, each power of two split into 64 linear sub-buckets, so that
+ * any percentile is reported within 1.6% of the recorded value using a fixed amount of memory. Recording is lock free
+ * and may be done by many threads at once.
+ */
+public class LatencyHistogram {
+
+    /* The number of values below which every value has its own bucket; each larger power of two has half as many. */
+    private static final int SUB_BUCKETS = 128;
+    private static final int HALF = SUB_BUCKETS / 2;
+    private static final int SUB_BUCKET_BITS = Integer.numberOfTrailingZeros(SUB_BUCKETS);
+
+    private final AtomicLongArray counts = new AtomicLongArray(SUB_BUCKETS + (64 - SUB_BUCKET_BITS) * HALF);
+    private final AtomicLong count = new AtomicLong(); /* The number of values recorded. */
+    private final AtomicLong sum = new AtomicLong(); /* The sum of the values recorded. */
+    private final AtomicLong max = new AtomicLong(); /* The largest value recorded. */
+
+    /**
+     * This function records the given latency.
+     * @param nanos The latency in nanoseconds. Negative values are recorded as zero.
+     */
+    public void record(long nanos){
+        long value = Math.max(0, nanos);
+        counts.incrementAndGet(index(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * @param value A non negative value.
+     * @return The index of the bucket holding the given value.
+     */
+    private static int index(long value){
+        if(value < SUB_BUCKETS) return (int) value;
+        int shift = 63 - Long.numberOfLeadingZeros(value) - (SUB_BUCKET_BITS - 1);
+        int mantissa = (int) (value >>> shift);
+        return SUB_BUCKETS + (shift - 1) * HALF + (mantissa - HALF);
+    }
+
+    /**
+     * @param index The index of a bucket.
+     * @return The largest value held by the given bucket.
+     */
+    private static long highestValue(int index){
+        if(index < SUB_BUCKETS) return index;
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long mantissa = (index - SUB_BUCKETS) % HALF + HALF;
+        return ((mantissa + 1) << shift) - 1;
+    }
+
+    /**
+     * This function computes the given percentile of the recorded latencies.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The latency in nanoseconds that the given percentage of recorded latencies do not exceed, or zero if
+     * nothing was recorded.
+     */
+    public long getPercentile(double percentile){
+        long total = count.get();
+        if(total == 0) return 0;
+        long rank = Math.max(1, (long) Math.ceil(total * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for(int i = 0; i < counts.length(); i++) {
+            seen += counts.get(i);
+            if(seen >= rank) return Math.min(highestValue(i), max.get());
+        }
+        return max.get();
+    }
+
+    /**
+     * @return The number of latencies recorded.
+     */
+    public long getCount(){
+        return this.count.get();
+    }
+
+    /**
+     * @return The mean of the recorded latencies in nanoseconds, or zero if nothing was recorded.
+     */
+    public double getMean(){
+        long total = count.get();
+        return total == 0 ? 0 : (double) sum.get() / total;
+    }
+
+    /**
+     * @return The largest recorded latency in nanoseconds.
+     */
+    public long getMax(){
+        return this.max.get();
+    }
+}
@@ -0,0 +1,141 @@
+package JavaTeXBench.core;
+
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXFile;
+import JavaTeX.core.TeXString;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * This class benchmarks TeXBuilder.build(TeXString) against TeXBuilder.build(TeXFile), for small and large sources, and
+ * the cost of the cleanup that removes the log and dvi files.
+ *
+ * The "engine" parameter selects the executables: "stub" runs the deterministic scripts in test/stub (override their
+ * directory with -Djavatex.stub.dir=...), which do almost no work, so the scores measure JavaTeX's own overhead (process
+ * spawn, path building, cleanup forks) and can be compared across machines without a TeX install; "tex" runs the tex and
+ * dvipdfm found on the PATH.
+ *
+ * The benchmarks need JMH 1.37: jmh-core and its dependencies jopt-simple 5.0.4 and commons-math3 3.6.1 to compile and
+ * run, and jmh-generator-annprocess to generate the harness (and the META-INF/BenchmarkList it runs from) while they
+ * are compiled. From the repository's root directory, with the jars in JMH_DIR:
+ *
+ *     JMH=$JMH_DIR/jmh-core-1.37.jar:$JMH_DIR/jopt-simple-5.0.4.jar:$JMH_DIR/commons-math3-3.6.1.jar
+ *     javac -encoding UTF-8 -d out/bench -cp $JMH -processorpath $JMH:$JMH_DIR/jmh-generator-annprocess-1.37.jar \
+ *         $(find src/JavaTeX src/JavaTeXBench -name '*.java')
+ *     java -cp out/bench:$JMH org.openjdk.jmh.Main TeXBuilderBenchmark -p engine=stub
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TeXBuilderBenchmark {
+
+    /* The number of paragraphs in a large source (~60KB, below Linux's 128KB limit on a single argument). */
+    private static final int LARGE_PARAGRAPHS = 500;
+
+    @Param({"stub", "tex"})
+    public String engine;
+
+    @Param({"small", "large"})
+    public String size;
+
+    private Path directory; /* The directory every artifact is written to. */
+    private TeXString string; /* The source as a TeXString. */
+    private TeXFile file; /* The source as a TeXFile. */
+    private TeXBuilder pdfOnly; /* Keeps only the pdf file, removing the log and dvi files. */
+    private TeXBuilder keepAll; /* Keeps the pdf, log and dvi files, so no cleanup process is run. */
+
+    /**
+     * This function creates the sources and TeXBuilders for the selected engine and size.
+     * @throws IOException If the sources could not be written.
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("javatex-bench");
+        String source = "small".equals(size) ? "Hello, World!" : largeSource();
+        string = new TeXString(source);
+        Path sourceFile = directory.resolve("source.tex");
+        Files.write(sourceFile, source.getBytes(StandardCharsets.UTF_8));
+        file = new TeXFile(sourceFile);
+
+        pdfOnly = withEngine(new TeXBuilder(false, false, true, "bench", directory.toString()));
+        keepAll = withEngine(new TeXBuilder(true, true, true, "bench-all", directory.toString()));
+
+        if(!pdfOnly.build(string)) {
+            throw new IllegalStateException("The " + engine + " engine could not build a source; is it installed?");
+        }
+    }
+
+    /**
+     * This function removes every artifact written by the benchmarks.
+     * @throws IOException If the directory could not be removed.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    /**
+     * This function benchmarks building a TeXString, passed to TeX as arguments.
+     * @param blackhole Consumes the result.
+     */
+    @Benchmark
+    public void buildTeXString(Blackhole blackhole){
+        blackhole.consume(pdfOnly.build(string));
+    }
+
+    /**
+     * This function benchmarks building a TeXFile, read by TeX from disk.
+     * @param blackhole Consumes the result.
+     */
+    @Benchmark
+    public void buildTeXFile(Blackhole blackhole){
+        blackhole.consume(pdfOnly.build(file));
+    }
+
+    /**
+     * This function benchmarks building a TeXString while keeping every artifact. The difference to buildTeXString
+     * is the cost of the cleanup (two rm processes per build).
+     * @param blackhole Consumes the result.
+     */
+    @Benchmark
+    public void buildTeXStringWithoutCleanup(Blackhole blackhole){
+        blackhole.consume(keepAll.build(string));
+    }
+
+    /**
+     * @param builder The TeXBuilder to be configured.
+     * @return The given TeXBuilder running the selected engine.
+     */
+    private TeXBuilder withEngine(TeXBuilder builder){
+        if(!"stub".equals(engine)) return builder;
+        Path stubs = Paths.get(System.getProperty("javatex.stub.dir", "test/stub")).toAbsolutePath();
+        return builder.withCommands(stubs.resolve("tex").toString(), stubs.resolve("dvipdfm").toString());
+    }
+
+    /**
+     * @return A source of LARGE_PARAGRAPHS paragraphs of plain text.
+     */
+    private static String largeSource(){
+        StringBuilder source = new StringBuilder();
+        for(int i = 0; i < LARGE_PARAGRAPHS; i++) {
+            source.append("Paragraph ").append(i).append(" of a large benchmark source, long enough to be broken ")
+                    .append("into several lines by TeX's line breaking algorithm.\\par ");
+        }
+        return source.toString();
+    }
+}
@@ -0,0 +1,360 @@
+package JavaTeXBench.core;
+
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXFile;
+import JavaTeX.core.TeXSource;
+import JavaTeX.core.TeXString;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * This class load tests TeXBuilder: it runs builds of a mix of documents at a series of load levels, records the
+ * latency of every build in a LatencyHistogram, and prints a report of the throughput and latency percentiles of each
+ * level, followed by the level at which the builder saturated. Unlike TeXBuilderBenchmark, which measures a single
+ * build at a time, it measures how many documents per second a machine sustains before its tail latency degrades.
+ *
+ * Two kinds of load are supported. In "concurrency" mode each level is a number of workers, each starting its next
+ * build as soon as the previous one ends (a closed system). In "rate" mode each level is an arrival rate in documents
+ * per second, and builds start on schedule however many are still running (an open system); their latency is measured
+ * from their scheduled start, so a backlog shows up in the percentiles instead of slowing the arrivals down.
+ *
+ * A level is saturated when its p99 latency exceeds the objective (by default three times the p99 of the first
+ * level), when more than 1% of its builds fail, or, in rate mode, when it completes less than 90% of its arrivals.
+ * Options (all optional):
+ *
+ *     --engine=stub|tex          The executables: the scripts in test/stub (see TeXBuilderBenchmark) or tex and dvipdfm.
+ *     --mode=concurrency|rate    The kind of load.
+ *     --levels=1,2,4,8           The numbers of workers, or the arrival rates, to run.
+ *     --duration=10              The seconds each level is measured for.
+ *     --warmup=2                 The seconds each level runs before it is measured.
+ *     --corpus=DIRECTORY         Adds every .tex file of the directory to the mix of documents.
+ *     --slo=MILLISECONDS         The p99 latency objective.
+ *
+ * It needs no library. For example, from the repository's root directory:
+ *
+ *     javac -encoding UTF-8 -d out/load $(find src/JavaTeX -name '*.java') \
+ *         src/JavaTeXBench/core/TeXLoadGenerator.java src/JavaTeXBench/core/LatencyHistogram.java
+ *     java -cp out/load JavaTeXBench.core.TeXLoadGenerator --engine=stub --mode=rate --levels=50,100,200
+ */
+public class TeXLoadGenerator {
+
+    /* The number of paragraphs in the large document of the mix. */
+    private static final int LARGE_PARAGRAPHS = 500;
+
+    /* The fraction of failed builds above which a level is saturated. */
+    private static final double MAX_FAILURE_RATE = 0.01;
+
+    /* The fraction of its arrival rate a level must complete in rate mode. */
+    private static final double MIN_RATE_FRACTION = 0.9;
+
+    /* A small document, a typical one page document (from TeXBuilderTest) and a large document. */
+    private static final String SMALL_SAMPLE = "Hello World";
+    private static final String COMPLEX_SAMPLE =
+            "\\hrule" +
+            "\\vskip 1in" +
+            "\\centerline{\\bf A SHORT STORY}" +
+            "\\vskip 6pt" +
+            "\\centerline{\\sl by A. U. Thor}" +
+            "\\vskip .5cm" +
+            "Once upon a time, in a distant " +
+            "galaxy called \\\"O\\\"o\\c c, " +
+            "there lived a computer " +
+            "named R.~J. Drofnats. " +
+            "\\par Mr.~Drofnats---or ‘‘R. J.,’’ as " +
+            "he preferred to be called--- " +
+            "was happiest when he was at work " +
+            "typesetting beautiful documents." +
+            "\\vskip 1in" +
+            "\\hrule" +
+            "\\vfill\\eject";
+
+    private final String engine; /* The executables builds run: "stub" or "tex". */
+    private final boolean rate; /* Is each level an arrival rate (rather than a number of workers)? */
+    private final List<Integer> levels; /* The numbers of workers, or arrival rates, to run. */
+    private final long durationNanos; /* How long each level is measured for. */
+    private final long warmupNanos; /* How long each level runs before it is measured. */
+    private final double sloMillis; /* The p99 latency objective in milliseconds, or zero to derive it. */
+    private final List<TeXSource> corpus; /* The mix of documents, built in turn. */
+    private final Path directory; /* The directory every artifact is written to. */
+    private final AtomicLong sequence = new AtomicLong(); /* Used to give every build a unique output file name. */
+
+    /**
+     * This class describes the measurements of one level.
+     */
+    private static final class Level {
+        final int level; /* The number of workers or the arrival rate. */
+        final LatencyHistogram latencies = new LatencyHistogram(); /* The latencies of successful builds. */
+        final AtomicLong failed = new AtomicLong(); /* The number of failed builds. */
+        long measuredNanos; /* How long the level was measured for. */
+
+        Level(int level){
+            this.level = level;
+        }
+
+        double getThroughput(){
+            return latencies.getCount() * 1e9 / measuredNanos;
+        }
+
+        double getFailureRate(){
+            long total = latencies.getCount() + failed.get();
+            return total == 0 ? 0 : (double) failed.get() / total;
+        }
+    }
+
+    /**
+     * Customized Constructor
+     * @param engine The executables builds run: "stub" or "tex".
+     * @param rate Is each level an arrival rate (rather than a number of workers)?
+     * @param levels The numbers of workers, or arrival rates, to run.
+     * @param duration The seconds each level is measured for.
+     * @param warmup The seconds each level runs before it is measured.
+     * @param sloMillis The p99 latency objective in milliseconds, or zero to derive it from the first level.
+     * @param corpusDirectory A directory whose .tex files are added to the mix, or null.
+     * @throws IOException If the corpus could not be listed or the output directory could not be created.
+     */
+    public TeXLoadGenerator(String engine, boolean rate, List<Integer> levels, int duration, int warmup,
+                            double sloMillis, Path corpusDirectory) throws IOException {
+        this.engine = engine;
+        this.rate = rate;
+        this.levels = levels;
+        this.durationNanos = TimeUnit.SECONDS.toNanos(Math.max(1, duration));
+        this.warmupNanos = TimeUnit.SECONDS.toNanos(Math.max(0, warmup));
+        this.sloMillis = sloMillis;
+        this.corpus = new ArrayList<>();
+        corpus.add(new TeXString(SMALL_SAMPLE));
+        corpus.add(new TeXString(COMPLEX_SAMPLE));
+        corpus.add(new TeXString(largeSource()));
+        if(corpusDirectory != null) {
+            try(Stream<Path> files = Files.list(corpusDirectory)) {
+                List<Path> sources = files.filter(file -> file.toString().endsWith(".tex")).sorted()
+                        .collect(Collectors.toList());
+                for(Path file : sources) corpus.add(new TeXFile(file));
+            }
+        }
+        this.directory = Files.createTempDirectory("javatex-load");
+    }
+
+    /**
+     * This function runs every level and prints the report.
+     * @param out Where the report is printed.
+     * @return A boolean indicating whether a level saturated.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    public boolean run(PrintStream out) throws InterruptedException {
+        if(!newBuilder().build(new TeXString(SMALL_SAMPLE))) {
+            throw new IllegalStateException("The " + engine + " engine could not build a source; is it installed?");
+        }
+        out.printf(Locale.ROOT, "JavaTeX load test: engine=%s mode=%s duration=%ds warmup=%ds corpus=%d documents%n",
+                engine, rate ? "rate" : "concurrency", TimeUnit.NANOSECONDS.toSeconds(durationNanos),
+                TimeUnit.NANOSECONDS.toSeconds(warmupNanos), corpus.size());
+        out.printf(Locale.ROOT, "%8s %10s %7s %9s %9s %9s %9s %9s%n", rate ? "docs/s" : "workers", "completed",
+                "failed", "tput/s", "p50 ms", "p95 ms", "p99 ms", "max ms");
+
+        double objective = sloMillis;
+        Level sustained = null;
+        String saturation = null;
+        for(int level : levels) {
+            Level result = rate ? runRate(level) : runConcurrency(level);
+            out.printf(Locale.ROOT, "%8d %10d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n", level,
+                    result.latencies.getCount(), result.failed.get(), result.getThroughput(),
+                    millis(result.latencies.getPercentile(50)), millis(result.latencies.getPercentile(95)),
+                    millis(result.latencies.getPercentile(99)), millis(result.latencies.getMax()));
+            if(objective <= 0) objective = 3 * millis(result.latencies.getPercentile(99));
+
+            double p99 = millis(result.latencies.getPercentile(99));
+            if(p99 > objective) {
+                saturation = String.format(Locale.ROOT, "p99 %.2f ms exceeds the %.2f ms objective", p99, objective);
+            }else if(result.getFailureRate() > MAX_FAILURE_RATE) {
+                saturation = String.format(Locale.ROOT, "%.1f%% of the builds failed", 100 * result.getFailureRate());
+            }else if(rate && result.getThroughput() < MIN_RATE_FRACTION * level) {
+                saturation = String.format(Locale.ROOT, "completed %.1f of %d docs/s", result.getThroughput(), level);
+            }
+            if(saturation != null) {
+                out.printf(Locale.ROOT, "Saturated at %d %s: %s%n", level, rate ? "docs/s" : "workers", saturation);
+                break;
+            }
+            sustained = result;
+        }
+        if(sustained != null) {
+            out.printf(Locale.ROOT, "Sustained: %d %s, %.1f docs/s with p99 %.2f ms%n", sustained.level,
+                    rate ? "docs/s" : "workers", sustained.getThroughput(),
+                    millis(sustained.latencies.getPercentile(99)));
+        }else {
+            out.println("Sustained: none of the levels");
+        }
+        return saturation != null;
+    }
+
+    /**
+     * This function runs a level of the given number of workers, each building documents one after another.
+     * @param workers The number of workers.
+     * @return The measurements of the level.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    private Level runConcurrency(int workers) throws InterruptedException {
+        Level level = new Level(workers);
+        long measureFrom = System.nanoTime() + warmupNanos;
+        long measureUntil = measureFrom + durationNanos;
+        Thread[] threads = new Thread[workers];
+        for(int i = 0; i < workers; i++) {
+            int worker = i;
+            threads[i] = new Thread(() -> {
+                for(long n = worker; System.nanoTime() < measureUntil; n += workers) {
+                    long start = System.nanoTime();
+                    BuildResult result = newBuilder().compile(corpus.get((int) (n % corpus.size())));
+                    if(start >= measureFrom) record(level, result, System.nanoTime() - start);
+                    result.deleteArtifacts();
+                }
+            }, "javatex-load-" + i);
+            threads[i].start();
+        }
+        for(Thread thread : threads) thread.join();
+        level.measuredNanos = durationNanos;
+        return level;
+    }
+
+    /**
+     * This function runs a level of the given arrival rate. Builds start on schedule, whether or not the earlier ones
+     * finished, and their latency is measured from their scheduled start.
+     * @param arrivalsPerSecond The arrival rate.
+     * @return The measurements of the level.
+     * @throws InterruptedException If the thread was interrupted.
+     */
+    private Level runRate(int arrivalsPerSecond) throws InterruptedException {
+        Level level = new Level(arrivalsPerSecond);
+        long interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, arrivalsPerSecond);
+        long start = System.nanoTime();
+        long measureFrom = start + warmupNanos;
+        long measureUntil = measureFrom + durationNanos;
+        List<CompletableFuture<Void>> builds = new ArrayList<>();
+        for(long n = 0; ; n++) {
+            long scheduled = start + n * interval;
+            if(scheduled >= measureUntil) break;
+            long delay;
+            while((delay = scheduled - System.nanoTime()) > 0) LockSupport.parkNanos(delay);
+            if(Thread.interrupted()) throw new InterruptedException();
+            builds.add(newBuilder().compileAsync(corpus.get((int) (n % corpus.size()))).thenAccept(result -> {
+                if(scheduled >= measureFrom) record(level, result, System.nanoTime() - scheduled);
+                result.deleteArtifacts();
+            }));
+        }
+        /* Builds still running when the level ends are measured, so a backlog raises the tail. */
+        CompletableFuture.allOf(builds.toArray(new CompletableFuture<?>[0])).join();
+        level.measuredNanos = Math.max(durationNanos, System.nanoTime() - measureFrom);
+        return level;
+    }
+
+    /**
+     * This function records the outcome of a build in the given level.
+     * @param level The level the build belongs to.
+     * @param result The BuildResult describing the build.
+     * @param nanos The latency of the build.
+     */
+    private static void record(Level level, BuildResult result, long nanos){
+        if(result.isSuccessful()) level.latencies.record(nanos);
+        else level.failed.incrementAndGet();
+    }
+
+    /**
+     * @return A TeXBuilder writing to an output file name of its own, running the selected engine.
+     */
+    private TeXBuilder newBuilder(){
+        TeXBuilder builder = new TeXBuilder(false, false, true, "load-" + sequence.getAndIncrement(),
+                directory.toString());
+        if(!"stub".equals(engine)) return builder;
+        Path stubs = Paths.get(System.getProperty("javatex.stub.dir", "test/stub")).toAbsolutePath();
+        return builder.withCommands(stubs.resolve("tex").toString(), stubs.resolve("dvipdfm").toString());
+    }
+
+    /**
+     * This function removes every artifact written by the load test.
+     */
+    public void close(){
+        try(Stream<Path> paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }catch(IOException e){
+            /* The directory only holds artifacts of the load test, leave it behind. */
+        }
+    }
+
+    /**
+     * @param nanos A duration in nanoseconds.
+     * @return The duration in milliseconds.
+     */
+    private static double millis(long nanos){
+        return nanos / 1e6;
+    }
+
+    /**
+     * @return A source of LARGE_PARAGRAPHS paragraphs of plain text.
+     */
+    private static String largeSource(){
+        StringBuilder source = new StringBuilder();
+        for(int i = 0; i < LARGE_PARAGRAPHS; i++) {
+            source.append("Paragraph ").append(i).append(" of a large benchmark source, long enough to be broken ")
+                    .append("into several lines by TeX's line breaking algorithm.\\par ");
+        }
+        return source.toString();
+    }
+
+    /**
+     * This function runs the load test described by the given options (see the class description) and exits with 1
+     * if a level saturated.
+     * @param args The options.
+     * @throws Exception If the load test could not be run.
+     */
+    public static void main(String[] args) throws Exception {
+        String engine = "stub";
+        String mode = "concurrency";
+        List<Integer> levels = new ArrayList<>(List.of(1, 2, 4, 8));
+        int duration = 10;
+        int warmup = 2;
+        double slo = 0;
+        Path corpus = null;
+        for(String arg : args) {
+            int separator = arg.indexOf('=');
+            if(!arg.startsWith("--") || separator < 0) throw new IllegalArgumentException("Unknown option: " + arg);
+            String value = arg.substring(separator + 1);
+            switch(arg.substring(2, separator)) {
+                case "engine": engine = value; break;
+                case "mode": mode = value; break;
+                case "levels":
+                    levels.clear();
+                    for(String level : value.split(",")) levels.add(Integer.parseInt(level.trim()));
+                    break;
+                case "duration": duration = Integer.parseInt(value); break;
+                case "warmup": warmup = Integer.parseInt(value); break;
+                case "slo": slo = Double.parseDouble(value); break;
+                case "corpus": corpus = Paths.get(value); break;
+                default: throw new IllegalArgumentException("Unknown option: " + arg);
+            }
+        }
+        if(!mode.equals("concurrency") && !mode.equals("rate")) throw new IllegalArgumentException("Unknown mode: " + mode);
+
+        TeXLoadGenerator generator = new TeXLoadGenerator(engine, mode.equals("rate"), levels, duration, warmup, slo,
+                corpus);
+        boolean saturated;
+        try {
+            saturated = generator.run(System.out);
+        }finally{
+            generator.close();
+        }
+        if(saturated) System.exit(1);
+    }
+}
@@ -0,0 +1,112 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.PdfMerger;
+import org.junit.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This class is used to test the PdfMerger class, using the pdf files of test/expected, which dvipdfm writes with
+ * cross-reference and object streams.
+ */
+public class PdfMergerTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+    private static final String expectedDir = TestSetup.EXPECTED_OUTPUT_DIRECTORY_NAME;
+
+    /**
+     * This function is called before any PdfMerger test cases are ran. It verifies that the testing environment is
+     * setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+    }
+
+    /**
+     * This function tests PdfMerger.merge(List, Path).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void merge() throws Exception {
+        merge1();
+        merge2();
+        merge3();
+    }
+
+    /**
+     * This function tests that the pages of every input are written, in order, to a file that can itself be merged.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void merge1() throws Exception {
+        /* Create Test Fixtures. */
+        Path first = Paths.get(expectedDir, "buildTexStringTest1.pdf");
+        Path second = Paths.get(expectedDir, "buildTexStringTest2.pdf");
+        Path merged = Paths.get(outputDir, "merged.pdf");
+        Path twice = Paths.get(outputDir, "twice.pdf");
+
+        assertEquals(2, PdfMerger.merge(Arrays.asList(first, second), merged));
+        assertEquals(4, PdfMerger.merge(Arrays.asList(merged, merged), twice));
+
+        /* The merged file has a plain cross-reference table whose offsets point at their objects. */
+        String text = new String(Files.readAllBytes(twice), StandardCharsets.ISO_8859_1);
+        int xref = Integer.parseInt(text.substring(text.lastIndexOf("startxref") + 9).trim().split("\\s+")[0]);
+        assertTrue(text.startsWith("xref", xref));
+        String[] lines = text.substring(xref).split("\n");
+        int size = Integer.parseInt(lines[1].split(" ")[1]);
+        for(int i = 1; i < size; i++) {
+            int offset = Integer.parseInt(lines[2 + i].substring(0, 10));
+            assertTrue(text.startsWith(i + " 0 obj", offset));
+        }
+        assertTrue(Files.deleteIfExists(merged));
+        assertTrue(Files.deleteIfExists(twice));
+    }
+
+    /**
+     * This function tests that a file whose cross-reference data is damaged is recovered by scanning its objects.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void merge2() throws Exception {
+        /* Create Test Fixtures. */
+        byte[] data = Files.readAllBytes(Paths.get(expectedDir, "buildTexFileTest1.pdf"));
+        String text = new String(data, StandardCharsets.ISO_8859_1);
+        int startxref = text.lastIndexOf("startxref") + 10;
+        Arrays.fill(data, startxref, startxref + 4, (byte) '9');
+        Path damaged = Paths.get(outputDir, "damaged.pdf");
+        Files.write(damaged, data);
+        Path merged = Paths.get(outputDir, "recovered.pdf");
+
+        assertEquals(1, PdfMerger.merge(Collections.singletonList(damaged), merged));
+        assertTrue(Files.deleteIfExists(damaged));
+        assertTrue(Files.deleteIfExists(merged));
+    }
+
+    /**
+     * This function tests that a file that is not a pdf file is refused.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void merge3() throws Exception {
+        /* Create Test Fixtures. */
+        Path input = Paths.get(outputDir, "notapdf.pdf");
+        Files.write(input, "Hello World".getBytes(StandardCharsets.UTF_8));
+
+        try {
+            PdfMerger.merge(Collections.singletonList(input), Paths.get(outputDir, "never.pdf"));
+            fail("A file that is not a pdf file was merged.");
+        }catch(IOException e){
+            assertTrue(e.getMessage().contains("notapdf.pdf"));
+        }
+        assertTrue(Files.deleteIfExists(input));
+    }
+
+}
@@ -0,0 +1,94 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.TeXBuildProcessor;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXSource;
+import JavaTeX.core.TeXString;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is used to test the TeXBuildProcessor class.
+ */
+public class TeXBuildProcessorTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+
+    /**
+     * This function is called before any TeXBuildProcessor test cases are ran. It verifies that the testing
+     * environment is setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+    }
+
+    /**
+     * This function tests that the builds running follow the subscriber's demand.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void subscribe() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "reactive", outputDir);
+        TeXBuildProcessor processor = new TeXBuildProcessor(builder, 4);
+        List<BuildResult> results = new ArrayList<>();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        /* A subscriber asking for one result at a time. */
+        processor.subscribe(new Flow.Subscriber<BuildResult>() {
+            private Flow.Subscription subscription;
+
+            @Override
+            public void onSubscribe(Flow.Subscription subscription){
+                this.subscription = subscription;
+                subscription.request(1);
+            }
+
+            @Override
+            public void onNext(BuildResult result){
+                maxRunning.accumulateAndGet(processor.getRunning(), Math::max);
+                results.add(result);
+                subscription.request(1);
+            }
+
+            @Override
+            public void onError(Throwable throwable){
+                done.completeExceptionally(throwable);
+            }
+
+            @Override
+            public void onComplete(){
+                done.complete(null);
+            }
+        });
+
+        try(SubmissionPublisher<TeXSource> publisher = new SubmissionPublisher<>()) {
+            publisher.subscribe(processor);
+            for(int i = 0; i < 5; i++) publisher.submit(new TeXString("Job " + i));
+        }
+        done.get(60, TimeUnit.SECONDS);
+
+        /* Every source was built to its own output file name, never more than one at once. */
+        assertEquals(5, results.size());
+        assertTrue(maxRunning.get() <= 1);
+        for(BuildResult result : results) {
+            assertTrue(result.isSuccessful());
+            assertTrue(result.getOutputFileName().startsWith("reactive-"));
+            assertTrue(result.deleteArtifacts());
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.Artifact;
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.BuildStage;
+import JavaTeX.core.BuildStatus;
+import JavaTeX.core.TeXBuildClient;
+import JavaTeX.core.TeXBuildServer;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXString;
+import org.junit.*;
+
+import java.io.File;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is used to test the TeXBuildServer and TeXBuildClient classes on the loopback address.
+ */
+public class TeXBuildServerTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+    private static final String serverDir = outputDir + "server/";
+
+    /**
+     * This function is called before any TeXBuildServer test cases are ran. It verifies that the testing environment
+     * is setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+        new File(serverDir).mkdirs();
+    }
+
+    /**
+     * This function tests TeXBuildClient.compile(TeXString).
+     */
+    @Test
+    public void compile() throws Exception {
+        compile1();
+        compile2();
+    }
+
+    /**
+     * This function tests that a build on the server writes its artifacts locally and leaves none on the server.
+     */
+    private void compile1() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "unused", serverDir);
+
+        try(TeXBuildServer server = new TeXBuildServer(builder, 2, 4).start()) {
+            TeXBuildClient client = new TeXBuildClient(server.getURI(), true, false, true, "remote", outputDir);
+            BuildResult result = client.compile(new TeXString("Hello World"));
+
+            assertTrue(result.getOutput(), result.isSuccessful());
+            assertTrue(result.hasArtifact(Artifact.PDF));
+            assertTrue(result.hasArtifact(Artifact.LOG));
+            assertTrue(new File(outputDir + "remote.pdf").isFile());
+            assertEquals(new File(outputDir + "remote.pdf").length(), result.getSize(Artifact.PDF));
+            assertTrue(result.getStageTiming(BuildStage.TYPESET) != null);
+            assertTrue(result.deleteArtifacts());
+        }
+        assertEquals(0, new File(serverDir).list().length);
+    }
+
+    /**
+     * This function tests that concurrent builds are queued, and that diagnostics and failures reach the client.
+     */
+    private void compile2() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "unused", serverDir);
+
+        TeXBuildServer server = new TeXBuildServer(builder, 1, 4).start();
+        try {
+            TeXBuildClient client = new TeXBuildClient(server.getURI(), false, false, true, "remote", outputDir);
+            CompletableFuture<BuildResult> first = client.withOutputFileName("first")
+                    .compileAsync(new TeXString("First"));
+            CompletableFuture<BuildResult> second = client.withOutputFileName("second")
+                    .compileAsync(new TeXString("Some valid TeX followed by an invalid command ( \\invCMD )."));
+
+            assertTrue(first.get().isSuccessful());
+            assertTrue(first.get().deleteArtifacts());
+            assertFalse(second.get().isSuccessful());
+            assertEquals("Undefined control sequence.", second.get().getDiagnostics().get(0).getMessage());
+
+            /* A diagnostic without context survives the trip, rather than failing the client. */
+            BuildResult runaway = client.withOutputFileName("runaway")
+                    .compile(new TeXString("\\def\\foo#1{#1}\\foo{abc\\par"));
+            assertFalse(runaway.isSuccessful());
+            assertEquals(BuildStatus.FAILED, runaway.getStatus());
+            assertEquals("Paragraph ended before \\foo was complete.", runaway.getDiagnostics().get(0).getMessage());
+            assertEquals("", runaway.getDiagnostics().get(0).getContext());
+        }finally{
+            server.close();
+        }
+        assertEquals(3, server.getCompletedJobs());
+        assertEquals(0, server.getRejectedJobs());
+
+        /* A server that is not running fails the build rather than throwing. */
+        TeXBuildClient client = new TeXBuildClient(URI.create("http://127.0.0.1:1"));
+        assertEquals(BuildStatus.FAILED, client.compile(new TeXString("Unreachable")).getStatus());
+    }
+
+}
@@ -1,15 +1,54 @@
 package JavaTeXTest.core;
 
+import JavaTeX.core.Artifact;
+import JavaTeX.core.BatchResult;
+import JavaTeX.core.BuildCache;
+import JavaTeX.core.BuildCoalescer;
+import JavaTeX.core.BuildListener;
+import JavaTeX.core.BuildPriority;
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.BuildScheduler;
+import JavaTeX.core.BuildStage;
+import JavaTeX.core.BuildStatus;
+import JavaTeX.core.ProcessLimiter;
+import JavaTeX.core.ResourceLimits;
+import JavaTeX.core.StageTiming;
 import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXDiagnostic;
+import JavaTeX.core.TeXEngine;
 import JavaTeX.core.TeXFile;
+import JavaTeX.core.TeXFormat;
+import JavaTeX.core.TeXProcessPool;
+import JavaTeX.core.TeXSource;
+import JavaTeX.core.TeXStream;
 import JavaTeX.core.TeXString;
 import org.junit.*;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.PrintWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
@@ -44,6 +83,9 @@ public class TeXBuilderTest {
             "\\vfill\\eject";
     private static final String invalidTeXSample =
             "Some valid TeX followed by an invalid command ( \\invCMD ). And finally more content";
+    private static final String loopingTeXSample = "\\def\\a{\\a}\\a";
+    private static final String slowTeXSample =
+            "\\count1=0 \\loop\\advance\\count1 by 1 \\ifnum\\count1<2000000 \\repeat Slow";
     private static final String simpleTeXFile = outputDir + "simple.tex";
     private static final String complexTeXFile = outputDir + "complex.tex";
     private static final String invalidTeXFile = outputDir + "invalid.tex";
@@ -497,4 +539,813 @@ public class TeXBuilderTest {
         assertFalse(builder3.build(invalidFile));
     }
 
-}
\ No newline at end of file
+    /**
+     * This function tests TeXBuilder.buildAsync(TeXString) and TeXBuilder.buildAsync(TeXFile).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildAsync() throws Exception {
+        buildAsync1();
+        buildAsync2();
+    }
+
+    /**
+     * This function tests: Concurrent asynchronous builds with distinct output names all complete and generate pdfs.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildAsync1() throws Exception {
+        /* Create Test Fixtures. */
+        ProcessLimiter limiter = new ProcessLimiter(2);
+        TeXString testString = new TeXString(simpleTeXSample);
+        int count = 4;
+        CompletableFuture<?>[] futures = new CompletableFuture<?>[count];
+        File[] PDFFiles = new File[count];
+
+        /* Start every build before waiting on any of them. */
+        for(int i = 0; i < count; i++){
+            String name = "async" + i;
+            TeXBuilder builder = new TeXBuilder(false, false, true, name, outputDir).withProcessLimiter(limiter);
+            PDFFiles[i] = new File(outputDir + name + ".pdf");
+            assertFalse(PDFFiles[i].exists());
+            futures[i] = builder.buildAsync(testString);
+        }
+
+        /* Verify that every build succeeded, then clean up. */
+        for(int i = 0; i < count; i++){
+            assertTrue((Boolean) futures[i].get());
+            assertTrue(PDFFiles[i].exists());
+            assertTrue(PDFFiles[i].delete());
+        }
+        assertEquals(0, limiter.getActiveProcesses());
+    }
+
+    /**
+     * This function tests: Asynchronous builds run on a given executor and report failures through the future.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildAsync2() throws Exception {
+        /* Create Test Fixtures. */
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        TeXBuilder builder = new TeXBuilder(false, false, false, null, outputDir).withExecutor(executor);
+
+        /* Assert that an invalid source and a missing file both fail. */
+        assertFalse(builder.buildAsync(new TeXString(invalidTeXSample)).get());
+        assertFalse(builder.buildAsync((TeXFile) null).get());
+
+        executor.shutdown();
+    }
+
+    /**
+     * This function tests TeXBuilder.buildAll(Collection).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildAll() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "batch", outputDir);
+        List<TeXSource> sources = Arrays.asList(
+                new TeXString(simpleTeXSample),
+                new TeXString(invalidTeXSample),
+                new TeXString(complexTeXSample),
+                null);
+
+        /* Build the batch and verify the per-item results are reported in input order. */
+        BatchResult result = builder.buildAll(sources, 2);
+        assertEquals(4, result.size());
+        assertEquals(Arrays.asList(true, false, true, false), result.getResults());
+        assertEquals(2, result.getSuccessCount());
+        assertEquals(2, result.getFailureCount());
+        assertTrue(result.getThroughput() > 0);
+
+        /* Verify that each item used its own output file name, then clean up. */
+        for(int i = 0; i < result.size(); i++){
+            assertEquals("batch-" + i, result.getOutputFileName(i));
+            File PDFFile = new File(outputDir + result.getOutputFileName(i) + ".pdf");
+            if(result.isSuccessful(i)) {
+                assertTrue(PDFFile.exists());
+                assertTrue(PDFFile.delete());
+            }
+        }
+        new File(outputDir + "batch-1.pdf").delete();
+    }
+
+    /**
+     * This function tests TeXBuilder.withCache(BuildCache).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithCache() throws Exception {
+        buildWithCache1();
+        buildWithCache2();
+        buildWithCache3();
+        buildWithCache4();
+    }
+
+    /**
+     * This function tests: A repeated build is restored from the cache, and a change of source or options misses.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithCache1() throws Exception {
+        /* Create Test Fixtures. */
+        BuildCache cache = new BuildCache(Paths.get(outputDir, "cache1"), 1 << 20);
+        TeXBuilder builder = new TeXBuilder(false, false, true, "cached", outputDir).withCache(cache);
+        TeXBuilder builderWithLog = new TeXBuilder(true, false, true, "cached", outputDir).withCache(cache);
+        File PDFFile = new File(outputDir + "cached.pdf");
+        File LogFile = new File(outputDir + "cached.log");
+
+        /* The first build misses and is stored. */
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(1, cache.getEntryCount());
+        assertTrue(PDFFile.delete());
+
+        /* The second build of the same source is restored from the cache. */
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertEquals(1, cache.getHits());
+        assertTrue(PDFFile.exists());
+
+        /* A different source or different options miss. */
+        assertTrue(builder.build(new TeXString(complexTeXSample)));
+        assertTrue(builderWithLog.build(new TeXString(simpleTeXSample)));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getMisses());
+        assertEquals(3, cache.getEntryCount());
+        assertTrue(LogFile.delete());
+
+        /* Failed builds are never stored. */
+        assertFalse(builder.build(new TeXString(invalidTeXSample)));
+        assertFalse(builder.build(new TeXString(invalidTeXSample)));
+        assertEquals(1, cache.getHits());
+        assertEquals(3, cache.getEntryCount());
+
+        /* Clean up. */
+        cache.clear();
+        assertEquals(0, cache.getEntryCount());
+        assertTrue(PDFFile.delete());
+    }
+
+    /**
+     * This function tests: Entries larger than the cache are never stored.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithCache2() throws Exception {
+        /* Create Test Fixtures. */
+        BuildCache cache = new BuildCache(Paths.get(outputDir, "cache2"), 0);
+        TeXBuilder builder = new TeXBuilder(false, false, true, "cached", outputDir).withCache(cache);
+        File PDFFile = new File(outputDir + "cached.pdf");
+
+        /* Both builds miss. */
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(0, cache.getEntryCount());
+
+        /* Clean up. */
+        assertTrue(PDFFile.delete());
+    }
+
+    /**
+     * This function tests: Builds of the same source with different maximum numbers of passes do not share an entry.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithCache3() throws Exception {
+        /* Create Test Fixtures. */
+        BuildCache cache = new BuildCache(Paths.get(outputDir, "cache3"), 1 << 20);
+        TeXBuilder singlePass = new TeXBuilder(false, false, true, "cached", outputDir).withCache(cache);
+        TeXBuilder multiPass = singlePass.withMaxPasses(3);
+        String source = "\\newcount\\n \\openin1=\\jobname.aux \\ifeof1 \\else\\closein1 \\input\\jobname.aux \\fi "
+                + "\\advance\\n by 1 \\immediate\\openout2=\\jobname.aux \\immediate\\write2{\\n=\\the\\n}"
+                + "\\immediate\\closeout2 Pass \\the\\n";
+
+        /* The single pass result is not served to the multi pass builder. */
+        BuildResult result = singlePass.compile(new TeXString(source));
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getPasses());
+        result = multiPass.compile(new TeXString(source));
+        assertTrue(result.isSuccessful());
+        assertFalse(result.isCached());
+        assertEquals(3, result.getPasses());
+        assertEquals(0, cache.getHits());
+        assertEquals(2, cache.getEntryCount());
+
+        /* Each builder is then restored from its own entry. */
+        assertTrue(multiPass.compile(new TeXString(source)).isCached());
+        assertTrue(singlePass.compile(new TeXString(source)).isCached());
+        assertEquals(2, cache.getHits());
+
+        /* Clean up. */
+        cache.clear();
+        assertTrue(new File(outputDir + "cached.pdf").delete());
+        new File(outputDir + "cached.aux").delete();
+    }
+
+    /**
+     * This function tests: A hard linked restore replaces an existing artifact, without leaving temporary files.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithCache4() throws Exception {
+        /* Create Test Fixtures. */
+        BuildCache cache = new BuildCache(Paths.get(outputDir, "cache4"), 1 << 20, true);
+        TeXBuilder builder = new TeXBuilder(false, false, true, "linked", outputDir).withCache(cache);
+        Path PDFFile = Paths.get(outputDir, "linked.pdf");
+
+        /* The restored artifact is linked to the stored one, in place of the existing artifact. */
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertTrue(builder.build(new TeXString(simpleTeXSample)));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, ((Number) Files.getAttribute(PDFFile, "unix:nlink")).intValue());
+        try(Stream<Path> files = Files.list(Paths.get(outputDir))) {
+            assertEquals(0, files.filter(file -> file.getFileName().toString().endsWith(".tmp")).count());
+        }
+
+        /* Clean up. */
+        cache.clear();
+        assertTrue(PDFFile.toFile().delete());
+    }
+
+    /**
+     * This function tests TeXBuilder.compile(TeXString) and the artifacts exposed by BuildResult.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void compile() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(true, false, true, "compiled", outputDir);
+        File PDFFile = new File(outputDir + "compiled.pdf");
+        File LogFile = new File(outputDir + "compiled.log");
+
+        /* Build and verify the result describes the kept artifacts. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.hasArtifact(Artifact.PDF));
+        assertTrue(result.hasArtifact(Artifact.LOG));
+        assertFalse(result.hasArtifact(Artifact.DVI));
+        assertEquals(PDFFile.toPath(), result.getPath(Artifact.PDF));
+
+        /* Verify that reading and transferring the pdf both yield the file's contents. */
+        byte[] expected = Files.readAllBytes(PDFFile.toPath());
+        ByteBuffer buffer = result.read(Artifact.PDF);
+        byte[] read = new byte[buffer.remaining()];
+        buffer.get(read);
+        assertArrayEquals(expected, read);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(expected.length, result.transferTo(Artifact.PDF, Channels.newChannel(out)));
+        assertArrayEquals(expected, out.toByteArray());
+
+        /* Clean up through the result, and verify that the artifacts were removed. */
+        assertTrue(result.deleteArtifacts());
+        assertFalse(PDFFile.exists());
+        assertFalse(LogFile.exists());
+
+        /* A source that can not be built reports failure. */
+        assertFalse(builder.compile((TeXString) null).isSuccessful());
+    }
+
+    /**
+     * This function tests TeXBuilder.withListener(BuildListener) and the timings recorded in a BuildResult.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void compileWithListener() throws Exception {
+        /* Create Test Fixtures. */
+        List<StageTiming> stages = new ArrayList<>();
+        List<BuildResult> results = new ArrayList<>();
+        TeXBuilder builder = new TeXBuilder(false, false, true, "timed", outputDir).withListener(new BuildListener() {
+            @Override
+            public void stageFinished(String outputFileName, StageTiming timing){
+                assertEquals("timed", outputFileName);
+                stages.add(timing);
+            }
+
+            @Override
+            public void buildFinished(BuildResult result){
+                results.add(result);
+            }
+        });
+
+        /* Build and verify that every stage was timed, once per process. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertEquals(Arrays.asList(BuildStage.TYPESET, BuildStage.CONVERT, BuildStage.CLEANUP, BuildStage.CLEANUP),
+                stages.stream().map(StageTiming::getStage).collect(Collectors.toList()));
+        assertEquals(Arrays.asList(result), results);
+        for(StageTiming timing : result.getStageTimings()) {
+            assertEquals(0, timing.getExitCode());
+            assertTrue(timing.getWallNanos() > 0);
+            assertTrue(timing.getWallNanos() <= result.getWallNanos());
+        }
+        assertEquals(2, result.getStageTiming(BuildStage.CLEANUP).getProcesses());
+
+        /* Verify the recorded page count and sizes, including the dvi file that was not kept. */
+        assertEquals(1, result.getPageCount());
+        assertEquals(Files.size(result.getPath(Artifact.PDF)), result.getSize(Artifact.PDF));
+        assertTrue(result.getSize(Artifact.DVI) > 0);
+        assertTrue(result.deleteArtifacts());
+    }
+
+    /**
+     * This function tests TeXBuilder.withFormat(TeXFormat).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithFormat() throws Exception {
+        /* Create Test Fixtures. */
+        TeXFormat format = new TeXFormat("\\def\\greeting{Hello, World!}", Paths.get(outputDir, "formats"));
+        TeXBuilder builder = new TeXBuilder(false, false, true, "formatted", outputDir).withFormat(format);
+
+        /* The first build dumps the preamble, and the source can use its macros. */
+        assertFalse(format.isDumped(TeXBuilder.DEFAULT_TEX_COMMAND));
+        BuildResult first = builder.compile(new TeXString("\\greeting"));
+        assertTrue(first.isSuccessful());
+        assertTrue(format.isDumped(TeXBuilder.DEFAULT_TEX_COMMAND));
+        assertEquals(0, first.getStageTiming(BuildStage.FORMAT).getExitCode());
+
+        /* Later builds, even of other TeXFormats with the same preamble, start from the dumped format. */
+        TeXFormat same = new TeXFormat("\\def\\greeting{Hello, World!}", Paths.get(outputDir, "formats"));
+        BuildResult second = builder.withFormat(same).compile(new TeXString("\\greeting again"));
+        assertTrue(second.isSuccessful());
+        assertEquals(null, second.getStageTiming(BuildStage.FORMAT));
+        assertTrue(second.deleteArtifacts());
+    }
+
+    /**
+     * This function tests TeXBuilder.withMaxPasses(int).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithMaxPasses() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "multipass", outputDir).withMaxPasses(3);
+        String stableSample = "\\newwrite\\out \\immediate\\openout\\out=\\jobname.aux "
+                + "\\immediate\\write\\out{\\relax}\\immediate\\closeout\\out Stable";
+        String changingSample = "\\newcount\\n \\openin1=\\jobname.aux \\ifeof1 \\else\\closein1 \\input\\jobname.aux \\fi "
+                + "\\advance\\n by 1 \\immediate\\openout2=\\jobname.aux \\immediate\\write2{\\n=\\the\\n}"
+                + "\\immediate\\closeout2 Pass \\the\\n";
+
+        /* The auxiliary file is created by the first pass, and unchanged by the second. */
+        BuildResult result = builder.compile(new TeXString(stableSample));
+        assertTrue(result.isSuccessful());
+        assertEquals(2, result.getPasses());
+        assertEquals(1, result.getStageTiming(BuildStage.CONVERT).getProcesses());
+
+        /* Rebuilding leaves the auxiliary file unchanged, so one pass is enough. */
+        assertEquals(1, builder.compile(new TeXString(stableSample)).getPasses());
+
+        /* A document whose auxiliary file never settles stops at the maximum. */
+        builder = new TeXBuilder(false, false, true, "multipass-changing", outputDir).withMaxPasses(3);
+        result = builder.compile(new TeXString(changingSample));
+        assertTrue(result.isSuccessful());
+        assertEquals(3, result.getPasses());
+    }
+
+    /**
+     * This function tests TeXBuilder.withFailFast(boolean) and the diagnostics recorded in a BuildResult.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithFailFast() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "failfast", outputDir);
+        File PDFFile = new File(outputDir + "failfast.pdf");
+
+        /* By default TeX typesets past the error and the dvi file is still converted. */
+        BuildResult result = builder.compile(new TeXString(invalidTeXSample));
+        assertFalse(result.isSuccessful());
+        assertEquals(1, result.getDiagnostics().size());
+        TeXDiagnostic diagnostic = result.getDiagnostics().get(0);
+        assertEquals("Undefined control sequence.", diagnostic.getMessage());
+        assertTrue(diagnostic.getContext().endsWith("\\invCMD"));
+        assertTrue(result.getStageTiming(BuildStage.CONVERT) != null);
+        assertTrue(PDFFile.delete());
+
+        /* Failing fast kills TeX at the error and skips the conversion and cleanup processes. */
+        result = builder.withFailFast(true).compile(new TeXString(invalidTeXSample));
+        assertEquals(BuildStatus.FAILED, result.getStatus());
+        assertEquals("Undefined control sequence.", result.getDiagnostics().get(0).getMessage());
+        assertEquals(-1, result.getStageTiming(BuildStage.TYPESET).getExitCode());
+        assertEquals(null, result.getStageTiming(BuildStage.CONVERT));
+        assertEquals(null, result.getStageTiming(BuildStage.CLEANUP));
+        assertFalse(PDFFile.exists());
+        assertFalse(new File(outputDir + "failfast.dvi").exists());
+
+        /* A valid source is unaffected. */
+        result = builder.withFailFast(true).compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getDiagnostics().isEmpty());
+        assertTrue(result.deleteArtifacts());
+    }
+
+    /**
+     * This function tests TeXBuilder.withCoalescer(BuildCoalescer).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithCoalescer() throws Exception {
+        /* Create Test Fixtures. */
+        BuildCoalescer coalescer = new BuildCoalescer();
+        TeXBuilder builder = new TeXBuilder(false, false, true, "coalesced", outputDir).withCoalescer(coalescer);
+
+        /* Concurrent builds of the same source share a single build and its result. */
+        List<CompletableFuture<BuildResult>> futures = new ArrayList<>();
+        for(int i = 0; i < 4; i++) futures.add(builder.compileAsync(new TeXString(slowTeXSample)));
+
+        /* A caller that gives up waiting times out alone. */
+        BuildResult timedOut = builder.withTimeout(100, TimeUnit.MILLISECONDS).compile(new TeXString(slowTeXSample));
+        assertEquals(BuildStatus.TIMED_OUT, timedOut.getStatus());
+
+        BuildResult result = futures.get(0).get();
+        assertTrue(result.isSuccessful());
+        for(CompletableFuture<BuildResult> future : futures) assertTrue(future.get() == result);
+        assertEquals(1, coalescer.getLeaders());
+        assertEquals(4, coalescer.getFollowers());
+        assertEquals(0, coalescer.getInFlight());
+        assertTrue(result.deleteArtifacts());
+
+        /* A leader with a short timeout times out alone; the build goes on for a follower without a timeout. */
+        CompletableFuture<BuildResult> leader = builder.withTimeout(100, TimeUnit.MILLISECONDS)
+                .compileAsync(new TeXString(slowTeXSample));
+        CompletableFuture<BuildResult> follower = builder.compileAsync(new TeXString(slowTeXSample));
+        assertEquals(BuildStatus.TIMED_OUT, leader.get().getStatus());
+        result = follower.get();
+        assertTrue(result.getOutput(), result.isSuccessful());
+        assertEquals(2, coalescer.getLeaders());
+        assertEquals(5, coalescer.getFollowers());
+        assertTrue(result.deleteArtifacts());
+    }
+
+    /**
+     * This function tests TeXBuilder.withScratchDirectory(Path).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithScratchDirectory() throws Exception {
+        /* Create Test Fixtures. */
+        Path scratch = Paths.get(outputDir, "scratch");
+        TeXBuilder builder = new TeXBuilder(true, false, true, "scratched", outputDir).withScratchDirectory(scratch);
+
+        /* Only the kept artifacts are published, and the build's directory is removed without a cleanup process. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.hasArtifact(Artifact.PDF));
+        assertTrue(result.hasArtifact(Artifact.LOG));
+        assertFalse(new File(outputDir + "scratched.dvi").exists());
+        assertEquals(0, result.getStageTiming(BuildStage.CLEANUP).getProcesses());
+        try(Stream<Path> left = Files.list(scratch)) {
+            assertEquals(0, left.count());
+        }
+
+        /* Rebuilding replaces the published artifacts. */
+        assertTrue(builder.compile(new TeXString(complexTeXSample)).isSuccessful());
+        assertTrue(result.deleteArtifacts());
+    }
+
+    /**
+     * This function tests TeXBuilder.withEngine(TeXEngine).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithEngine() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "direct", outputDir).withEngine(TeXEngine.PDFTEX);
+
+        /* A build that only keeps the pdf file is typeset straight to pdf, without a dvi file or a conversion. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.getOutput(), result.isSuccessful());
+        assertTrue(result.hasArtifact(Artifact.PDF));
+        assertTrue(result.getStageTiming(BuildStage.CONVERT) == null);
+        assertEquals(1, result.getStageTiming(BuildStage.CLEANUP).getProcesses());
+        assertFalse(new File(outputDir + "direct.dvi").exists());
+        assertTrue(result.deleteArtifacts());
+
+        /* A build that keeps the dvi file is typeset to dvi and converted. */
+        builder = new TeXBuilder(false, true, true, "converted", outputDir).withEngine(TeXEngine.PDFTEX);
+        result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.hasArtifact(Artifact.DVI));
+        assertTrue(result.getStageTiming(BuildStage.CONVERT) != null);
+        assertTrue(result.deleteArtifacts());
+
+        /* LuaTeX selects its output like pdftex. */
+        builder = new TeXBuilder(false, true, true, "converted", outputDir).withEngine(TeXEngine.LUATEX);
+        result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.getStageTiming(BuildStage.CONVERT) != null);
+        assertTrue(result.deleteArtifacts());
+
+        /* XeTeX only writes pdf files, so a build keeping the dvi file fails without typesetting. */
+        builder = new TeXBuilder(false, false, true, "direct", outputDir).withEngine(TeXEngine.XETEX);
+        result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.getOutput(), result.isSuccessful());
+        assertTrue(result.getStageTiming(BuildStage.CONVERT) == null);
+        assertTrue(result.deleteArtifacts());
+        builder = new TeXBuilder(false, true, true, "xdv", outputDir).withEngine(TeXEngine.XETEX);
+        result = builder.compile(new TeXString(simpleTeXSample));
+        assertEquals(BuildStatus.FAILED, result.getStatus());
+        assertTrue(result.getOutput().contains("can not write the dvi file"));
+        assertTrue(result.getStageTiming(BuildStage.TYPESET) == null);
+    }
+
+    /**
+     * This function tests TeXBuilder.withLimits(ResourceLimits).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithLimits() throws Exception {
+        /* Create Test Fixtures. */
+        ResourceLimits limits = ResourceLimits.NONE.withMaxCpuTime(1, TimeUnit.MINUTES)
+                .withEngineSetting("extra_mem_top", "1000000");
+        TeXBuilder builder = new TeXBuilder(true, true, true, "limited", outputDir).withLimits(limits);
+
+        /* A build within its limits succeeds. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertTrue(result.getOutput(), result.isSuccessful());
+        assertTrue(result.deleteArtifacts());
+
+        /* A build writing a file larger than allowed is killed, and the file is removed. */
+        result = builder.withLimits(limits.withMaxFileSize(8)).compile(new TeXString(complexTeXSample));
+        assertEquals(BuildStatus.LIMIT_EXCEEDED, result.getStatus());
+        assertTrue(result.getOutput().contains("exceeds the limit of 8 bytes"));
+        assertFalse(new File(outputDir + "limited.dvi").exists());
+        result.deleteArtifacts();
+
+        /* The file size limit also applies to builds on a process pool. */
+        try(TeXProcessPool pool = new TeXProcessPool(Paths.get(outputDir, "pool"), 1)) {
+            result = builder.withLimits(limits.withMaxFileSize(8)).withProcessPool(pool)
+                    .compile(new TeXString(complexTeXSample));
+            assertEquals(1, pool.getJobs());
+            assertEquals(BuildStatus.LIMIT_EXCEEDED, result.getStatus());
+            assertFalse(new File(outputDir + "limited.dvi").exists());
+            result.deleteArtifacts();
+        }
+    }
+
+    /**
+     * This function tests TeXBuilder.withJobIsolation(boolean).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithJobIsolation() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(true, false, true, "shared", outputDir).withJobIsolation(true);
+        List<CompletableFuture<BuildResult>> futures = new ArrayList<>();
+
+        /* Concurrent builds on one TeXBuilder each write to an output file name of their own. */
+        for(int i = 0; i < 4; i++) {
+            futures.add(builder.compileAsync(new TeXString(i % 2 == 0 ? simpleTeXSample : complexTeXSample)));
+        }
+        futures.add(CompletableFuture.supplyAsync(() -> builder.compile(new TeXString(simpleTeXSample))));
+        Set<String> names = new HashSet<>();
+        for(CompletableFuture<BuildResult> future : futures) {
+            BuildResult result = future.get();
+            assertTrue(result.isSuccessful());
+            assertTrue(result.getOutputFileName().startsWith("shared-"));
+            assertTrue(names.add(result.getOutputFileName()));
+            assertTrue(new File(outputDir + result.getOutputFileName() + ".pdf").isFile());
+            assertFalse(new File(outputDir + result.getOutputFileName() + ".dvi").exists());
+            assertTrue(result.deleteArtifacts());
+        }
+        assertFalse(new File(outputDir + "shared.pdf").exists());
+    }
+
+    /**
+     * This function tests TeXBuilder.withScheduler(BuildScheduler, BuildPriority).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithScheduler() throws Exception {
+        /* Create Test Fixtures. */
+        try(BuildScheduler scheduler = new BuildScheduler(1, 1, BuildScheduler.Policy.SHED_LOWEST)) {
+            TeXBuilder normal = new TeXBuilder(false, false, true, "running", outputDir)
+                    .withScheduler(scheduler, BuildPriority.NORMAL);
+            TeXBuilder bulk = new TeXBuilder(false, false, true, "bulk", outputDir)
+                    .withScheduler(scheduler, BuildPriority.BULK);
+            TeXBuilder interactive = new TeXBuilder(false, false, true, "preview", outputDir)
+                    .withScheduler(scheduler, BuildPriority.INTERACTIVE);
+
+            /* Occupy the only worker. */
+            CompletableFuture<BuildResult> running = normal.compileAsync(new TeXString(slowTeXSample));
+            while(scheduler.getQueued() > 0) Thread.sleep(10);
+
+            /* An interactive build sheds the queued bulk build, and a further bulk build is refused. */
+            CompletableFuture<BuildResult> shed = bulk.compileAsync(new TeXString(simpleTeXSample));
+            CompletableFuture<BuildResult> preview = interactive.compileAsync(new TeXString(simpleTeXSample));
+            assertEquals(BuildStatus.OVERLOADED, shed.get().getStatus());
+            assertEquals(BuildStatus.OVERLOADED, bulk.compile(new TeXString(simpleTeXSample)).getStatus());
+            assertEquals(1, scheduler.getShed());
+            assertEquals(1, scheduler.getRefused());
+
+            /* The interactive build runs once the worker is free, and reports its wait separately. */
+            assertTrue(running.get().deleteArtifacts());
+            BuildResult result = preview.get();
+            assertTrue(result.isSuccessful());
+            assertTrue(result.getQueueNanos() > 0);
+            assertTrue(result.deleteArtifacts());
+        }
+    }
+
+    /**
+     * This function tests TeXBuilder.compileChunked(TeXString, String, int).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildChunked() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(true, false, true, "chunked", outputDir);
+        TeXString source = new TeXString("\\def\\page#1{Page #1.}\n\\eject \\page{one}\n\\eject \\page{two}\n"
+                + "\\eject \\page{three}");
+
+        /* Each chunk is typeset by its own process after the preamble, and the chunks' files are merged and removed. */
+        BuildResult result = builder.compileChunked(source, "\\eject", 3);
+        assertTrue(result.getOutput(), result.isSuccessful());
+        assertEquals(3, result.getPasses());
+        assertEquals(3, result.getPageCount());
+        assertTrue(result.getStageTiming(BuildStage.MERGE).getExitCode() == 0);
+        assertTrue(result.hasArtifact(Artifact.PDF));
+        assertTrue(result.hasArtifact(Artifact.LOG));
+        assertFalse(new File(outputDir + "chunked-chunk-0.pdf").exists());
+        assertTrue(result.deleteArtifacts());
+
+        /* A source without break points is built as a single chunk. */
+        result = builder.compileChunked(new TeXString(simpleTeXSample), "\\eject", 3);
+        assertTrue(result.isSuccessful());
+        assertEquals(1, result.getPasses());
+        assertTrue(result.deleteArtifacts());
+
+        /* Null sources and break points are not built. */
+        assertEquals(BuildStatus.FAILED, builder.compileChunked((TeXString) null, "\\eject", 3).getStatus());
+        assertEquals(BuildStatus.FAILED, builder.compileChunked(new TeXString(null), "\\eject", 3).getStatus());
+        assertEquals(BuildStatus.FAILED, builder.compileChunked((TeXFile) null, "\\eject", 3).getStatus());
+        assertEquals(BuildStatus.FAILED, builder.compileChunked(new TeXFile(null), "\\eject", 3).getStatus());
+        assertEquals(BuildStatus.FAILED, builder.compileChunked(source, null, 3).getStatus());
+    }
+
+    /**
+     * This function tests TeXBuilder.withProcessPool(TeXProcessPool).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithProcessPool() throws Exception {
+        /* Create Test Fixtures. */
+        try(TeXProcessPool pool = new TeXProcessPool(Paths.get(outputDir, "pool"), 2)) {
+            TeXBuilder builder = new TeXBuilder(true, true, true, "pooled", outputDir).withProcessPool(pool);
+            File LogFile = new File(outputDir + "pooled.log");
+            File DVIFile = new File(outputDir + "pooled.dvi");
+            File PDFFile = new File(outputDir + "pooled.pdf");
+
+            /* Build a string and a file on warm processes, and verify that every artifact is published. */
+            assertTrue(builder.build(new TeXString(complexTeXSample)));
+            assertTrue(LogFile.exists());
+            assertTrue(DVIFile.exists());
+            assertTrue(PDFFile.exists());
+            PrintWriter out = new PrintWriter(simpleTeXFile);
+            out.println(simpleTeXSample);
+            out.close();
+            assertTrue(builder.build(new TeXFile(Paths.get(simpleTeXFile))));
+            assertFalse(builder.build(new TeXString(invalidTeXSample)));
+            assertEquals(3, pool.getJobs());
+
+            /* A builder running another executable does not typeset on the pool. */
+            assertFalse(builder.withCommands("javatex-missing-tex", null).build(new TeXString(simpleTeXSample)));
+            assertEquals(3, pool.getJobs());
+
+            /* Clean up. */
+            assertTrue(LogFile.delete());
+            assertTrue(DVIFile.delete());
+            assertTrue(PDFFile.delete());
+            assertTrue(new File(simpleTeXFile).delete());
+        }
+
+        /* Warm processes hold permits of the pool's limiter, but never every permit. */
+        ProcessLimiter limiter = new ProcessLimiter(3);
+        try(TeXProcessPool pool = new TeXProcessPool(Paths.get(outputDir, "pool"), 4,
+                TeXProcessPool.DEFAULT_MAX_IDLE_MILLIS, TeXEngine.TEX_DVIPDFM, limiter)) {
+            for(int i = 0; i < 100 && pool.getWarmCount() < 2; i++) Thread.sleep(50);
+            assertEquals(2, pool.getWarmCount());
+            assertEquals(2, limiter.getActiveProcesses());
+            TeXBuilder builder = new TeXBuilder(false, false, true, "pooled", outputDir).withProcessPool(pool)
+                    .withProcessLimiter(limiter);
+            assertTrue(builder.build(new TeXString(simpleTeXSample)));
+            assertEquals(1, pool.getJobs());
+            assertTrue(limiter.getActiveProcesses() <= 2);
+            assertTrue(new File(outputDir + "pooled.pdf").delete());
+        }
+        assertEquals(0, limiter.getActiveProcesses());
+
+        /* A pool of pdftex processes writes dvi files, which the builder converts. */
+        try(TeXProcessPool pool = new TeXProcessPool(Paths.get(outputDir, "pool"), 1,
+                TeXProcessPool.DEFAULT_MAX_IDLE_MILLIS, TeXEngine.PDFTEX, null)) {
+            TeXBuilder builder = new TeXBuilder(false, true, true, "pooled", outputDir).withEngine(TeXEngine.PDFTEX)
+                    .withProcessPool(pool);
+            assertTrue(builder.build(new TeXString(simpleTeXSample)));
+            assertEquals(1, pool.getJobs());
+            assertTrue(new File(outputDir + "pooled.dvi").delete());
+            assertTrue(new File(outputDir + "pooled.pdf").delete());
+        }
+    }
+
+    /**
+     * This function tests TeXBuilder.build(TeXStream).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildTeXStream() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "streamed", outputDir);
+        File PDFFile = new File(outputDir + "streamed.pdf");
+        StringBuilder largeSource = new StringBuilder();
+        for(int i = 0; i < 2000; i++) largeSource.append(simpleTeXSample).append(" paragraph ").append(i).append("\\par\n");
+        byte[] complexBytes = complexTeXSample.getBytes(StandardCharsets.UTF_8);
+
+        /* Build a source too large for a single command line argument. */
+        assertTrue(builder.build(TeXStream.fromCharSequence(() -> largeSource)));
+        assertTrue(PDFFile.delete());
+
+        /* Build a source read from an InputStream. */
+        assertTrue(builder.build(TeXStream.fromInputStream(() -> new ByteArrayInputStream(complexBytes), StandardCharsets.UTF_8)));
+        assertTrue(PDFFile.delete());
+
+        /* Assert that invalid and null sources fail. */
+        assertFalse(builder.build(TeXStream.fromCharSequence(() -> invalidTeXSample)));
+        assertFalse(builder.build(new TeXStream(null)));
+        assertFalse(builder.build((TeXStream) null));
+        PDFFile.delete();
+    }
+
+    /**
+     * This function tests TeXBuilder.withTimeout(long, TimeUnit) and cancellation of asynchronous builds.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void buildWithTimeout() throws Exception {
+        buildWithTimeout1();
+        buildWithTimeout2();
+        buildWithTimeout3();
+    }
+
+    /**
+     * This function tests: A looping build is killed once its timeout passes, and releases its process permit.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithTimeout1() throws Exception {
+        /* Create Test Fixtures. */
+        ProcessLimiter limiter = new ProcessLimiter(1);
+        TeXBuilder builder = new TeXBuilder(false, false, true, "looping", outputDir)
+                .withProcessLimiter(limiter).withTimeout(1, TimeUnit.SECONDS);
+
+        /* Build the looping source and verify that it timed out promptly. */
+        long start = System.nanoTime();
+        BuildResult result = builder.compile(new TeXString(loopingTeXSample));
+        assertEquals(BuildStatus.TIMED_OUT, result.getStatus());
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(10));
+        assertEquals(0, limiter.getActiveProcesses());
+        assertFalse(new File(outputDir + "looping.dvi").exists());
+        assertFalse(new File(outputDir + "looping.log").exists());
+    }
+
+    /**
+     * This function tests: Cancelling an asynchronous build kills its process.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithTimeout2() throws Exception {
+        /* Create Test Fixtures. */
+        ProcessLimiter limiter = new ProcessLimiter(1);
+        TeXBuilder builder = new TeXBuilder(false, false, true, "looping", outputDir).withProcessLimiter(limiter);
+
+        /* Start the looping source, wait until it runs, then cancel it. */
+        CompletableFuture<BuildResult> future = builder.compileAsync(new TeXString(loopingTeXSample));
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while(limiter.getActiveProcesses() == 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(future.cancel(true));
+        try {
+            future.get();
+            assertTrue(false);
+        }catch(CancellationException e){
+            /* Expected. */
+        }
+
+        /* Verify that the process permit is released once the process was killed. */
+        while(limiter.getActiveProcesses() != 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0, limiter.getActiveProcesses());
+        new File(outputDir + "looping.dvi").delete();
+        new File(outputDir + "looping.log").delete();
+    }
+
+    /**
+     * This function tests: The output of a build's processes is captured and bounded.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    private void buildWithTimeout3() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, false, null, outputDir);
+        TeXBuilder limitedBuilder = builder.withOutputLimit(16);
+
+        /* Verify that TeX's output is captured, and that only the most recent output is retained. */
+        BuildResult result = builder.compile(new TeXString(simpleTeXSample));
+        assertEquals(BuildStatus.SUCCEEDED, result.getStatus());
+        assertTrue(result.getOutput().contains("Output written on"));
+        assertTrue(limitedBuilder.compile(new TeXString(simpleTeXSample)).getOutput().length() <= 16);
+    }
+
+}
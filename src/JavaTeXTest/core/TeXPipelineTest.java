@@ -0,0 +1,65 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.Artifact;
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXPipeline;
+import JavaTeX.core.TeXString;
+import org.junit.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is used to test the TeXPipeline class.
+ */
+public class TeXPipelineTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+
+    /**
+     * This function is called before any TeXPipeline test cases are ran. It verifies that the testing environment is
+     * setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+    }
+
+    /**
+     * This function tests TeXPipeline.submit(TeXSource).
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void submit() throws Exception {
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "pipelined", outputDir);
+        List<CompletableFuture<BuildResult>> futures = new ArrayList<>();
+
+        try(TeXPipeline pipeline = new TeXPipeline(builder, 2, 4, 1, 2)) {
+            /* Submit more jobs than the stages can hold, the submitting thread waits for room. */
+            for(int i = 0; i < 8; i++) futures.add(pipeline.submit(new TeXString("Job " + i)));
+            futures.add(pipeline.submit(new TeXString(null)));
+
+            /* Verify that each job was built to its own output file name, then clean up. */
+            for(int i = 0; i < 8; i++) {
+                BuildResult result = futures.get(i).get();
+                assertTrue(result.isSuccessful());
+                assertEquals("pipelined-" + i, result.getOutputFileName());
+                assertTrue(result.hasArtifact(Artifact.PDF));
+                assertTrue(result.deleteArtifacts());
+            }
+            assertFalse(futures.get(8).get().isSuccessful());
+
+            /* Every stage has drained. */
+            assertEquals(0, pipeline.getQueueDepth(TeXPipeline.Stage.TYPESET));
+            assertEquals(0, pipeline.getQueueDepth(TeXPipeline.Stage.CONVERT));
+        }
+    }
+
+}
@@ -0,0 +1,130 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.BuildStatus;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXDiagnostic;
+import JavaTeX.core.TeXString;
+import JavaTeX.core.TeXValidator;
+import org.junit.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is used to test the TeXValidator class.
+ */
+public class TeXValidatorTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+
+    /**
+     * This function is called before any TeXValidator test cases are ran. It verifies that the testing environment is
+     * setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+    }
+
+    /**
+     * This function tests TeXValidator.validate(String).
+     */
+    @Test
+    public void validate(){
+        validate1();
+        validate2();
+        validate3();
+    }
+
+    /**
+     * This function tests that TeXValidator.validate(String) checks that braces are balanced.
+     */
+    private void validate1(){
+        /* Create Test Fixtures. */
+        TeXValidator validator = new TeXValidator();
+
+        /* Balanced braces, and braces escaped, commented out or in verbatim text, pass. */
+        assertTrue(validator.validate("{\\bf Hello} \\{ % }\n\\verb|}| \\begin{verbatim}{\\end{verbatim} \\invCMD").isEmpty());
+
+        /* A closing brace without an opening one is reported where it occurs. */
+        List<TeXDiagnostic> diagnostics = validator.validate("{One}\nTwo} Three");
+        assertEquals(1, diagnostics.size());
+        assertEquals("Too many }'s.", diagnostics.get(0).getMessage());
+        assertEquals(2, diagnostics.get(0).getLineNumber());
+        assertEquals("Two}", diagnostics.get(0).getContext());
+
+        /* An opening brace that is never closed is reported, as is a \verb that runs to the end of the line. */
+        assertEquals(1, validator.validate("{\\bf Hello").size());
+        assertEquals("\\verb ended by end of line.", validator.validate("\\verb|}\n").get(0).getMessage());
+    }
+
+    /**
+     * This function tests that TeXValidator.validate(String) checks control words against the known set.
+     */
+    private void validate2(){
+        /* Create Test Fixtures. */
+        TeXValidator validator = new TeXValidator().withKnownControlSequences(Arrays.asList("\\greeting", "name"));
+
+        /* Primitives, plain TeX macros, configured names, control symbols and names the source defines pass. */
+        assertTrue(validator.validate("\\hbox{\\bf \\greeting, \\name\\$} \\def\\x#1{#1} \\x{\\y} \\let\\y=\\relax").isEmpty());
+        assertTrue(validator.validate("\\newif\\ifdraft \\drafttrue \\ifdraft Draft\\fi").isEmpty());
+
+        /* A misspelled control word is reported the way TeX would report it. */
+        List<TeXDiagnostic> diagnostics = validator.validate("Some valid TeX followed by an invalid command ( \\invCMD ).");
+        assertEquals(1, diagnostics.size());
+        assertEquals("Undefined control sequence.", diagnostics.get(0).getMessage());
+        assertEquals(1, diagnostics.get(0).getLineNumber());
+        assertTrue(diagnostics.get(0).getContext().endsWith("( \\invCMD"));
+    }
+
+    /**
+     * This function tests that TeXValidator.validate(String) accepts a document using the macros of plain TeX.
+     */
+    private void validate3(){
+        /* Create Test Fixtures. */
+        TeXValidator validator = new TeXValidator().withKnownControlSequences(null);
+        String document = String.join("\n",
+                "\\magnification=\\magstephalf \\loggingall \\tracingonline=0 \\nopagenumbers \\raggedbottom",
+                "\\setbox\\strutbox=\\hbox{\\vrule height8.5pt depth3.5pt width0pt}",
+                "\\centerline{\\bf A Plain Document} \\bigskip",
+                "\\beginsection 1. Symbols",
+                "\\leavevmode\\hbox{\\ooalign{O\\crcr\\hidewidth/\\hidewidth}} and\\slash or, \\dag\\ \\S\\ \\TeX.",
+                "$a \\ll b \\gg c$, $p \\iff q$, $x \\not= y$, $a \\ast b \\star c \\dagger$, $\\arcsin x$,",
+                "$x\\sb i\\sp 2$, $\\angle A$, $\\imath\\jmath$, $A \\Longrightarrow B$, $\\sharp\\flat$.",
+                "$$\\eqalign{f(x) &= \\sum_{i=1}^n \\alpha_i \\sqrt{x} \\cr g(x) &\\le \\root 3 \\of x \\cr}$$",
+                "$$\\pmatrix{a & b \\cr c & d} \\quad \\cases{0 & if $x<0$ \\cr 1 & otherwise}$$",
+                "\\proclaim Theorem 1. \\it Every $\\epsilon>0$ has a $\\delta$.\\par",
+                "\\item{a)} One \\itemitem{b)} Two\\footnote*{A note.}",
+                "\\settabs 2 \\columns \\+ One & Two \\cr",
+                "\\loop \\ifnum\\pageno<1 \\advancepageno \\repeat \\vfill\\eject",
+                "\\bye");
+
+        /* Valid plain TeX is not rejected. */
+        assertEquals(Arrays.asList(), validator.validate(document));
+    }
+
+    /**
+     * This function tests TeXBuilder.withValidator(TeXValidator).
+     */
+    @Test
+    public void buildWithValidator(){
+        /* Create Test Fixtures. */
+        TeXBuilder builder = new TeXBuilder(false, false, true, "validated", outputDir).withValidator(new TeXValidator());
+
+        /* A rejected source never starts TeX. */
+        BuildResult result = builder.compile(new TeXString("{\\bf Unbalanced"));
+        assertEquals(BuildStatus.REJECTED, result.getStatus());
+        assertEquals(1, result.getDiagnostics().size());
+        assertTrue(result.getStageTimings().isEmpty());
+
+        /* A valid source is built as usual. */
+        result = builder.compile(new TeXString("{\\bf Balanced}"));
+        assertTrue(result.isSuccessful());
+        assertTrue(result.deleteArtifacts());
+    }
+
+}
@@ -0,0 +1,156 @@
+package JavaTeXTest.core;
+
+import JavaTeX.core.BuildResult;
+import JavaTeX.core.TeXBuilder;
+import JavaTeX.core.TeXFile;
+import JavaTeX.core.TeXWatcher;
+import org.junit.*;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This class is used to test the TeXWatcher class.
+ */
+public class TeXWatcherTest {
+
+    private static final String outputDir = TestSetup.TEMPORARY_OUTPUT_DIRECTORY_NAME;
+
+    /**
+     * This function is called before any TeXWatcher test cases are ran. It verifies that the testing environment is
+     * setup.
+     */
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        TestSetup.getInstance().setup();
+    }
+
+    /**
+     * This function tests that a document is rebuilt once per burst of changes to its inputs, and only then.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void watch() throws Exception {
+        /* Create Test Fixtures. */
+        Path directory = Files.createDirectories(Paths.get(outputDir, "watched"));
+        Path main = directory.resolve("main.tex");
+        Path part = directory.resolve("part.tex");
+        Path unrelated = directory.resolve("notes.txt");
+        Files.write(main, "Main \\input part.tex\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(part, "Part one".getBytes(StandardCharsets.UTF_8));
+        Files.write(unrelated, "Notes".getBytes(StandardCharsets.UTF_8));
+        TeXBuilder builder = new TeXBuilder(false, false, true, "watched", outputDir);
+        BlockingQueue<BuildResult> results = new LinkedBlockingQueue<>();
+
+        try(TeXWatcher watcher = new TeXWatcher(builder, 200, TimeUnit.MILLISECONDS)) {
+            TeXFile source = new TeXFile(main);
+            assertTrue(watcher.watch(source, results::add).get(30, TimeUnit.SECONDS).isSuccessful());
+            results.clear();
+            assertTrue(watcher.getInputs(source).contains(part.toRealPath()));
+
+            /* A burst of saves of an input causes a single rebuild. */
+            for(int i = 0; i < 5; i++) {
+                Files.write(part, ("Part " + i).getBytes(StandardCharsets.UTF_8));
+                Thread.sleep(20);
+            }
+            BuildResult result = results.poll(30, TimeUnit.SECONDS);
+            assertTrue(result != null && result.isSuccessful());
+            assertTrue(results.poll(1, TimeUnit.SECONDS) == null);
+
+            /* Neither a file that is not an input, nor saving an input unmodified, causes a rebuild. */
+            Files.write(unrelated, "More notes".getBytes(StandardCharsets.UTF_8));
+            Files.write(part, "Part 4".getBytes(StandardCharsets.UTF_8));
+            assertTrue(results.poll(1, TimeUnit.SECONDS) == null);
+            assertEquals(2, watcher.getBuilds());
+            assertTrue(result.deleteArtifacts());
+        }
+    }
+
+    /**
+     * This function tests that documents watched at once, even with main files of the same name, are built to artifacts
+     * of their own, and that each is only rebuilt when its own inputs change.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void watchTwoDocuments() throws Exception {
+        /* Create Test Fixtures. */
+        Path first = Files.createDirectories(Paths.get(outputDir, "watchedFirst"));
+        Path second = Files.createDirectories(Paths.get(outputDir, "watchedSecond"));
+        Files.write(first.resolve("main.tex"), "First \\input part.tex\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(first.resolve("part.tex"), "First part".getBytes(StandardCharsets.UTF_8));
+        Files.write(second.resolve("main.tex"), "Second \\input part.tex\n".getBytes(StandardCharsets.UTF_8));
+        Files.write(second.resolve("part.tex"), "Second part".getBytes(StandardCharsets.UTF_8));
+        TeXBuilder builder = new TeXBuilder(false, false, true, "watchedTwice", outputDir);
+        BlockingQueue<BuildResult> firstResults = new LinkedBlockingQueue<>();
+        BlockingQueue<BuildResult> secondResults = new LinkedBlockingQueue<>();
+
+        try(TeXWatcher watcher = new TeXWatcher(builder, 200, TimeUnit.MILLISECONDS)) {
+            TeXFile firstSource = new TeXFile(first.resolve("main.tex"));
+            TeXFile secondSource = new TeXFile(second.resolve("main.tex"));
+            BuildResult firstResult = watcher.watch(firstSource, firstResults::add).get(30, TimeUnit.SECONDS);
+            BuildResult secondResult = watcher.watch(secondSource, secondResults::add).get(30, TimeUnit.SECONDS);
+            firstResults.clear();
+            secondResults.clear();
+
+            /* Each document has artifacts, and inputs, of its own. */
+            assertTrue(firstResult.isSuccessful() && secondResult.isSuccessful());
+            assertEquals("watchedTwice-main", firstResult.getOutputFileName());
+            assertEquals("watchedTwice-main-2", secondResult.getOutputFileName());
+            assertTrue(Files.isRegularFile(Paths.get(outputDir, "watchedTwice-main.pdf")));
+            assertTrue(Files.isRegularFile(Paths.get(outputDir, "watchedTwice-main-2.pdf")));
+            assertTrue(watcher.getInputs(firstSource).contains(first.resolve("part.tex").toRealPath()));
+            assertFalse(watcher.getInputs(firstSource).contains(second.resolve("part.tex").toRealPath()));
+            assertTrue(watcher.getInputs(secondSource).contains(second.resolve("part.tex").toRealPath()));
+
+            /* Changing an input of one document only rebuilds that document. */
+            Files.write(second.resolve("part.tex"), "Second part changed".getBytes(StandardCharsets.UTF_8));
+            BuildResult result = secondResults.poll(30, TimeUnit.SECONDS);
+            assertTrue(result != null && result.isSuccessful());
+            assertEquals("watchedTwice-main-2", result.getOutputFileName());
+            assertTrue(firstResults.poll(1, TimeUnit.SECONDS) == null);
+            assertEquals(3, watcher.getBuilds());
+            assertTrue(firstResult.deleteArtifacts());
+            assertTrue(result.deleteArtifacts());
+        }
+    }
+
+    /**
+     * This function tests that watching a document again while it is being built rebuilds it once that build ends,
+     * rather than building it twice at once.
+     * @throws Exception If the test case encountered an unexpected exception.
+     */
+    @Test
+    public void watchAgainWhileBuilding() throws Exception {
+        /* Create Test Fixtures. */
+        Path directory = Files.createDirectories(Paths.get(outputDir, "rewatched"));
+        Path main = directory.resolve("main.tex");
+        Files.write(main, "Watch and repeat".getBytes(StandardCharsets.UTF_8));
+        TeXBuilder builder = new TeXBuilder(false, false, true, "rewatched", outputDir);
+
+        try(TeXWatcher watcher = new TeXWatcher(builder, 200, TimeUnit.MILLISECONDS)) {
+            TeXFile source = new TeXFile(main);
+            CompletableFuture<BuildResult> first = watcher.watch(source, null);
+            CompletableFuture<BuildResult> second = watcher.watch(source, null);
+
+            /* The second build only starts once the first ended, and both write the document's artifacts. */
+            assertEquals(1, watcher.getBuilds());
+            assertTrue(first.get(30, TimeUnit.SECONDS).isSuccessful());
+            BuildResult result = second.get(30, TimeUnit.SECONDS);
+            assertTrue(result.isSuccessful());
+            assertEquals(2, watcher.getBuilds());
+            assertEquals("rewatched-main", result.getOutputFileName());
+            assertTrue(result.deleteArtifacts());
+        }
+    }
+
+}
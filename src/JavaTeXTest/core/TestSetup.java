@@ -11,6 +11,7 @@ public class TestSetup {
 
     public static final String TEMPORARY_OUTPUT_DIRECTORY_NAME = "test/temp/";
     public static final String PERSISTENT_OUTPUT_DIRECTORY_NAME = "test/actual/";
+    public static final String EXPECTED_OUTPUT_DIRECTORY_NAME = "test/expected/";
 
     /* The single instance of TestSetup. */
     private static TestSetup instance;